@@ -21,6 +21,7 @@ along with this program.  If not, see <http://www.gnu.org/licenses/>.
 package mixprocessing;
 
 import mixprocessing.events.ChannelsChangedListener;
+import mixprocessing.events.SketchFailureListener;
 import mixprocessing.events.SketchesChangedListener;
 import java.util.ArrayList;
 
@@ -34,6 +35,7 @@ public class EventManager {
     
     private final ArrayList<ChannelsChangedListener> ccListener = new ArrayList<>();
     private final ArrayList<SketchesChangedListener> scListener = new ArrayList<>();
+    private final ArrayList<SketchFailureListener> sfListener = new ArrayList<>();
 
     public EventManager() {
     }
@@ -98,4 +100,36 @@ public class EventManager {
             }
         }).start();
     }
+    
+    
+    /**
+     * Adds a new SketchFailureListener to the Event System
+     * 
+     * @param sfL 
+     */
+    public final void addSketchFailureListener(SketchFailureListener sfL) {
+        sfListener.add(sfL);
+    }
+    
+    /**
+     * Fires a new SketchFailed Event (sketch disabled or quarantined by the
+     * watchdog)
+     * @param sketchName
+     * @param reason 
+     */
+    public final void fireSketchFailed(final String sketchName, final String reason)
+    {
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for(SketchFailureListener listener : sfListener) {
+                    try {
+                        listener.sketchFailed(sketchName, reason);
+                    } catch (Exception e) {
+                        e.printStackTrace(System.err);
+                    }
+                }
+            }
+        }).start();
+    }
 }
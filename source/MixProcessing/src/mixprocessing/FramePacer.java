@@ -0,0 +1,177 @@
+/*
+MixProcessing - Live Mixing of Processing Sketches 
+https://github.com/itschleemilch/MixProcessing
+
+Copyright (c) 2014 Sebastian Schleemilch
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package mixprocessing;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Frame rate controller of the render loop. Frames are scheduled against
+ * absolute System.nanoTime() deadlines, so the time spent for rendering is
+ * taken into account. The thread sleeps until shortly before the deadline
+ * and spins the remaining time to hit it exactly.
+ *
+ * Also measures the frame time jitter (deviation of the frame interval from
+ * the target period) and counts missed deadlines.
+ *
+ * @author Sebastian Schleemilch
+ * @see MixRenderer#run()
+ */
+public class FramePacer {
+    /* Remaining time, which is spinned instead of slept */
+    private static final long SPIN_NANOS = 1000000L;
+    /* Weight of a new sample within the running averages */
+    private static final double AVERAGE_WEIGHT = 1d / 16d;
+
+    private volatile long periodNanos;
+    private long nextDeadline = 0;
+    private long lastFrameStart = 0;
+
+    /* Statistics, written by the render thread only */
+    private volatile long frameCount = 0;
+    private volatile long missedDeadlines = 0;
+    private volatile double averageInterval = 0;
+    private volatile double averageJitter = 0;
+    private volatile long maxJitter = 0;
+
+    /**
+     * @param frameRate initial target frame rate
+     */
+    public FramePacer(float frameRate) {
+        setFrameRate(frameRate);
+    }
+
+    /**
+     * Sets the target frame rate. Takes effect with the next frame.
+     * @param frameRate frames per second, has to be greater than 0
+     */
+    public final void setFrameRate(float frameRate) {
+        periodNanos = Math.round(1000000000d / frameRate);
+    }
+
+    /**
+     * Returns the target frame rate.
+     * @return
+     */
+    public final float getFrameRate() {
+        return (float) (1000000000d / periodNanos);
+    }
+
+    /**
+     * Has to be called at the beginning of each frame. Updates the
+     * jitter statistics.
+     */
+    public final void beginFrame() {
+        final long now = System.nanoTime();
+        if(lastFrameStart != 0) {
+            final long interval = now - lastFrameStart;
+            final long jitter = Math.abs(interval - periodNanos);
+            averageInterval += (interval - averageInterval) * AVERAGE_WEIGHT;
+            averageJitter += (jitter - averageJitter) * AVERAGE_WEIGHT;
+            if(jitter > maxJitter) {
+                maxJitter = jitter;
+            }
+        }
+        else {
+            averageInterval = periodNanos;
+            nextDeadline = now;
+        }
+        lastFrameStart = now;
+        frameCount++;
+    }
+
+    /**
+     * Blocks until the deadline of the next frame. If the current frame
+     * took longer than the deadline, the miss is counted and the schedule is
+     * restarted from now (no catch-up burst of frames).
+     */
+    public final void awaitNextFrame() {
+        nextDeadline += periodNanos;
+        long remaining = nextDeadline - System.nanoTime();
+        if(remaining <= 0) {
+            missedDeadlines++;
+            nextDeadline = System.nanoTime();
+            return;
+        }
+        /* Coarse wait: sleep until shortly before the deadline */
+        while(remaining > SPIN_NANOS) {
+            LockSupport.parkNanos(remaining - SPIN_NANOS);
+            remaining = nextDeadline - System.nanoTime();
+        }
+        /* Fine wait: spin the last part */
+        while(nextDeadline - System.nanoTime() > 0) {
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Resets the jitter and deadline statistics.
+     */
+    public final void resetStatistics() {
+        missedDeadlines = 0;
+        maxJitter = 0;
+        averageJitter = 0;
+    }
+
+    /**
+     * Returns the number of frames paced since startup.
+     * @return
+     */
+    public final long getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * Returns the number of frames, that finished after their deadline.
+     * @return
+     */
+    public final long getMissedDeadlines() {
+        return missedDeadlines;
+    }
+
+    /**
+     * Returns the measured frame rate (running average).
+     * @return
+     */
+    public final float getActualFrameRate() {
+        if(averageInterval <= 0) {
+            return 0f;
+        }
+        return (float) (1000000000d / averageInterval);
+    }
+
+    /**
+     * Returns the average deviation of the frame interval from the target
+     * period in milliseconds.
+     * @return
+     */
+    public final float getJitterMillis() {
+        return (float) (averageJitter / 1000000d);
+    }
+
+    /**
+     * Returns the largest deviation of the frame interval from the target
+     * period in milliseconds since the last reset.
+     * @return
+     */
+    public final float getMaxJitterMillis() {
+        return (float) (maxJitter / 1000000d);
+    }
+}
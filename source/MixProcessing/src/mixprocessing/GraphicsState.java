@@ -0,0 +1,163 @@
+/*
+MixProcessing - Live Mixing of Processing Sketches 
+https://github.com/itschleemilch/MixProcessing
+
+Copyright (c) 2014 Sebastian Schleemilch
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package mixprocessing;
+
+import java.awt.Color;
+import java.awt.Composite;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.Paint;
+import java.awt.Stroke;
+import java.awt.geom.AffineTransform;
+
+/**
+ * Stores a selection of Graphics2D attributes. Only the selected attributes
+ * are captured and applied, and an attribute is only set, if the graphics
+ * object has a different value.
+ *
+ * @author Sebastian Schleemilch
+ * @see TrackingGraphics2D
+ */
+public class GraphicsState {
+    public static final int PAINT = 1, COMPOSITE = 2, FONT = 4, STROKE = 8,
+            BACKGROUND = 16, HINTS = 32, TRANSFORM = 64;
+    /* Attributes, which can be read without allocations */
+    public static final int SIMPLE = PAINT | COMPOSITE | FONT | STROKE | BACKGROUND | HINTS;
+    public static final int ALL = SIMPLE | TRANSFORM;
+
+    private Color color = null, background = null;
+    private Paint paint = null;
+    private Composite composite = null;
+    private Font font = null;
+    private Stroke stroke = null;
+    private final AffineTransform transform = new AffineTransform();
+    private final Object[] hints = new Object[MPGraphics2D.STORED_HINTS.length];
+    /* Stored attributes */
+    private int attributes = 0;
+
+    public GraphicsState() {
+    }
+
+    /**
+     * Reads the given attributes from the graphics object.
+     * @param g
+     * @param selection e.g. PAINT | STROKE
+     */
+    public final void capture(Graphics2D g, int selection)
+    {
+        if((selection & PAINT) != 0) {
+            color = g.getColor();
+            paint = g.getPaint();
+        }
+        if((selection & COMPOSITE) != 0) {
+            composite = g.getComposite();
+        }
+        if((selection & FONT) != 0) {
+            font = g.getFont();
+        }
+        if((selection & STROKE) != 0) {
+            stroke = g.getStroke();
+        }
+        if((selection & BACKGROUND) != 0) {
+            background = g.getBackground();
+        }
+        if((selection & HINTS) != 0) {
+            for(int i = 0; i < hints.length; i++) {
+                hints[i] = g.getRenderingHint(MPGraphics2D.STORED_HINTS[i]);
+            }
+        }
+        if((selection & TRANSFORM) != 0) {
+            transform.setTransform(g.getTransform());
+        }
+        attributes |= selection;
+    }
+
+    /**
+     * Sets the given attributes (if stored) to the graphics object.
+     * Attributes with equal values are skipped.
+     * @param g
+     * @param selection e.g. PAINT | STROKE
+     */
+    public final void apply(Graphics2D g, int selection)
+    {
+        selection &= attributes;
+        if((selection & PAINT) != 0) {
+            if(paint instanceof Color) {
+                if(g.getPaint() != paint) {
+                    g.setColor((Color) paint);
+                }
+            }
+            else {
+                if(color != null && g.getColor() != color) {
+                    g.setColor(color);
+                }
+                if(paint != null && g.getPaint() != paint) {
+                    g.setPaint(paint);
+                }
+            }
+        }
+        if((selection & COMPOSITE) != 0 && composite != null &&
+                g.getComposite() != composite) {
+            g.setComposite(composite);
+        }
+        if((selection & FONT) != 0 && font != null && g.getFont() != font) {
+            g.setFont(font);
+        }
+        if((selection & STROKE) != 0 && stroke != null && g.getStroke() != stroke) {
+            g.setStroke(stroke);
+        }
+        if((selection & BACKGROUND) != 0 && background != null &&
+                g.getBackground() != background) {
+            g.setBackground(background);
+        }
+        if((selection & HINTS) != 0) {
+            for(int i = 0; i < hints.length; i++) {
+                if(hints[i] != null &&
+                        g.getRenderingHint(MPGraphics2D.STORED_HINTS[i]) != hints[i]) {
+                    g.setRenderingHint(MPGraphics2D.STORED_HINTS[i], hints[i]);
+                }
+            }
+        }
+        if((selection & TRANSFORM) != 0) {
+            g.setTransform(transform);
+        }
+    }
+
+    /**
+     * Returns the stored attributes.
+     * @return
+     */
+    public final int getAttributes() {
+        return attributes;
+    }
+
+    /**
+     * Forgets all stored attributes.
+     */
+    public final void clear() {
+        attributes = 0;
+        color = background = null;
+        paint = null;
+        composite = null;
+        font = null;
+        stroke = null;
+    }
+}
@@ -22,13 +22,12 @@ package mixprocessing;
 import java.awt.AlphaComposite;
 import java.awt.Color;
 import java.awt.Composite;
-import java.awt.Font;
+import java.awt.Graphics2D;
 import java.awt.Paint;
 import java.awt.RenderingHints;
-import java.awt.Stroke;
 import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
 import java.lang.reflect.Field;
-import java.util.Iterator;
 import processing.core.PGraphicsJava2D;
 
 /**
@@ -40,14 +39,15 @@ import processing.core.PGraphicsJava2D;
  */
 public class MPGraphics2D extends PGraphicsJava2D {
     private final Composite defaultComposite;
-    /* Variables that store the Graphics2D states */
-    private Color storeBackground = null, storeColor = null;
-    private Composite storeComposite = null;
-    private Font storeFont = null;
-    private Paint storePaint = null;
-    private RenderingHints storeHints = null;
-    private Stroke storeStroke = null;
-    private AffineTransform storeTransform = null;
+    /* Forwards Processing's calls to the current target and tracks changes */
+    private final TrackingGraphics2D tracker = new TrackingGraphics2D();
+    /* Attributes the sketch has changed, with their last values */
+    private final GraphicsState stored = new GraphicsState();
+    private boolean opacityApplied = false;
+    /* Last background color, reused while background() is unchanged */
+    private Color backgroundColorObject = null;
+    /* background() was called since the last takeBackgroundFilled() */
+    private boolean backgroundFilled = false;
 
     public MPGraphics2D() {
         defaultComposite = AlphaComposite.getInstance(AlphaComposite.SRC_OVER);
@@ -65,63 +65,91 @@ public class MPGraphics2D extends PGraphicsJava2D {
      */
     public final void init()
     {
+        stored.clear();
         checkSettings();
         resetMatrix(); // reset model matrix
         vertexCount = 0;
-        storeGraphicSettings();
     }
     
     /**
-     * Saves the Graphic Context Settings
+     * Sets the graphics object for the next drawing. Processing draws 
+     * through a TrackingGraphics2D, so changed attributes are known.
+     * @param target 
      */
-    public final void storeGraphicSettings() {
-        storeBackground = g2.getBackground();
-        storeColor = g2.getColor();
-        storeComposite = g2.getComposite();
-        storeFont = g2.getFont();
-        storePaint = g2.getPaint();
-        storeHints = g2.getRenderingHints();
-        storeStroke = g2.getStroke();
-        storeTransform = g2.getTransform();
+    public final void bind(Graphics2D target) {
+        tracker.setTarget(target);
+        g2 = tracker;
+        opacityApplied = false;
     }
     
     /**
-     * Loads the Graphic Context Settings
+     * Binds the graphics to a private image, so further drawing calls do 
+     * not reach the former target.
      */
-    public final void loadGraphicSettings() {
-        if(storeBackground != null) {
-            g2.setBackground(storeBackground);
-        }
-        if(storeColor != null) {
-            g2.setColor(storeColor);
-        }
-        if(storeComposite != null) {
-            g2.setComposite(storeComposite);
-        }
-        if(storeFont != null) {
-            g2.setFont(storeFont);
-        }
-        if(storePaint != null) {
-            g2.setPaint(storePaint);
-        }
-        if(storeHints != null)
-        {
-            Iterator<?> keys = storeHints.keySet().iterator();
-            while(keys.hasNext())
-            {
-                Object key = keys.next();
-                Object value = storeHints.get( key );
-                g2.setRenderingHint((RenderingHints.Key) key, value);
+    public final void detach() {
+        BufferedImage sink = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+        bind(sink.createGraphics());
+        setOffscreen(sink);
+    }
+    
+    /**
+     * Sets the sketch's opacity on the target (not stored as a change of
+     * the sketch).
+     * @param opacity 
+     */
+    public final void setOpacity(Composite opacity) {
+        tracker.getTarget().setComposite(opacity);
+        opacityApplied = true;
+    }
+    
+    /**
+     * Sets the image, that Processing uses as pixel source (e.g. get(), 
+     * loadPixels()). Has to be the image behind g2.
+     * @param offscreen 
+     */
+    public final void setOffscreen(BufferedImage offscreen) {
+        if(OFFSCREEN_FIELD != null) {
+            try {
+                OFFSCREEN_FIELD.set(this, offscreen);
+            } catch (IllegalArgumentException | IllegalAccessException e) {
+                e.printStackTrace(System.err);
             }
         }
-        if(storeStroke != null) {
-            g2.setStroke(storeStroke);
-        }
-        if(storeTransform != null) {
-            g2.setTransform(storeTransform);
+    }
+    
+    /**
+     * Saves the Graphic Context Settings, which were changed since the last
+     * call.
+     */
+    public final void storeGraphicSettings() {
+        storeGraphicSettings(null);
+    }
+    
+    /**
+     * Saves the Graphic Context Settings, which were changed since the last
+     * call, and resets them on the target to the given base values. Used, 
+     * if the target is shared with other sketches.
+     * @param base values before the sketch was drawn, null: keep the
+     * sketch's values
+     */
+    public final void storeGraphicSettings(GraphicsState base) {
+        final Graphics2D target = tracker.getTarget();
+        stored.capture(target, tracker.getChanges());
+        tracker.resetChanges();
+        if(base != null) {
+            base.apply(target, stored.getAttributes() | 
+                    (opacityApplied ? GraphicsState.COMPOSITE : 0));
         }
     }
     
+    /**
+     * Loads the Graphic Context Settings, which the sketch has changed.
+     * Other attributes are left as set by the target's owner.
+     */
+    public final void loadGraphicSettings() {
+        stored.apply(tracker.getTarget(), stored.getAttributes());
+    }
+    
 
     /**
      * Necessary override, to fix not inited Processing Sketch
@@ -180,16 +208,6 @@ public class MPGraphics2D extends PGraphicsJava2D {
         background(backgroundColor);
         blendMode(BLEND);
         settingsInited = true;
-        
-        /* Extended: */
-        /*
-        storeBackground = null; storeColor = null;
-        storeComposite = null;
-        storeFont = null;
-        storePaint = null;
-        storeHints = null;
-        storeStroke = null;
-        storeTransform = null;*/
     }
     
     /**
@@ -197,18 +215,67 @@ public class MPGraphics2D extends PGraphicsJava2D {
      */
     @Override
     public void backgroundImpl() {
-        Color bgColor = new Color(backgroundColor);
-        Composite oldComposite = g2.getComposite();
-        g2.setComposite(defaultComposite);
+        if(backgroundColorObject == null || 
+                backgroundColorObject.getRGB() != (backgroundColor | 0xff000000)) {
+            backgroundColorObject = new Color(backgroundColor);
+        }
+        /* Not tracked: the state is restored afterwards */
+        final Graphics2D target = (g2 == tracker) ? tracker.getTarget() : g2;
+        Composite oldComposite = target.getComposite();
+        Paint oldPaint = target.getPaint();
+        target.setComposite(defaultComposite);
         
-        pushMatrix();
-        resetMatrix();
+        AffineTransform oldTransform = target.getTransform();
+        target.setTransform(IDENTITY);
       
-        g2.setColor(bgColor);
-        g2.fillRect(0, 0, width, height);
+        target.setColor(backgroundColorObject);
+        target.fillRect(0, 0, width, height);
         
-        popMatrix();
-        g2.setComposite(oldComposite);
+        target.setTransform(oldTransform);
+        target.setPaint(oldPaint);
+        target.setComposite(oldComposite);
+        backgroundFilled = true;
+    }
+    
+    /**
+     * Returns if background() has filled the whole surface with an opaque
+     * color since the last call, and resets the flag.
+     * @return 
+     */
+    public final boolean takeBackgroundFilled() {
+        final boolean filled = backgroundFilled;
+        backgroundFilled = false;
+        return filled;
     }
 
+    private static final AffineTransform IDENTITY = new AffineTransform();
+    
+    /**
+     * Rendering hints, that are stored and restored for every sketch. These
+     * are all standard hints except the LCD text contrast (smooth(), 
+     * noSmooth() and hint() change them).
+     */
+    public static final RenderingHints.Key[] STORED_HINTS = {
+        RenderingHints.KEY_ANTIALIASING, RenderingHints.KEY_RENDERING,
+        RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.KEY_INTERPOLATION,
+        RenderingHints.KEY_STROKE_CONTROL, RenderingHints.KEY_ALPHA_INTERPOLATION,
+        RenderingHints.KEY_COLOR_RENDERING, RenderingHints.KEY_DITHERING,
+        RenderingHints.KEY_FRACTIONALMETRICS
+    };
+    
+    private static final Field OFFSCREEN_FIELD;
+    /**
+     * Reflection access to PGraphicsJava2D's private image field.
+     */
+    static
+    {
+        Field f = null;
+        try {
+            f = PGraphicsJava2D.class.getDeclaredField("offscreen");
+            f.setAccessible(true);
+        } catch (NoSuchFieldException | SecurityException e) {
+            e.printStackTrace(System.err);
+        }
+        OFFSCREEN_FIELD = f;
+    }
 }
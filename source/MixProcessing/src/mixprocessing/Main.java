@@ -21,6 +21,7 @@ along with this program.  If not, see <http://www.gnu.org/licenses/>.
 package mixprocessing;
 
 import mixprocessing.load.JarManagement;
+import mixprocessing.load.SketchClass;
 import mixprocessing.script.ScriptRunner;
 import mixprocessing.script.ScriptingApi;
 import mixprocessing.sketches.Sketch;
@@ -121,7 +122,7 @@ public class Main {
         }        
     }
     
-    private static Class<?>[] readSketches(File sourceDir)
+    private static SketchClass[] readSketches(File sourceDir)
     {
         JarManagement jars = new JarManagement(sourceDir);
         jars.readJars();
@@ -174,13 +175,13 @@ public class Main {
             }
         }
         
-        Class<?>[] sketchClasses = readSketches(jarSource);
+        SketchClass[] sketchClasses = readSketches(jarSource);
         Sketches sketches = new Sketches();
         
         // add welcome Sketch
-        ArrayList<Class<?>> totalSketchList = new ArrayList<>( 
+        ArrayList<SketchClass> totalSketchList = new ArrayList<>( 
                 Arrays.asList(sketchClasses) );
-        totalSketchList.add(WelcomeSketch.class);
+        totalSketchList.add(new SketchClass(WelcomeSketch.class));
 
         
         // Renderer
@@ -196,13 +197,13 @@ public class Main {
         renderer.init();
         //frame.setVisible(true); -> moved after showing welcome screen
         
-        // initialise Processing Sketches
+        // register Processing Sketches, instances are created on first use
         String sketchPath = jarSource.getAbsolutePath();
-        for (Class<?> sketchClasse : totalSketchList) {
+        for (SketchClass sketchClasse : totalSketchList) {
             Sketch s = new Sketch(sketchClasse);
             sketches.addSketch(s);
-            s.createInstance(frame, sketchPath);
-            System.out.printf("Initialise Sketch: %s\n", s.getName());
+            s.prepareInstance(frame, sketchPath);
+            System.out.printf("Register Sketch: %s\n", s.getName());
         }
         
         // Scripting API
@@ -22,11 +22,17 @@ package mixprocessing;
 
 import mixprocessing.channels.ChannelEditing;
 import mixprocessing.channels.ChannelManagement;
+import mixprocessing.output.OutputManagement;
 import mixprocessing.sketches.Sketches;
 import java.awt.Canvas;
 import java.awt.Color;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.geom.Point2D;
+import java.awt.image.BufferStrategy;
 import java.awt.event.ComponentEvent;
 import java.awt.event.ComponentListener;
 import java.awt.event.KeyEvent;
@@ -47,6 +53,8 @@ public class MixRenderer extends Canvas
     implements ComponentListener, MouseListener, MouseMotionListener, KeyListener, Runnable {
     private final ChannelManagement channels;
     private final Sketches sketches;
+    /* Viewports and other consumers of the composed frames */
+    private final OutputManagement outputs = new OutputManagement();
     /* Double Buffers, offImg: Sketches, offImg2: Sketches+Editormode*/
     private BufferedImage offImg = null;
     private Graphics2D offscreenG = null;
@@ -55,7 +63,33 @@ public class MixRenderer extends Canvas
     /* Self-Resetting Flag: If set-> causes full black background redraw */
     private boolean forceRefresh = true;
     
-    private int repaintSleep = 16; // used within repaint loop
+    /* Frame rate controller of the repaint loop */
+    private final FramePacer pacer = new FramePacer(35f);
+    /* Counts finished paint() calls, used to wait for a requested repaint */
+    private final Object paintMonitor = new Object();
+    private long paintedFrames = 0;
+    
+    /* Active Rendering: render thread presents the frames itself */
+    private volatile boolean activeRendering = false;
+    private BufferStrategy bufferStrategy = null;
+    /* Guards the double buffer and the sketches against concurrent access */
+    private final Object renderLock = new Object();
+    /* Frame counters of both presentation modes */
+    private volatile long passiveFrames = 0, passiveCoalesced = 0;
+    private volatile long activeFrames = 0, activeDropped = 0;
+    
+    /* Logical canvas size, 0: follows the window size */
+    private volatile int logicalWidth = 0, logicalHeight = 0;
+    /* Size of the double buffer, the sketches and channels use */
+    private volatile int canvasWidth = 0, canvasHeight = 0;
+    /* Last window resize, applied to a following canvas when settled */
+    private volatile long resizeNanos = 0;
+    /* Canvas to window mapping, recalculated if one of the sizes changes */
+    private final AffineTransform presentTransform = new AffineTransform();
+    private final AffineTransform inverseTransform = new AffineTransform();
+    private int presentW = -1, presentH = -1, presentCanvasW = -1, presentCanvasH = -1;
+    private int imageX = 0, imageY = 0, imageW = 0, imageH = 0;
+    private final Point2D.Double mousePoint = new Point2D.Double();
     
     public MixRenderer(Sketches sketches)
     {
@@ -68,14 +102,15 @@ public class MixRenderer extends Canvas
         addKeyListener(this);
         
         channelEditor = new ChannelEditing(channels);
-        addMouseListener(channelEditor);
         
         setMaxFrameRate(35f);
     }
     
     public final void init()
     {
-        sketches.updateSize(getWidth(), getHeight());
+        synchronized(renderLock) {
+            applyCanvasSize(true);
+        }
         new Thread(this).start();
     }
 
@@ -95,6 +130,14 @@ public class MixRenderer extends Canvas
         return channels;
     }
 
+    /**
+     * Returns the output viewports.
+     * @return 
+     */
+    public final OutputManagement getOutputs() {
+        return outputs;
+    }
+
     /**
      * Returns all managed Sketches
      * @return 
@@ -120,20 +163,132 @@ public class MixRenderer extends Canvas
      * @return 
      */
     public final float getMaxFrameRate() {
-        return 1000f / (float)repaintSleep;
+        return pacer.getFrameRate();
     }
     
     /**
-     * Sets the absolut maximum frame rate. 
+     * Sets the absolut maximum frame rate. Also sets the frame budget of 
+     * the sketches.
      * @param frameRate 
      */
     public final void setMaxFrameRate(float frameRate) {
-        float sleep = 1000f / frameRate;
-        int newSleep = Math.round(sleep);
-        if(newSleep < 10) { // set lower limit
-            newSleep = 10;
+        if(frameRate > MAX_FRAME_RATE || Float.isNaN(frameRate)) { // set upper limit
+            frameRate = MAX_FRAME_RATE;
+        }
+        else if(frameRate < MIN_FRAME_RATE) {
+            frameRate = MIN_FRAME_RATE;
         }
-        repaintSleep = newSleep;
+        pacer.setFrameRate(frameRate);
+        sketches.getGovernor().setFrameRate(frameRate);
+    }
+    
+    /**
+     * Sets a fixed logical resolution: sketches and channels always use this
+     * size, the frames are scaled to the window (keeping the aspect ratio).
+     * Resizing the window then neither reallocates the double buffer nor
+     * reinitializes the sketches.
+     * @param width 0: the canvas follows the window size
+     * @param height 0: the canvas follows the window size
+     */
+    public final void setLogicalSize(int width, int height) {
+        if(width <= 0 || height <= 0) {
+            logicalWidth = logicalHeight = 0;
+        }
+        else {
+            logicalHeight = height;
+            logicalWidth = width;
+        }
+        resizeNanos = 0;
+    }
+    
+    /**
+     * Returns if the canvas has a fixed logical resolution.
+     * @return 
+     */
+    public final boolean isLogicalSize() {
+        return logicalWidth > 0;
+    }
+    
+    /**
+     * Returns the width sketches and channels use.
+     * @return 
+     * @see MixRenderer#setLogicalSize(int, int) 
+     */
+    public final int getCanvasWidth() {
+        final int w = logicalWidth;
+        return (w > 0) ? w : (canvasWidth > 0 ? canvasWidth : getWidth());
+    }
+    
+    /**
+     * Returns the height sketches and channels use.
+     * @return 
+     * @see MixRenderer#setLogicalSize(int, int) 
+     */
+    public final int getCanvasHeight() {
+        final int h = logicalHeight;
+        return (h > 0) ? h : (canvasHeight > 0 ? canvasHeight : getHeight());
+    }
+    
+    /**
+     * Returns the frame rate controller, which provides the timing statistics.
+     * @return 
+     */
+    public final FramePacer getFramePacer() {
+        return pacer;
+    }
+
+    /**
+     * Enables the active rendering mode: The render thread draws and shows
+     * the frames through a BufferStrategy (page flipping if available,
+     * double buffering otherwise). If disabled, frames are painted by the
+     * AWT event thread after a repaint() request.
+     * @param enabled 
+     */
+    public final void setActiveRendering(boolean enabled) {
+        this.activeRendering = enabled;
+    }
+    
+    /**
+     * Returns if the active rendering mode is enabled.
+     * @return 
+     * @see MixRenderer#setActiveRendering(boolean) 
+     */
+    public final boolean isActiveRendering() {
+        return activeRendering;
+    }
+    
+    /**
+     * Returns the number of frames shown by the AWT event thread.
+     * @return 
+     */
+    public final long getPassiveFrameCount() {
+        return passiveFrames;
+    }
+    
+    /**
+     * Returns the number of repaint requests, that were not painted within
+     * their frame period (coalesced or dropped by AWT).
+     * @return 
+     */
+    public final long getPassiveCoalescedCount() {
+        return passiveCoalesced;
+    }
+    
+    /**
+     * Returns the number of frames shown by the active rendering mode.
+     * @return 
+     */
+    public final long getActiveFrameCount() {
+        return activeFrames;
+    }
+    
+    /**
+     * Returns the number of frames of the active rendering mode, which could
+     * not be shown (buffers lost or not available).
+     * @return 
+     */
+    public final long getActiveDroppedCount() {
+        return activeDropped;
     }
 
     @Override
@@ -141,43 +296,250 @@ public class MixRenderer extends Canvas
         Thread.currentThread().setName("MP Renderer Loop");
         while(true)
         {
-            repaint();
-            try {
-                // TODO: Avoid fixed rate sleep, replace with framerate controller.
-                Thread.sleep(repaintSleep);
-            } catch (InterruptedException e) {
+            pacer.beginFrame();
+            if(activeRendering) {
+                renderActive();
+            }
+            else {
+                repaintAndWait();
             }
+            pacer.awaitNextFrame();
         } // while
     }
-
-    @Override
-    public final void paint(Graphics g) {
+    
+    /**
+     * Requests a repaint and waits until it has been performed (at most one
+     * frame period), so that the paint time is part of the frame timing.
+     */
+    private void repaintAndWait() {
+        final long timeout = Math.max(1L, Math.round(1000f / pacer.getFrameRate()));
+        synchronized(paintMonitor) {
+            final long target = paintedFrames + 1;
+            repaint();
+            final long end = System.currentTimeMillis() + timeout;
+            long remaining = timeout;
+            while(paintedFrames < target && remaining > 0) {
+                try {
+                    paintMonitor.wait(remaining);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                remaining = end - System.currentTimeMillis();
+            }
+            if(paintedFrames < target) {
+                passiveCoalesced++;
+            }
+        }
+    }
+    
+    /**
+     * Composes and shows one frame on the render thread.
+     */
+    private void renderActive() {
+        if(!isDisplayable() || getWidth() <= 0 || getHeight() <= 0) {
+            bufferStrategy = null;
+            activeDropped++;
+            return;
+        }
+        try {
+            if(bufferStrategy == null) {
+                createBufferStrategy(2);
+                bufferStrategy = getBufferStrategy();
+                System.out.printf("Active rendering: %s\n", 
+                        bufferStrategy.getCapabilities().isPageFlipping() ? 
+                                "page flipping" : "double buffering");
+            }
+            final BufferStrategy bs = bufferStrategy;
+            synchronized(renderLock) {
+                final boolean refreshed = composeFrame();
+                do {
+                    do {
+                        Graphics g = bs.getDrawGraphics();
+                        try {
+                            presentFrame(g, refreshed);
+                        } finally {
+                            g.dispose();
+                        }
+                    } while(bs.contentsRestored());
+                    bs.show();
+                    if(bs.contentsLost()) {
+                        activeDropped++;
+                    }
+                } while(bs.contentsLost());
+            }
+            activeFrames++;
+        } catch (IllegalStateException e) { // buffers not available, e.g. fullscreen toggle
+            bufferStrategy = null;
+            activeDropped++;
+        }
+    }
+    
+    /**
+     * Renders all sketches into the double buffer.
+     * @return true, if a full refresh has been performed
+     */
+    private boolean composeFrame() {
+        applyCanvasSize(false);
+        if(canvasWidth <= 0 || canvasHeight <= 0) {
+            return false;
+        }
         /* Offscreen Images out of date? */
-        if(offImg == null || offImg.getWidth() != getWidth() || offImg.getHeight() != getHeight())
+        if(offImg == null || offImg.getWidth() != canvasWidth || offImg.getHeight() != canvasHeight)
         {
-            offImg = getGraphicsConfiguration().createCompatibleImage(getWidth(), getHeight());
+            offImg = getGraphicsConfiguration().createCompatibleImage(canvasWidth, canvasHeight);
             offscreenG = offImg.createGraphics();
-            offscreenG.clearRect(0, 0, getWidth(), getHeight());
+            offscreenG.clearRect(0, 0, canvasWidth, canvasHeight);
             forceRefresh = true;
         }
+        final boolean refreshed = forceRefresh;
         if(forceRefresh)
         {
             forceRefresh = false;
-            g.setColor(Color.BLACK);
-            g.fillRect(0, 0, getWidth(), getHeight());
             offscreenG.setColor(Color.BLACK);
-            offscreenG.fillRect(0, 0, getWidth(), getHeight());
+            offscreenG.fillRect(0, 0, canvasWidth, canvasHeight);
+            sketches.setCompositionDirty();
         }
         sketches.paintAll(offImg, offscreenG, channels);
         
-        
         if(channels.isPreviewChannelOutlines()) {
             channels.paintChannelOutlines( offscreenG );
             channelEditor.paintEditorPath( offscreenG );
-            g.drawImage(offImg, 0, 0, this);
+        }
+        outputs.frameRendered(offImg, System.nanoTime());
+        return refreshed;
+    }
+    
+    /**
+     * Sets the canvas size of the sketches. A canvas following the window
+     * is resized, after the window size has not changed for RESIZE_DELAY.
+     * @param immediately true: without waiting for the window size to settle
+     */
+    private void applyCanvasSize(boolean immediately) {
+        final boolean logical = logicalWidth > 0;
+        final int w = logical ? logicalWidth : getWidth();
+        final int h = logical ? logicalHeight : getHeight();
+        if((w == canvasWidth && h == canvasHeight) || w <= 0 || h <= 0) {
+            return;
+        }
+        if(!immediately && !logical && canvasWidth > 0 && 
+                System.nanoTime() - resizeNanos < RESIZE_DELAY) {
+            return; // still resizing, the last frame is scaled meanwhile
+        }
+        canvasWidth = w;
+        canvasHeight = h;
+        sketches.updateSize(w, h);
+    }
+    
+    /**
+     * Recalculates the canvas to window mapping, if the window or the canvas
+     * size has changed.
+     */
+    private void updatePresentTransform() {
+        final int w = getWidth(), h = getHeight();
+        if(w == presentW && h == presentH && 
+                canvasWidth == presentCanvasW && canvasHeight == presentCanvasH) {
+            return;
+        }
+        presentW = w;
+        presentH = h;
+        presentCanvasW = canvasWidth;
+        presentCanvasH = canvasHeight;
+        if(w == canvasWidth && h == canvasHeight) {
+            presentTransform.setToIdentity();
         }
         else {
+            final double scale = Math.min(w / (double) canvasWidth, h / (double) canvasHeight);
+            presentTransform.setToTranslation(
+                    Math.floor((w - canvasWidth * scale) / 2), 
+                    Math.floor((h - canvasHeight * scale) / 2));
+            presentTransform.scale(scale, scale);
+        }
+        imageX = (int) presentTransform.getTranslateX();
+        imageY = (int) presentTransform.getTranslateY();
+        imageW = (int) Math.round(canvasWidth * presentTransform.getScaleX());
+        imageH = (int) Math.round(canvasHeight * presentTransform.getScaleY());
+        try {
+            inverseTransform.setTransform(presentTransform);
+            inverseTransform.invert();
+        } catch (NoninvertibleTransformException e) {
+            inverseTransform.setToIdentity();
+        }
+    }
+    
+    /**
+     * Draws the double buffer to the screen, scaled to the window if its 
+     * size differs from the canvas size.
+     */
+    private void presentFrame(Graphics g, boolean refreshed) {
+        if(offImg == null) {
+            return;
+        }
+        updatePresentTransform();
+        if(presentTransform.isIdentity()) {
+            if(refreshed)
+            {
+                g.setColor(Color.BLACK);
+                g.fillRect(0, 0, getWidth(), getHeight());
+            }
             g.drawImage(offImg, 0, 0, this);
+            return;
+        }
+        /* Borders of the letterbox */
+        g.setColor(Color.BLACK);
+        g.fillRect(0, 0, presentW, imageY);
+        g.fillRect(0, imageY + imageH, presentW, presentH - imageY - imageH);
+        g.fillRect(0, imageY, imageX, imageH);
+        g.fillRect(imageX + imageW, imageY, presentW - imageX - imageW, imageH);
+        final Graphics2D g2 = (Graphics2D) g;
+        g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, 
+                RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g2.drawImage(offImg, presentTransform, this);
+    }
+    
+    /**
+     * Maps a window position to the canvas. Has to be called with the
+     * render lock held.
+     */
+    private Point2D.Double toCanvas(MouseEvent e) {
+        mousePoint.setLocation(e.getX(), e.getY());
+        return (Point2D.Double) inverseTransform.transform(mousePoint, mousePoint);
+    }
+    
+    /**
+     * Passes the event in canvas coordinates to the channel editor.
+     */
+    private void forwardToEditor(MouseEvent e) {
+        final Point2D.Double p = toCanvas(e);
+        MouseEvent mapped = e;
+        if(!inverseTransform.isIdentity()) {
+            mapped = new MouseEvent(this, e.getID(), e.getWhen(), e.getModifiers(),
+                    (int) Math.floor(p.x), (int) Math.floor(p.y), e.getClickCount(), 
+                    e.isPopupTrigger(), e.getButton());
+        }
+        if(e.getID() == MouseEvent.MOUSE_PRESSED) {
+            channelEditor.mousePressed(mapped);
+        }
+        else if(e.getID() == MouseEvent.MOUSE_RELEASED) {
+            channelEditor.mouseReleased(mapped);
+        }
+        else if(e.getID() == MouseEvent.MOUSE_CLICKED) {
+            channelEditor.mouseClicked(mapped);
+        }
+    }
+
+    @Override
+    public final void paint(Graphics g) {
+        if(activeRendering) {
+            return; // the render thread shows the next frame
+        }
+        synchronized(renderLock) {
+            presentFrame(g, composeFrame());
+        }
+        passiveFrames++;
+        
+        synchronized(paintMonitor) {
+            paintedFrames++;
+            paintMonitor.notifyAll();
         }
     }
 
@@ -190,7 +552,7 @@ public class MixRenderer extends Canvas
     
     @Override
     public void componentResized(ComponentEvent e){
-        sketches.updateSize(getWidth(), getHeight());
+        resizeNanos = System.nanoTime(); // applied by the render loop
     }
     @Override
     public void componentMoved(ComponentEvent e){}
@@ -201,7 +563,10 @@ public class MixRenderer extends Canvas
 
     @Override
     public void mouseClicked(MouseEvent e) {
-        sketches.mouseEvent(false, false, true);
+        synchronized(renderLock) {
+            forwardToEditor(e);
+            sketches.mouseEvent(false, false, true, channels);
+        }
     }
 
     @Override
@@ -214,38 +579,61 @@ public class MixRenderer extends Canvas
 
     @Override
     public void mousePressed(MouseEvent e) {
-        sketches.mouseEvent(true, false, false);
+        synchronized(renderLock) {
+            forwardToEditor(e);
+            sketches.mouseEvent(true, false, false, channels);
+        }
     }
 
     @Override
     public void mouseReleased(MouseEvent e) {
-        sketches.mouseEvent(false, true, false);
+        synchronized(renderLock) {
+            forwardToEditor(e);
+            sketches.mouseEvent(false, true, false, channels);
+        }
     }
 
     @Override
     public void mouseMoved(MouseEvent e) {
-        sketches.mouseMoved(e.getX(), e.getY(), false);
+        synchronized(renderLock) {
+            final Point2D.Double p = toCanvas(e);
+            sketches.mouseMoved((int) Math.floor(p.x), (int) Math.floor(p.y), false, channels);
+        }
     }
 
     @Override
     public void mouseDragged(MouseEvent e) {
-        sketches.mouseMoved(e.getX(), e.getY(), true);
+        synchronized(renderLock) {
+            final Point2D.Double p = toCanvas(e);
+            sketches.mouseMoved((int) Math.floor(p.x), (int) Math.floor(p.y), true, channels);
+        }
     }
 
     @Override
     public void keyPressed(KeyEvent e) {
-        sketches.keyEvent(e, 0);
+        synchronized(renderLock) {
+            sketches.keyEvent(e, 0);
+        }
     }
 
     @Override
     public void keyReleased(KeyEvent e) {
-        sketches.keyEvent(e, 1);
+        synchronized(renderLock) {
+            sketches.keyEvent(e, 1);
+        }
     }
 
     @Override
     public void keyTyped(KeyEvent e) {
-        sketches.keyEvent(e, 2);
+        synchronized(renderLock) {
+            sketches.keyEvent(e, 2);
+        }
     }
     
+    /* Time the window size has to be stable, until the canvas follows */
+    private static final long RESIZE_DELAY = 250000000L;
+    private static final float MAX_FRAME_RATE = 100f;
+    private static final float MIN_FRAME_RATE = 1f;
+    
     private static final long serialVersionUID = 1L;
 }
@@ -0,0 +1,311 @@
+/*
+MixProcessing - Live Mixing of Processing Sketches 
+https://github.com/itschleemilch/MixProcessing
+
+Copyright (c) 2014 Sebastian Schleemilch
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package mixprocessing;
+
+import mixprocessing.channels.ChannelManagement;
+import mixprocessing.channels.SingleChannel;
+import mixprocessing.load.JarManagement;
+import mixprocessing.load.SketchClass;
+import mixprocessing.output.OutputManagement;
+import mixprocessing.sketches.Sketch;
+import mixprocessing.sketches.Sketches;
+import mixprocessing.util.BasePath;
+import mixprocessing.util.SinglePreference;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.imageio.ImageIO;
+
+/**
+ * Renders the sketches without a window into an offscreen image and writes
+ * the frames as PNG or raw (RGB, 8 bit per channel) image sequence.
+ *
+ * The time is simulated with a fixed timestep: Frame n is rendered at
+ * n / frameRate seconds. The frame time decides which sketches are due
+ * (frameRateLastNanos), frameCount is counted per drawn frame and millis()
+ * returns the simulated time (constant during draw() for sketches compiled
+ * from .pde files, see PApplet2). So the output does not depend on the speed of
+ * the machine, frames are rendered as fast as possible. The frames are
+ * encoded in parallel on worker threads.
+ *
+ * Note: No window is opened, but PApplet is a java.applet.Applet and
+ * needs a display. On servers use a virtual X server (e.g. xvfb-run).
+ *
+ * Usage: OfflineRenderer outputFolder seconds [fps] [width] [height]
+ * [png|raw] [sketch names...]
+ *
+ * The bytes allocated by the render pipeline per frame are measured and
+ * printed (see the RenderAllocationTest).
+ *
+ * @author Sebastian Schleemilch
+ */
+public class OfflineRenderer {
+    public static final String FORMAT_PNG = "png";
+    public static final String FORMAT_RAW = "raw";
+    /* Frames, which are not included in the allocation statistics (setup) */
+    private static final int WARMUP_FRAMES = 30;
+
+    private final Sketches sketches;
+    private final ChannelManagement channels;
+    private final int width, height;
+    private final float frameRate;
+
+    private final BufferedImage canvas;
+    private final Graphics2D canvasG;
+    /* Receives the rendered frames, null: none */
+    private OutputManagement outputs = null;
+
+    public OfflineRenderer(Sketches sketches, ChannelManagement channels,
+            int width, int height, float frameRate) {
+        this.sketches = sketches;
+        this.channels = channels;
+        this.width = width;
+        this.height = height;
+        this.frameRate = frameRate;
+        this.canvas = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        this.canvasG = canvas.createGraphics();
+    }
+
+    /**
+     * Passes every rendered frame to the viewports and the recorder.
+     * Viewport windows are presented on the event dispatch thread, so they
+     * do not slow down the rendering. Note: The sketches still need a
+     * display (see above).
+     * @param outputs null: none
+     */
+    public final void setOutputs(OutputManagement outputs) {
+        this.outputs = outputs;
+    }
+
+    /**
+     * Renders the given number of frames and writes them into the output
+     * folder (frame_000000.png, ...). Blocks until all frames are written.
+     * @param frames number of frames
+     * @param outputFolder
+     * @param format FORMAT_PNG or FORMAT_RAW
+     * @throws IOException if a frame could not be written
+     */
+    public final void render(int frames, File outputFolder, final String format)
+            throws IOException
+    {
+        outputFolder.mkdirs();
+        final int encoders = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        final ExecutorService encoderPool = Executors.newFixedThreadPool(encoders,
+                new ThreadFactory() {
+                    private final AtomicInteger counter = new AtomicInteger();
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "MP Frame Encoder " + counter.getAndIncrement());
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+        /* Free frame buffers, limits the number of frames waiting for encoding */
+        final ArrayBlockingQueue<BufferedImage> freeBuffers =
+                new ArrayBlockingQueue<>(encoders * 2);
+        for(int i = 0; i < encoders * 2; i++) {
+            freeBuffers.add(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB));
+        }
+        final AtomicReference<IOException> error = new AtomicReference<>();
+
+        final long periodNanos = Math.round(1000000000d / frameRate);
+        /* Simulated clock, starts after all last-drawn times of the sketches */
+        final long startNanos = System.nanoTime();
+        canvasG.setColor(Color.BLACK);
+        canvasG.fillRect(0, 0, width, height);
+        final long renderStart = System.nanoTime();
+        final boolean oldTracking = sketches.isAllocationTracking();
+        sketches.setAllocationTracking(true);
+        sketches.getAllocations().reset();
+        /* No time limit: a slow frame is no failure, when rendering offline */
+        final long oldTimeLimit = sketches.getWatchdog().getTimeLimit();
+        sketches.getWatchdog().setTimeLimit(0);
+        try {
+            for(int frame = 0; frame < frames && error.get() == null; frame++)
+            {
+                final long frameTime = frame * periodNanos;
+                for (Sketch sketch : sketches.getAllSketches()) {
+                    sketch.setSimulatedMillis(frameTime / 1000000L);
+                }
+                sketches.paintAll(canvas, canvasG, channels, startNanos + frameTime);
+                if(outputs != null) {
+                    outputs.frameRendered(canvas, startNanos + frameTime);
+                }
+                if(frame == WARMUP_FRAMES - 1) {
+                    sketches.getAllocations().reset();
+                }
+
+                final BufferedImage buffer = freeBuffers.take();
+                System.arraycopy(getPixels(canvas), 0, getPixels(buffer), 0,
+                        width * height);
+                final File file = new File(outputFolder, String.format(Locale.US,
+                        "frame_%06d.%s", frame, FORMAT_RAW.equals(format) ? "rgb" : "png"));
+                encoderPool.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            if(FORMAT_RAW.equals(format)) {
+                                writeRaw(buffer, file);
+                            }
+                            else {
+                                ImageIO.write(buffer, "png", file);
+                            }
+                        } catch (IOException e) {
+                            error.compareAndSet(null, e);
+                        } finally {
+                            freeBuffers.add(buffer);
+                        }
+                    }
+                });
+                if(frame % 100 == 0) {
+                    System.out.printf("Offline rendering: frame %d of %d\n", frame, frames);
+                }
+            }
+            encoderPool.shutdown();
+            encoderPool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            encoderPool.shutdownNow();
+            Thread.currentThread().interrupt();
+        } finally {
+            sketches.setAllocationTracking(oldTracking);
+            sketches.getWatchdog().setTimeLimit(oldTimeLimit);
+            for (Sketch sketch : sketches.getAllSketches()) {
+                sketch.setSimulatedMillis(-1);
+            }
+        }
+        if(error.get() != null) {
+            throw error.get();
+        }
+        final double seconds = (System.nanoTime() - renderStart) / 1000000000d;
+        System.out.printf(Locale.US, "Offline rendering: %d frames in %.1f s (%.1f fps)\n",
+                frames, seconds, frames / seconds);
+        if(sketches.getAllocations().getFrames() > 0) {
+            System.out.printf(Locale.US, "Render pipeline allocation: %.0f bytes/frame "
+                    + "(max %d)\n", sketches.getAllocations().getAverageBytes(),
+                    sketches.getAllocations().getMaxBytes());
+        }
+    }
+
+    private static int[] getPixels(BufferedImage image)
+    {
+        return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    }
+
+    /**
+     * Writes the pixels as RGB bytes, e.g. for
+     * ffmpeg -f rawvideo -pix_fmt rgb24.
+     */
+    private static void writeRaw(BufferedImage image, File file) throws IOException
+    {
+        final int[] pixels = getPixels(image);
+        final byte[] line = new byte[image.getWidth() * 3];
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+            for(int offset = 0; offset < pixels.length; offset += image.getWidth()) {
+                for(int x = 0, i = 0; x < image.getWidth(); x++) {
+                    final int rgb = pixels[offset + x];
+                    line[i++] = (byte) (rgb >> 16);
+                    line[i++] = (byte) (rgb >> 8);
+                    line[i++] = (byte) rgb;
+                }
+                out.write(line);
+            }
+        }
+    }
+
+    /**
+     * Renders sketches from the sketch folder (see JarManagement). The
+     * canvas is divided horizontally into one channel per sketch.
+     *
+     * @param args outputFolder seconds [fps] [width] [height] [png|raw]
+     * [sketch names...]
+     */
+    public static void main(String[] args) {
+        if(args.length < 2) {
+            System.err.println("Usage: OfflineRenderer outputFolder seconds "
+                    + "[fps] [width] [height] [png|raw] [sketch names...]");
+            System.exit(1);
+        }
+        final File outputFolder = new File(args[0]);
+        final float seconds = Float.parseFloat(args[1]);
+        final float fps = args.length > 2 ? Float.parseFloat(args[2]) : 30f;
+        final int width = args.length > 3 ? Integer.parseInt(args[3]) : 1280;
+        final int height = args.length > 4 ? Integer.parseInt(args[4]) : 720;
+        final String format = args.length > 5 ? args[5] : FORMAT_PNG;
+
+        File defaultSource = new File(BasePath.getBasePath(), "jarSource");
+        File jarSource = new File(SinglePreference.getPreference(
+                JarManagement.KEY_SKETCH_JAR_SOURCE,
+                defaultSource.getAbsolutePath()));
+        JarManagement jars = new JarManagement(jarSource);
+        jars.readJars();
+
+        Sketches sketches = new Sketches();
+        ArrayList<Sketch> selected = new ArrayList<>();
+        for (SketchClass sketchClass : jars.getSketchClasses()) {
+            Sketch s = new Sketch(sketchClass);
+            boolean use = args.length <= 6;
+            for(int i = 6; i < args.length; i++) {
+                use |= args[i].equals(s.getName());
+            }
+            if(use) {
+                sketches.addSketch(s);
+                s.createInstance(width, height, jarSource.getAbsolutePath());
+                selected.add(s);
+                System.out.printf("Initialise Sketch: %s\n", s.getName());
+            }
+        }
+
+        ChannelManagement channels = new ChannelManagement(sketches);
+        for(int i = 0; i < selected.size(); i++) {
+            int x0 = i * width / selected.size();
+            int x1 = (i + 1) * width / selected.size();
+            SingleChannel channel = channels.addChannel(
+                    new Rectangle(x0, 0, x1 - x0, height));
+            channels.setSketchChannel(selected.get(i), channel);
+        }
+
+        OfflineRenderer renderer = new OfflineRenderer(sketches, channels,
+                width, height, fps);
+        try {
+            renderer.render(Math.round(seconds * fps), outputFolder, format);
+        } catch (IOException e) {
+            e.printStackTrace(System.err);
+            System.exit(1);
+        }
+        System.exit(0);
+    }
+}
@@ -114,8 +114,9 @@ public class RenderFrame extends Frame
     @Override
     public void setVisible(boolean b) {
         super.setVisible(b); 
-        Dimension newSize = scriptingAPI.getRenderer().getSize();
-        scriptingAPI.getSketches().updateSize(newSize.width, newSize.height);
+        MixRenderer renderer = scriptingAPI.getRenderer();
+        scriptingAPI.getSketches().updateSize(renderer.getCanvasWidth(), 
+                renderer.getCanvasHeight());
     }
     
     public final void toggleFullscreen() {
@@ -0,0 +1,532 @@
+/*
+MixProcessing - Live Mixing of Processing Sketches 
+https://github.com/itschleemilch/MixProcessing
+
+Copyright (c) 2014 Sebastian Schleemilch
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package mixprocessing;
+
+import java.awt.Color;
+import java.awt.Composite;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Image;
+import java.awt.Paint;
+import java.awt.Polygon;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.Stroke;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.image.BufferedImageOp;
+import java.awt.image.ImageObserver;
+import java.awt.image.RenderedImage;
+import java.awt.image.renderable.RenderableImage;
+import java.text.AttributedCharacterIterator;
+import java.util.Map;
+
+/**
+ * Forwards all calls to a target Graphics2D and records, which attributes
+ * were changed (see GraphicsState constants). MPGraphics2D hands it to
+ * Processing as g2, so only the attributes a sketch has actually changed 
+ * have to be stored and restored. The clip is not tracked, it is set for
+ * every sketch by Sketches.
+ *
+ * @author Sebastian Schleemilch
+ * @see GraphicsState
+ */
+public class TrackingGraphics2D extends Graphics2D {
+    /* Volatile: replaced by the render thread to detach a hung sketch */
+    private volatile Graphics2D target = null;
+    private int changes = 0;
+
+    public TrackingGraphics2D() {
+    }
+
+    /**
+     * Sets the graphics object, that receives all calls.
+     * @param target
+     */
+    public final void setTarget(Graphics2D target) {
+        this.target = target;
+    }
+
+    /**
+     * Returns the graphics object, that receives all calls.
+     * @return
+     */
+    public final Graphics2D getTarget() {
+        return target;
+    }
+
+    /**
+     * Returns the attributes changed since the last resetChanges() call.
+     * @return e.g. GraphicsState.PAINT | GraphicsState.TRANSFORM
+     */
+    public final int getChanges() {
+        return changes;
+    }
+
+    public final void resetChanges() {
+        changes = 0;
+    }
+
+    /* State changes (tracked) */
+
+    @Override
+    public void setColor(Color c) {
+        changes |= GraphicsState.PAINT;
+        target.setColor(c);
+    }
+
+    @Override
+    public void setPaint(Paint paint) {
+        changes |= GraphicsState.PAINT;
+        target.setPaint(paint);
+    }
+
+    @Override
+    public void setPaintMode() {
+        changes |= GraphicsState.COMPOSITE;
+        target.setPaintMode();
+    }
+
+    @Override
+    public void setXORMode(Color c1) {
+        changes |= GraphicsState.COMPOSITE | GraphicsState.PAINT;
+        target.setXORMode(c1);
+    }
+
+    @Override
+    public void setComposite(Composite comp) {
+        changes |= GraphicsState.COMPOSITE;
+        target.setComposite(comp);
+    }
+
+    @Override
+    public void setFont(Font font) {
+        changes |= GraphicsState.FONT;
+        target.setFont(font);
+    }
+
+    @Override
+    public void setStroke(Stroke s) {
+        changes |= GraphicsState.STROKE;
+        target.setStroke(s);
+    }
+
+    @Override
+    public void setBackground(Color color) {
+        changes |= GraphicsState.BACKGROUND;
+        target.setBackground(color);
+    }
+
+    @Override
+    public void setRenderingHint(RenderingHints.Key hintKey, Object hintValue) {
+        changes |= GraphicsState.HINTS;
+        target.setRenderingHint(hintKey, hintValue);
+    }
+
+    @Override
+    public void setRenderingHints(Map<?, ?> hints) {
+        changes |= GraphicsState.HINTS;
+        target.setRenderingHints(hints);
+    }
+
+    @Override
+    public void addRenderingHints(Map<?, ?> hints) {
+        changes |= GraphicsState.HINTS;
+        target.addRenderingHints(hints);
+    }
+
+    @Override
+    public void translate(int x, int y) {
+        changes |= GraphicsState.TRANSFORM;
+        target.translate(x, y);
+    }
+
+    @Override
+    public void translate(double tx, double ty) {
+        changes |= GraphicsState.TRANSFORM;
+        target.translate(tx, ty);
+    }
+
+    @Override
+    public void rotate(double theta) {
+        changes |= GraphicsState.TRANSFORM;
+        target.rotate(theta);
+    }
+
+    @Override
+    public void rotate(double theta, double x, double y) {
+        changes |= GraphicsState.TRANSFORM;
+        target.rotate(theta, x, y);
+    }
+
+    @Override
+    public void scale(double sx, double sy) {
+        changes |= GraphicsState.TRANSFORM;
+        target.scale(sx, sy);
+    }
+
+    @Override
+    public void shear(double shx, double shy) {
+        changes |= GraphicsState.TRANSFORM;
+        target.shear(shx, shy);
+    }
+
+    @Override
+    public void transform(AffineTransform tx) {
+        changes |= GraphicsState.TRANSFORM;
+        target.transform(tx);
+    }
+
+    @Override
+    public void setTransform(AffineTransform tx) {
+        changes |= GraphicsState.TRANSFORM;
+        target.setTransform(tx);
+    }
+
+    /* State queries */
+
+    @Override
+    public Color getColor() {
+        return target.getColor();
+    }
+
+    @Override
+    public Paint getPaint() {
+        return target.getPaint();
+    }
+
+    @Override
+    public Composite getComposite() {
+        return target.getComposite();
+    }
+
+    @Override
+    public Font getFont() {
+        return target.getFont();
+    }
+
+    @Override
+    public Stroke getStroke() {
+        return target.getStroke();
+    }
+
+    @Override
+    public Color getBackground() {
+        return target.getBackground();
+    }
+
+    @Override
+    public Object getRenderingHint(RenderingHints.Key hintKey) {
+        return target.getRenderingHint(hintKey);
+    }
+
+    @Override
+    public RenderingHints getRenderingHints() {
+        return target.getRenderingHints();
+    }
+
+    @Override
+    public AffineTransform getTransform() {
+        return target.getTransform();
+    }
+
+    @Override
+    public FontMetrics getFontMetrics() {
+        return target.getFontMetrics();
+    }
+
+    @Override
+    public FontMetrics getFontMetrics(Font f) {
+        return target.getFontMetrics(f);
+    }
+
+    @Override
+    public FontRenderContext getFontRenderContext() {
+        return target.getFontRenderContext();
+    }
+
+    @Override
+    public GraphicsConfiguration getDeviceConfiguration() {
+        return target.getDeviceConfiguration();
+    }
+
+    /* Clipping (not tracked) */
+
+    @Override
+    public void clip(Shape s) {
+        target.clip(s);
+    }
+
+    @Override
+    public void clipRect(int x, int y, int width, int height) {
+        target.clipRect(x, y, width, height);
+    }
+
+    @Override
+    public void setClip(int x, int y, int width, int height) {
+        target.setClip(x, y, width, height);
+    }
+
+    @Override
+    public void setClip(Shape clip) {
+        target.setClip(clip);
+    }
+
+    @Override
+    public Shape getClip() {
+        return target.getClip();
+    }
+
+    @Override
+    public Rectangle getClipBounds() {
+        return target.getClipBounds();
+    }
+
+    @Override
+    public Rectangle getClipBounds(Rectangle r) {
+        return target.getClipBounds(r);
+    }
+
+    @Override
+    public boolean hitClip(int x, int y, int width, int height) {
+        return target.hitClip(x, y, width, height);
+    }
+
+    @Override
+    public boolean hit(Rectangle rect, Shape s, boolean onStroke) {
+        return target.hit(rect, s, onStroke);
+    }
+
+    /* Drawing */
+
+    @Override
+    public void draw(Shape s) {
+        target.draw(s);
+    }
+
+    @Override
+    public void fill(Shape s) {
+        target.fill(s);
+    }
+
+    @Override
+    public boolean drawImage(Image img, AffineTransform xform, ImageObserver obs) {
+        return target.drawImage(img, xform, obs);
+    }
+
+    @Override
+    public void drawImage(BufferedImage img, BufferedImageOp op, int x, int y) {
+        target.drawImage(img, op, x, y);
+    }
+
+    @Override
+    public void drawRenderedImage(RenderedImage img, AffineTransform xform) {
+        target.drawRenderedImage(img, xform);
+    }
+
+    @Override
+    public void drawRenderableImage(RenderableImage img, AffineTransform xform) {
+        target.drawRenderableImage(img, xform);
+    }
+
+    @Override
+    public void drawString(String str, int x, int y) {
+        target.drawString(str, x, y);
+    }
+
+    @Override
+    public void drawString(String str, float x, float y) {
+        target.drawString(str, x, y);
+    }
+
+    @Override
+    public void drawString(AttributedCharacterIterator iterator, int x, int y) {
+        target.drawString(iterator, x, y);
+    }
+
+    @Override
+    public void drawString(AttributedCharacterIterator iterator, float x, float y) {
+        target.drawString(iterator, x, y);
+    }
+
+    @Override
+    public void drawChars(char[] data, int offset, int length, int x, int y) {
+        target.drawChars(data, offset, length, x, y);
+    }
+
+    @Override
+    public void drawBytes(byte[] data, int offset, int length, int x, int y) {
+        target.drawBytes(data, offset, length, x, y);
+    }
+
+    @Override
+    public void drawGlyphVector(GlyphVector g, float x, float y) {
+        target.drawGlyphVector(g, x, y);
+    }
+
+    @Override
+    public void copyArea(int x, int y, int width, int height, int dx, int dy) {
+        target.copyArea(x, y, width, height, dx, dy);
+    }
+
+    @Override
+    public void drawLine(int x1, int y1, int x2, int y2) {
+        target.drawLine(x1, y1, x2, y2);
+    }
+
+    @Override
+    public void drawRect(int x, int y, int width, int height) {
+        target.drawRect(x, y, width, height);
+    }
+
+    @Override
+    public void fillRect(int x, int y, int width, int height) {
+        target.fillRect(x, y, width, height);
+    }
+
+    @Override
+    public void clearRect(int x, int y, int width, int height) {
+        target.clearRect(x, y, width, height);
+    }
+
+    @Override
+    public void draw3DRect(int x, int y, int width, int height, boolean raised) {
+        target.draw3DRect(x, y, width, height, raised);
+    }
+
+    @Override
+    public void fill3DRect(int x, int y, int width, int height, boolean raised) {
+        target.fill3DRect(x, y, width, height, raised);
+    }
+
+    @Override
+    public void drawRoundRect(int x, int y, int width, int height, int arcWidth, int arcHeight) {
+        target.drawRoundRect(x, y, width, height, arcWidth, arcHeight);
+    }
+
+    @Override
+    public void fillRoundRect(int x, int y, int width, int height, int arcWidth, int arcHeight) {
+        target.fillRoundRect(x, y, width, height, arcWidth, arcHeight);
+    }
+
+    @Override
+    public void drawOval(int x, int y, int width, int height) {
+        target.drawOval(x, y, width, height);
+    }
+
+    @Override
+    public void fillOval(int x, int y, int width, int height) {
+        target.fillOval(x, y, width, height);
+    }
+
+    @Override
+    public void drawArc(int x, int y, int width, int height, int startAngle, int arcAngle) {
+        target.drawArc(x, y, width, height, startAngle, arcAngle);
+    }
+
+    @Override
+    public void fillArc(int x, int y, int width, int height, int startAngle, int arcAngle) {
+        target.fillArc(x, y, width, height, startAngle, arcAngle);
+    }
+
+    @Override
+    public void drawPolyline(int[] xPoints, int[] yPoints, int nPoints) {
+        target.drawPolyline(xPoints, yPoints, nPoints);
+    }
+
+    @Override
+    public void drawPolygon(int[] xPoints, int[] yPoints, int nPoints) {
+        target.drawPolygon(xPoints, yPoints, nPoints);
+    }
+
+    @Override
+    public void drawPolygon(Polygon p) {
+        target.drawPolygon(p);
+    }
+
+    @Override
+    public void fillPolygon(int[] xPoints, int[] yPoints, int nPoints) {
+        target.fillPolygon(xPoints, yPoints, nPoints);
+    }
+
+    @Override
+    public void fillPolygon(Polygon p) {
+        target.fillPolygon(p);
+    }
+
+    @Override
+    public boolean drawImage(Image img, int x, int y, ImageObserver observer) {
+        return target.drawImage(img, x, y, observer);
+    }
+
+    @Override
+    public boolean drawImage(Image img, int x, int y, int width, int height, 
+            ImageObserver observer) {
+        return target.drawImage(img, x, y, width, height, observer);
+    }
+
+    @Override
+    public boolean drawImage(Image img, int x, int y, Color bgcolor, 
+            ImageObserver observer) {
+        return target.drawImage(img, x, y, bgcolor, observer);
+    }
+
+    @Override
+    public boolean drawImage(Image img, int x, int y, int width, int height, 
+            Color bgcolor, ImageObserver observer) {
+        return target.drawImage(img, x, y, width, height, bgcolor, observer);
+    }
+
+    @Override
+    public boolean drawImage(Image img, int dx1, int dy1, int dx2, int dy2, 
+            int sx1, int sy1, int sx2, int sy2, ImageObserver observer) {
+        return target.drawImage(img, dx1, dy1, dx2, dy2, sx1, sy1, sx2, sy2, observer);
+    }
+
+    @Override
+    public boolean drawImage(Image img, int dx1, int dy1, int dx2, int dy2, 
+            int sx1, int sy1, int sx2, int sy2, Color bgcolor, ImageObserver observer) {
+        return target.drawImage(img, dx1, dy1, dx2, dy2, sx1, sy1, sx2, sy2, 
+                bgcolor, observer);
+    }
+
+    /* Lifecycle */
+
+    /**
+     * Creates an independent copy of the target (not tracked).
+     * @return
+     */
+    @Override
+    public Graphics create() {
+        return target.create();
+    }
+
+    @Override
+    public void dispose() {
+        target.dispose();
+    }
+}
@@ -27,6 +27,7 @@ import java.awt.event.MouseListener;
 import java.awt.geom.GeneralPath;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
+import mixprocessing.output.WarpMap;
 
 /**
  * Handles the channel editing.
@@ -152,4 +153,64 @@ public class ChannelEditing implements MouseListener {
         drawControlPoint(g, (float)(bounds.getX()), (float)(bounds.getY()+bounds.getHeight()) );
     }
     
+    /**
+     * Draws the grid and control points of a warp.
+     * @param g
+     * @param warp
+     * @param width output width
+     * @param height output height
+     */
+    public static void drawWarpGrid(Graphics2D g, WarpMap warp, int width, int height)
+    {
+        g.setColor(Color.MAGENTA);
+        final int columns = warp.getColumns(), rows = warp.getRows();
+        for(int r = 0; r < rows; r++) {
+            for(int c = 0; c < columns; c++) {
+                float[] p = warp.getPoint(c, r);
+                if(p == null) { // grid changed meanwhile
+                    return;
+                }
+                final float x = p[0] * width, y = p[1] * height;
+                drawControlPoint(g, x, y);
+                float[] right = warp.getPoint(c + 1, r);
+                float[] below = warp.getPoint(c, r + 1);
+                if(right != null) {
+                    g.drawLine((int) x, (int) y, (int) (right[0] * width), (int) (right[1] * height));
+                }
+                if(below != null) {
+                    g.drawLine((int) x, (int) y, (int) (below[0] * width), (int) (below[1] * height));
+                }
+            }
+        }
+    }
+    
+    /**
+     * Returns the warp control point next to a position.
+     * @param warp
+     * @param x position in the output
+     * @param y position in the output
+     * @param width output width
+     * @param height output height
+     * @return column, row or null (no point within 20 pixels)
+     */
+    public static int[] findWarpPoint(WarpMap warp, int x, int y, int width, int height)
+    {
+        int[] found = null;
+        double nearest = 20 * 20;
+        for(int r = 0; r < warp.getRows(); r++) {
+            for(int c = 0; c < warp.getColumns(); c++) {
+                float[] p = warp.getPoint(c, r);
+                if(p == null) {
+                    continue;
+                }
+                final double dx = p[0] * width - x, dy = p[1] * height - y;
+                if(dx * dx + dy * dy <= nearest) {
+                    nearest = dx * dx + dy * dy;
+                    found = new int[] { c, r };
+                }
+            }
+        }
+        return found;
+    }
+    
 }
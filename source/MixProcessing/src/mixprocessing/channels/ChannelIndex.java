@@ -0,0 +1,133 @@
+/*
+MixProcessing - Live Mixing of Processing Sketches 
+https://github.com/itschleemilch/MixProcessing
+
+Copyright (c) 2014 Sebastian Schleemilch
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package mixprocessing.channels;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.List;
+import mixprocessing.sketches.Sketch;
+
+/**
+ * Spatial index of the enabled channels and their sketches: A uniform grid
+ * over the channel bounds, every cell lists the channels overlapping it.
+ * A hit test checks only the channels of one cell against their cached
+ * masks.
+ *
+ * @author Sebastian Schleemilch
+ * @see ChannelManagement#findSketchesAt(int, int, java.util.List)
+ */
+public class ChannelIndex {
+    private static final int CELL_SIZE = 64;
+
+    private int originX = 0, originY = 0, columns = 0, rows = 0;
+    private ArrayList<Entry>[] cells = null;
+
+    public ChannelIndex() {
+    }
+
+    /**
+     * Rebuilds the index.
+     * @param channels all channels
+     * @param sketches all sketches (output channels are looked up)
+     */
+    @SuppressWarnings("unchecked")
+    public final void rebuild(SingleChannel[] channels, Sketch[] sketches)
+    {
+        final ArrayList<Entry> entries = new ArrayList<>();
+        Rectangle union = null;
+        for (SingleChannel channel : channels) {
+            ChannelMask mask = channel.getMask();
+            if(!channel.isEnabled() || mask == null || mask.getBounds().isEmpty()) {
+                continue;
+            }
+            Entry entry = new Entry(mask);
+            for (Sketch sketch : sketches) {
+                if(sketch.getOutputChannel() == channel) {
+                    entry.sketches.add(sketch);
+                }
+            }
+            if(entry.sketches.isEmpty()) {
+                continue;
+            }
+            entries.add(entry);
+            union = (union == null) ? new Rectangle(mask.getBounds()) :
+                    union.union(mask.getBounds());
+        }
+        if(union == null) {
+            cells = null;
+            columns = rows = 0;
+            return;
+        }
+        originX = union.x;
+        originY = union.y;
+        columns = (union.width + CELL_SIZE - 1) / CELL_SIZE;
+        rows = (union.height + CELL_SIZE - 1) / CELL_SIZE;
+        cells = new ArrayList[columns * rows];
+        for (Entry entry : entries) {
+            final Rectangle b = entry.mask.getBounds();
+            final int c0 = (b.x - originX) / CELL_SIZE;
+            final int r0 = (b.y - originY) / CELL_SIZE;
+            final int c1 = (b.x + b.width - 1 - originX) / CELL_SIZE;
+            final int r1 = (b.y + b.height - 1 - originY) / CELL_SIZE;
+            for(int r = r0; r <= r1; r++) {
+                for(int c = c0; c <= c1; c++) {
+                    final int i = r * columns + c;
+                    if(cells[i] == null) {
+                        cells[i] = new ArrayList<>(2);
+                    }
+                    cells[i].add(entry);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds all sketches, whose channel contains the given point.
+     * @param x
+     * @param y
+     * @param result
+     */
+    public final void findSketchesAt(int x, int y, List<Sketch> result)
+    {
+        if(cells == null || x < originX || y < originY) {
+            return;
+        }
+        final int c = (x - originX) / CELL_SIZE;
+        final int r = (y - originY) / CELL_SIZE;
+        if(c >= columns || r >= rows || cells[r * columns + c] == null) {
+            return;
+        }
+        for (Entry entry : cells[r * columns + c]) {
+            if(entry.mask.getAlpha(x, y) >= 128) {
+                result.addAll(entry.sketches);
+            }
+        }
+    }
+
+    private static final class Entry {
+        private final ChannelMask mask;
+        private final ArrayList<Sketch> sketches = new ArrayList<>(1);
+
+        Entry(ChannelMask mask) {
+            this.mask = mask;
+        }
+    }
+}
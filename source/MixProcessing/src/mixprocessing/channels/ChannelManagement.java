@@ -28,6 +28,7 @@ import java.awt.Rectangle;
 import java.awt.Shape;
 import java.awt.geom.Rectangle2D;
 import java.util.ArrayList;
+import java.util.List;
 import mixprocessing.sketches.Sketches;
 
 /**
@@ -39,6 +40,9 @@ import mixprocessing.sketches.Sketches;
  * @author Sebastian Schleemilch
  */
 public class ChannelManagement {
+    /* Font of the channel names in the outline preview, created once */
+    private static final Font OUTLINE_FONT = new Font("Arial", Font.BOLD, 10);
+    
     private final ArrayList<SingleChannel> channels = new ArrayList<>();
     private boolean previewChannelOutlines = true;
     private final Rectangle2D.Float offChannel = new Rectangle2D.Float(0, 0, 0, 0);
@@ -46,6 +50,9 @@ public class ChannelManagement {
     
     private final Sketches sketches;
     private int creationCounter = 0;
+    /* Hit test index, rebuilt on demand after changes */
+    private final ChannelIndex index = new ChannelIndex();
+    private volatile boolean indexDirty = true;
 
     public ChannelManagement(Sketches sketches) {
         this.sketches = sketches;
@@ -54,7 +61,9 @@ public class ChannelManagement {
     public final SingleChannel addChannel()
     {
         SingleChannel channel = new SingleChannel(creationCounter);
+        channel.manager = this;
         channels.add(channel);
+        indexDirty = true;
         if(eventManager != null) {
             eventManager.fireChannelsChanged();
         }
@@ -76,7 +85,9 @@ public class ChannelManagement {
     public final GroupChannel addGroupChannel()
     {
         GroupChannel channel = new GroupChannel(channels.size());
+        channel.manager = this;
         channels.add(channel);
+        indexDirty = true;
         if(eventManager != null) {
             eventManager.fireChannelsChanged();
         }
@@ -91,6 +102,8 @@ public class ChannelManagement {
     public final void removeChannel(SingleChannel channel)
     {
         channels.remove(channel);
+        channel.manager = null;
+        indexDirty = true;
         // Also remove association
         for(Sketch s : sketches.getAllSketches()) {
             if(s.getOutputChannel().equals(channel)) {
@@ -144,7 +157,7 @@ public class ChannelManagement {
      */
     public final void paintChannelOutlines(Graphics2D g)
     {
-        g.setFont(new Font("Arial", Font.BOLD, 10));
+        g.setFont(OUTLINE_FONT);
         final int STR_MODE_WITH = g.getFontMetrics().stringWidth("EDIT MODE");
         g.setColor(Color.BLACK);
         g.fillRect(10, 0, STR_MODE_WITH, 10);
@@ -189,7 +202,8 @@ public class ChannelManagement {
     public final void paintBlackedChannels(Graphics2D g)
     {
         g.setColor(Color.BLACK);
-        for (SingleChannel c : channels) {
+        for(int i = 0; i < channels.size(); i++) { // no iterator per frame
+            final SingleChannel c = channels.get(i);
             if(c.paintBlackFlag && c.getShape() != null)
             {
                 c.paintBlackFlag = false;
@@ -209,8 +223,10 @@ public class ChannelManagement {
     }
     /**
      * Returns a 0x0 rectangle shape to perform a contant
-     * paint rate to all sketches even if they are on disabled channels.
+     * paint rate to all sketches even if they are on disabled channels
+     * (depending on their off channel policy).
      * @return 
+     * @see mixprocessing.sketches.Sketches#setOffChannelPolicy(mixprocessing.sketches.Sketch.OffChannelPolicy) 
      */
     public final Shape getNullChannelShape() {
         return offChannel;
@@ -224,6 +240,7 @@ public class ChannelManagement {
     public final void setSketchChannel(Sketch sketch, SingleChannel channel)
     {
         sketch.setOutputChannel(channel);
+        indexDirty = true;
     }
     
     /**
@@ -232,5 +249,31 @@ public class ChannelManagement {
      */
     public final void unsetSketchChannel(Sketch sketch) {
         sketch.setOutputChannel(null);
+        indexDirty = true;
+    }
+    
+    /**
+     * Called by a channel after its shape or state has changed.
+     */
+    final void channelChanged() {
+        indexDirty = true;
+    }
+    
+    /**
+     * Adds all sketches, whose (enabled) output channel contains the 
+     * given point. 
+     * @param x
+     * @param y
+     * @param result 
+     */
+    public final void findSketchesAt(int x, int y, List<Sketch> result)
+    {
+        synchronized(index) {
+            if(indexDirty) {
+                indexDirty = false;
+                index.rebuild(getAllChannels(), sketches.getAllSketches());
+            }
+            index.findSketchesAt(x, y, result);
+        }
     }
 }
@@ -0,0 +1,126 @@
+/*
+MixProcessing - Live Mixing of Processing Sketches 
+https://github.com/itschleemilch/MixProcessing
+
+Copyright (c) 2014 Sebastian Schleemilch
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package mixprocessing.channels;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.geom.Area;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+
+/**
+ * Rasterized output area of a channel: integer bounds and an alpha mask
+ * with one byte per pixel within the bounds. Axis-aligned rectangles are
+ * detected and need no mask (fast path). The mask is not antialiased, it
+ * covers exactly the pixels of Graphics2D.setClip(shape), so masked
+ * layers (parallel rendering) equal the sequential clipping.
+ *
+ * Created once per shape by SingleChannel, so complex paths are not
+ * rasterized by the clipping of each frame again.
+ *
+ * @author Sebastian Schleemilch
+ * @see SingleChannel#getMask()
+ */
+public class ChannelMask {
+    private final Shape shape;
+    private final Rectangle bounds;
+    private final boolean rectangular;
+    /* Alpha values within the bounds (row by row), null if rectangular */
+    private final byte[] alpha;
+
+    /**
+     * Rasterizes the given shape.
+     * @param shape
+     */
+    public ChannelMask(Shape shape) {
+        this.shape = shape;
+        this.bounds = shape.getBounds();
+        this.rectangular = bounds.isEmpty() ||
+                (bounds.equals(shape.getBounds2D()) && new Area(shape).isRectangular());
+        if(rectangular) {
+            alpha = null;
+        }
+        else {
+            BufferedImage raster = new BufferedImage(bounds.width, bounds.height,
+                    BufferedImage.TYPE_BYTE_GRAY);
+            Graphics2D g = raster.createGraphics();
+            /* Filled through the clip: same rasterization as setClip(shape) */
+            g.translate(-bounds.x, -bounds.y);
+            g.setClip(shape);
+            g.setColor(Color.WHITE);
+            g.fill(bounds);
+            g.dispose();
+            alpha = ((DataBufferByte) raster.getRaster().getDataBuffer()).getData();
+        }
+    }
+
+    /**
+     * Returns the shape the mask was created from.
+     * @return
+     */
+    public final Shape getShape() {
+        return shape;
+    }
+
+    /**
+     * Returns the integer bounds of the shape. Must not be modified.
+     * @return
+     */
+    public final Rectangle getBounds() {
+        return bounds;
+    }
+
+    /**
+     * Returns if the shape is an axis-aligned rectangle with integer
+     * coordinates. Then the bounds are the exact output area.
+     * @return
+     */
+    public final boolean isRectangular() {
+        return rectangular;
+    }
+
+    /**
+     * Returns the alpha value at the given position.
+     * @param x
+     * @param y
+     * @return 0 (outside) .. 255 (inside)
+     */
+    public final int getAlpha(int x, int y) {
+        if(!bounds.contains(x, y)) {
+            return 0;
+        }
+        if(rectangular) {
+            return 255;
+        }
+        return alpha[(y - bounds.y) * bounds.width + (x - bounds.x)] & 0xff;
+    }
+
+    /**
+     * Returns the alpha values (row by row, row length = bounds width) or
+     * null, if the mask is rectangular.
+     * @return
+     */
+    public final byte[] getAlphaData() {
+        return alpha;
+    }
+}
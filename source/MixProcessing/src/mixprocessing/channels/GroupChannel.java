@@ -39,6 +39,7 @@ public class GroupChannel extends SingleChannel {
     
     public void addGroupElement(Shape element) {
         gp.append(element, false);
+        invalidateMask();
     }
     
 }
@@ -28,9 +28,13 @@ import java.awt.Shape;
  */
 public class SingleChannel implements Comparable<SingleChannel> {
     private Shape shape = null;
+    /* Rasterized shape, created on demand */
+    private volatile ChannelMask mask = null;
     private String channelName;
     private boolean enabled = true;
     public boolean paintBlackFlag = false;
+    /* Manager, that has to be informed about changes (hit test index) */
+    ChannelManagement manager = null;
 
     public SingleChannel(int runningID) {
         this.channelName = "channel"+runningID;
@@ -46,6 +50,7 @@ public class SingleChannel implements Comparable<SingleChannel> {
 
     public final void setEnabled(boolean enabled) {
         this.enabled = enabled;
+        fireChanged();
     }
 
     /**
@@ -75,6 +80,36 @@ public class SingleChannel implements Comparable<SingleChannel> {
 
     public final void setShape(Shape shape) {
         this.shape = shape;
+        this.mask = null;
+        fireChanged();
+    }
+    
+    /**
+     * Returns the rasterized output area. The mask is cached until the
+     * shape changes.
+     * @return mask or null (no shape)
+     */
+    public final ChannelMask getMask() {
+        ChannelMask m = mask;
+        if(m == null && shape != null) {
+            m = new ChannelMask(shape);
+            mask = m;
+        }
+        return m;
+    }
+    
+    /**
+     * Has to be called after the shape object has been modified.
+     */
+    protected final void invalidateMask() {
+        this.mask = null;
+        fireChanged();
+    }
+    
+    private void fireChanged() {
+        if(manager != null) {
+            manager.channelChanged();
+        }
     }
 
     @Override
@@ -20,25 +20,50 @@ along with this program.  If not, see <http://www.gnu.org/licenses/>.
 
 package mixprocessing.load;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.net.URL;
-import java.net.URLClassLoader;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
 import java.util.ArrayList;
-import java.util.Scanner;
-import processing.core.PApplet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import mixprocessing.util.BasePath;
 
 /**
  * Scannes a specified folder for valid Processing Sketches and collects them.
+ * The JAR files are scanned in parallel. The main class, its superclass 
+ * (read from the class file header), size and modification time of every
+ * JAR are kept in an index file, so unchanged JARs are not opened again.
+ * Only main classes extending PApplet are registered, the sketch classes
+ * are loaded on first use.
  *
  * @author Sebastian Schleemilch
+ * @see SketchClass
  */
 public class JarManagement {
     /* location where exported Processing sketches are stored */
     private final File jarFolder;
-    /* Stores all loaded sketches and their runtime instances */
-    private final ArrayList<Class<?>> sketches = new ArrayList<>();
+    /* Stores all found sketches */
+    private final ArrayList<SketchClass> sketches = new ArrayList<>();
+    /* JAR path -> scan result, loaded from and stored to INDEX_FILE */
+    private final HashMap<String, IndexEntry> index = new HashMap<>();
+    private static final String INDEX_FILE = "jar-index.txt";
+    private static final String APPLET_CLASS = "processing.core.PApplet";
 
     /**
      * Create new JarManagement object. Afterwards the readJars() method can be
@@ -52,11 +77,13 @@ public class JarManagement {
     }
     
     /**
-     * Searches for JAR (Java Archive) files within the jarFolder.
+     * Searches for JAR (Java Archive) files within the jarFolder. JARs,
+     * which are not in the index or have changed, are scanned in parallel.
      * @see JarManagement#readJar(java.io.File) 
      */
     public final void readJars()
     {
+        final long startTime = System.nanoTime();
         File[] jars = jarFolder.listFiles(new FileFilter() {
             @Override
             public boolean accept(File pathname) {
@@ -64,84 +91,247 @@ public class JarManagement {
             }
         });
         sketches.clear();
-        for (File jar : jars) {
-            readJar(jar);
+        if(jars == null) {
+            System.out.printf("\tCan't read folder: %s\n", jarFolder);
+            return;
         }
+        Arrays.sort(jars);
+        loadIndex();
+        
+        final IndexEntry[] entries = new IndexEntry[jars.length];
+        final ArrayList<Callable<IndexEntry>> scans = new ArrayList<>();
+        final ArrayList<Integer> scanned = new ArrayList<>();
+        for(int i = 0; i < jars.length; i++) {
+            final File jar = jars[i];
+            final IndexEntry cached = index.get(jar.getAbsolutePath());
+            if(cached != null && cached.size == jar.length() && 
+                    cached.modified == jar.lastModified()) {
+                entries[i] = cached;
+            }
+            else {
+                scanned.add(i);
+                scans.add(new Callable<IndexEntry>() {
+                    @Override
+                    public IndexEntry call() {
+                        return readJar(jar);
+                    }
+                });
+            }
+        }
+        if(!scans.isEmpty()) {
+            List<Future<IndexEntry>> results = ForkJoinPool.commonPool().invokeAll(scans);
+            for(int i = 0; i < results.size(); i++) {
+                try {
+                    entries[scanned.get(i)] = results.get(i).get();
+                } catch (InterruptedException | ExecutionException e) {
+                    e.printStackTrace(System.err);
+                }
+            }
+        }
+        
+        for(int i = 0; i < jars.length; i++) {
+            final IndexEntry entry = entries[i];
+            if(entry == null) {
+                continue;
+            }
+            index.put(jars[i].getAbsolutePath(), entry);
+            if(!entry.mainClass.isEmpty() && APPLET_CLASS.equals(entry.superClass)) {
+                sketches.add(new SketchClass(jars[i], entry.mainClass));
+            }
+        }
+        if(!scans.isEmpty()) {
+            storeIndex();
+        }
+        System.out.printf("\tFound %d sketches in %d JAR files (%d scanned) in %d ms\n", 
+                sketches.size(), jars.length, scans.size(), 
+                (System.nanoTime() - startTime) / 1000000L);
     }
+    
     /**
-     * Scans the JAR archive for a manifest file and loades the declared
-     * main class. If the main class is a valid Processing Sketch (instance
-     * of PApplet), the class is added to the sketches list. The sketch is not
-     * instanced, nor inited yet.
+     * Reads the declared main class from the manifest of the JAR archive
+     * and its superclass from the class file. The class is not loaded yet.
      * 
      * @param jar Jar File to be scanned.
+     * @return scan result (empty main or superclass, if not found)
      */
-    private void readJar(File jar)
+    private static IndexEntry readJar(File jar)
     {
-        System.out.printf("\tTest JAR file: %s \n", jar.toURI());
-        URLClassLoader cloader = null;
-        String mainClass = null;
-        try {
-            URL jarURL = new URL("jar", "",jar.toURI()+"!/");    
-            cloader = URLClassLoader.newInstance(new URL[] {jarURL });   
-            URL res = cloader.findResource("META-INF/MANIFEST.MF");
-            if(res == null)
+        String mainClass = null, superClass = null;
+        try (JarFile jarFile = new JarFile(jar, false)) {
+            Manifest manifest = jarFile.getManifest();
+            if(manifest == null)
             {
-                System.out.printf("\t\tCan't find a Manifest-File at %s\n", jarURL);
-                return;
+                System.out.printf("\tCan't find a Manifest-File at %s\n", jar.getName());
             }
-            System.out.printf("\t\tScan Manifest: %s\n", res);
-            Scanner input = new Scanner(res.openStream(), "UTF-8");
-            String line;
-            while(input.hasNextLine())
-            {
-                line = input.nextLine();
-                //System.out.printf("\t\t(%s)\n", line);
-                if(line.toLowerCase().startsWith("main-class:"))
-                {
-                    mainClass = line.substring("Main-Class: ".length()).trim();
+            else {
+                mainClass = manifest.getMainAttributes().getValue("Main-Class");
+                if(mainClass == null) {
+                    System.out.printf("\tCan't find a main class in %s\n", jar.getName());
+                }
+                else {
+                    mainClass = mainClass.trim();
+                    superClass = readSuperClass(jarFile, mainClass);
+                    if(!APPLET_CLASS.equals(superClass)) {
+                        System.out.printf("\tMain class of %s is no Processing sketch\n", 
+                                jar.getName());
+                    }
                 }
             }
-            input.close();
         } catch (IOException e) {
             e.printStackTrace(System.err);
-        } 
-        if(cloader != null && mainClass != null)
-        {
-            System.out.printf("\t\tDiscovered main class: %s from %s\n", mainClass, jar.getName());
-            try {
-                Class<?> sketchClass = cloader.loadClass(mainClass);
-                Class<?> superClass = sketchClass.getSuperclass();
-                if(superClass.equals(PApplet.class))
-                {
-                    sketches.add(sketchClass);
-                    System.out.printf("\t\tSketch loaded: %s\n", mainClass);
-                }
-                else {
-                    System.out.printf("\t\tClass is no Processing Sketch: %s\n", mainClass);
+            return null;
+        }
+        return new IndexEntry(jar.length(), jar.lastModified(), 
+                (mainClass == null) ? "" : mainClass,
+                (superClass == null) ? "" : superClass);
+    }
+    
+    /**
+     * Reads the name of the superclass from the header of a class file
+     * (constant pool, see the JVM specification, chapter 4).
+     * @param jarFile
+     * @param className binary name, e.g. "sketch.Main"
+     * @return superclass, e.g. "processing.core.PApplet", or null, if the
+     * class file is missing or broken
+     */
+    private static String readSuperClass(JarFile jarFile, String className)
+    {
+        final JarEntry entry = jarFile.getJarEntry(className.replace('.', '/') + ".class");
+        if(entry == null) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                jarFile.getInputStream(entry)))) {
+            if(in.readInt() != 0xCAFEBABE) {
+                return null;
+            }
+            in.readUnsignedShort(); // minor version
+            in.readUnsignedShort(); // major version
+            final int count = in.readUnsignedShort();
+            final String[] utf8 = new String[count];
+            final int[] classNames = new int[count];
+            for(int i = 1; i < count; i++) {
+                final int tag = in.readUnsignedByte();
+                switch(tag) {
+                    case 1: // Utf8
+                        utf8[i] = in.readUTF();
+                        break;
+                    case 7: // Class
+                        classNames[i] = in.readUnsignedShort();
+                        break;
+                    case 8: case 16: case 19: case 20: // String, MethodType, Module, Package
+                        in.skipBytes(2);
+                        break;
+                    case 15: // MethodHandle
+                        in.skipBytes(3);
+                        break;
+                    case 3: case 4: case 9: case 10: case 11: case 12: case 17: case 18:
+                        in.skipBytes(4);
+                        break;
+                    case 5: case 6: // Long, Double: two entries
+                        in.skipBytes(8);
+                        i++;
+                        break;
+                    default:
+                        return null;
                 }
-            } catch (ClassNotFoundException e) {
-                e.printStackTrace(System.err);
             }
+            in.readUnsignedShort(); // access flags
+            in.readUnsignedShort(); // this class
+            final int superIndex = in.readUnsignedShort();
+            if(superIndex <= 0 || superIndex >= count || classNames[superIndex] <= 0 ||
+                    classNames[superIndex] >= count) {
+                return null;
+            }
+            final String name = utf8[classNames[superIndex]];
+            return (name == null) ? null : name.replace('/', '.');
+        } catch (IOException e) {
+            e.printStackTrace(System.err);
+            return null;
         }
-        else if(cloader != null)
-        {
-            System.out.printf("\t\tCan't find a main class.\n");
+    }
+    
+    private static File getIndexFile()
+    {
+        return new File(BasePath.getBasePath(), INDEX_FILE);
+    }
+    
+    /**
+     * Reads the index file: one JAR per line, tab separated path, size,
+     * modification time, main class and its superclass. Lines of older
+     * versions (without superclass) are skipped, so the JAR is scanned again.
+     */
+    private void loadIndex()
+    {
+        index.clear();
+        File indexFile = getIndexFile();
+        if(!indexFile.isFile()) {
+            return;
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(indexFile), "UTF-8"))) {
+            String line;
+            while((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t", -1);
+                if(fields.length != 5) {
+                    continue;
+                }
+                try {
+                    index.put(fields[0], new IndexEntry(Long.parseLong(fields[1]), 
+                            Long.parseLong(fields[2]), fields[3], fields[4]));
+                } catch (NumberFormatException e) {
+                    // skip broken line, the JAR is scanned again
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace(System.err);
         }
-        else if(mainClass != null)
-        {
-            System.out.printf("\t\tCan't create classloader.\n");
+    }
+    
+    /**
+     * Writes the index file. Entries of deleted JARs are dropped.
+     */
+    private void storeIndex()
+    {
+        try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(getIndexFile()), "UTF-8"))) {
+            for (String path : index.keySet()) {
+                if(!new File(path).isFile()) {
+                    continue;
+                }
+                IndexEntry entry = index.get(path);
+                writer.write(path + "\t" + entry.size + "\t" + entry.modified + 
+                        "\t" + entry.mainClass + "\t" + entry.superClass);
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            e.printStackTrace(System.err);
         }
     }
     
     /**
-     * Returns all found processing sketches as their plain classes.
+     * Returns all found processing sketches. Their classes are not loaded
+     * yet.
      * @return all sketch classes within the scanned folder
      */
-    public final Class<?>[] getSketchClasses()
+    public final SketchClass[] getSketchClasses()
     {
-        return sketches.toArray(new Class<?>[0]);
+        return sketches.toArray(new SketchClass[0]);
     }
     
     public static final String KEY_SKETCH_JAR_SOURCE = "sketches.source.exported";
+    
+    private static final class IndexEntry {
+        private final long size;
+        private final long modified;
+        private final String mainClass;
+        private final String superClass;
+
+        IndexEntry(long size, long modified, String mainClass, String superClass) {
+            this.size = size;
+            this.modified = modified;
+            this.mainClass = mainClass;
+            this.superClass = superClass;
+        }
+    }
 }
@@ -29,10 +29,35 @@ import processing.core.PApplet;
  */
 public class PApplet2 extends PApplet {
 
+    /* Offline rendering: value of millis(), -1: real time */
+    private volatile long frozenMillis = -1;
+
     public PApplet2() {
         frameCount = 0;
     }
 
+    /**
+     * Returns the frozen time during offline rendering, otherwise the
+     * real time since the start of the sketch.
+     * @return milliseconds
+     * @see #setFrozenMillis(long) 
+     */
+    @Override
+    public int millis() {
+        final long frozen = frozenMillis;
+        return frozen >= 0 ? (int) frozen : super.millis();
+    }
+
+    /**
+     * Sets the value millis() returns until the next call, so the time
+     * stands still during the whole frame.
+     * @param millis simulated time or -1 (real time)
+     * @see mixprocessing.sketches.Sketch#setSimulatedMillis(long) 
+     */
+    public final void setFrozenMillis(long millis) {
+        this.frozenMillis = millis;
+    }
+
     /**
      * Override to prevent crash during sketch setup.
      * @param w
@@ -0,0 +1,119 @@
+/*
+MixProcessing - Live Mixing of Processing Sketches 
+https://github.com/itschleemilch/MixProcessing
+
+Copyright (c) 2014 Sebastian Schleemilch
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package mixprocessing.load;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import processing.core.PApplet;
+
+/**
+ * Class of a Processing Sketch, which is loaded when it is needed first:
+ * Either an already loaded class (e.g. compiled sketch) or the main class
+ * of an exported JAR file. A JAR's class loader is created by the first
+ * loadClass() call.
+ *
+ * @author Sebastian Schleemilch
+ * @see JarManagement
+ */
+public class SketchClass {
+    private final File jar;
+    private final String className;
+    private Class<?> loaded = null;
+    private boolean failed = false;
+
+    /**
+     * Wraps an already loaded sketch class.
+     * @param sketchClass 
+     */
+    public SketchClass(Class<?> sketchClass) {
+        this.jar = null;
+        this.className = sketchClass.getName();
+        this.loaded = sketchClass;
+    }
+
+    /**
+     * Creates a sketch class, which is loaded from the given JAR file.
+     * @param jar exported sketch
+     * @param className main class of the JAR
+     */
+    public SketchClass(File jar, String className) {
+        this.jar = jar;
+        this.className = className;
+    }
+
+    /**
+     * Returns the simple name of the class (equals the Processing sketch 
+     * name) without loading it.
+     * @return 
+     */
+    public final String getSimpleName() {
+        return className.substring(className.lastIndexOf('.') + 1);
+    }
+
+    /**
+     * Returns the JAR file of the sketch.
+     * @return file or null (class was loaded already)
+     */
+    public final File getJar() {
+        return jar;
+    }
+
+    /**
+     * Returns if the class is loaded already.
+     * @return 
+     */
+    public final synchronized boolean isLoaded() {
+        return loaded != null;
+    }
+
+    /**
+     * Loads the class from the JAR file, if not done yet. A class, which 
+     * can not be loaded or is no Processing Sketch (direct subclass of 
+     * PApplet), is reported once.
+     * @return the class or null
+     */
+    public final synchronized Class<?> loadClass()
+    {
+        if(loaded != null || failed) {
+            return loaded;
+        }
+        failed = true;
+        try {
+            URL jarURL = new URL("jar", "", jar.toURI() + "!/");
+            URLClassLoader cloader = URLClassLoader.newInstance(new URL[] { jarURL });
+            Class<?> sketchClass = cloader.loadClass(className);
+            if(PApplet.class.equals(sketchClass.getSuperclass())) {
+                loaded = sketchClass;
+                failed = false;
+                System.out.printf("Sketch loaded: %s from %s\n", className, jar.getName());
+            }
+            else {
+                System.out.printf("Class is no Processing Sketch: %s from %s\n", 
+                        className, jar.getName());
+            }
+        } catch (IOException | ClassNotFoundException | LinkageError e) {
+            e.printStackTrace(System.err);
+        }
+        return loaded;
+    }
+}
@@ -19,12 +19,24 @@
  */
 package mixprocessing.load;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -41,15 +53,22 @@ import javax.tools.JavaFileObject;
 import javax.tools.SimpleJavaFileObject;
 import javax.tools.StandardJavaFileManager;
 import javax.tools.ToolProvider;
+import mixprocessing.util.BasePath;
+import processing.core.PApplet;
 
 /**
  * Compiles a Processing Sketch by it's given project folder or pde File.
  * Known Issue: Can not handle multi pde-file projects.
+ * The compiled classes are cached on disk, keyed by a hash of the 
+ * preprocessed code and the library versions, so an unchanged sketch is
+ * loaded without compiling.
  *
  * @see <a href="http://openbook.galileocomputing.de/java7/1507_19_002.html">Programme mit der Compiler API übersetzen</a>
  * @author Sebastian Schleemilch
  */
 public class SketchCompiler {
+    /* Compiled classes, below the base path */
+    private static final String CACHE_FOLDER = "compiled";
 
     public SketchCompiler() {
     }
@@ -82,7 +101,12 @@ public class SketchCompiler {
 
 
             final String javaCode = preprocessSketch(className, pdeText.toString());
-            final Class<?> compiled = compileCode(className, javaCode);
+            final File cacheFile = getCacheFile(javaCode);
+            Class<?> compiled = (cacheFile != null) ? 
+                    loadCached(className, cacheFile) : null;
+            if(compiled == null) {
+                compiled = compileCode(className, javaCode, cacheFile);
+            }
             
             if(compiled != null && 
                     compiled.getSuperclass().equals(PApplet2.class)) {
@@ -143,23 +167,133 @@ public class SketchCompiler {
     }
     
     /**
-     * Returns class name from given pde File
+     * Returns class name from given pde File (file name without extension)
      * @param pdeFile
      * @return 
      */
-    private String getClassName(File pdeFile)
+    public static String getClassName(File pdeFile)
     {
         String n = pdeFile.getName();
-        return n.substring(0, n.lastIndexOf('.'));
+        int dot = n.lastIndexOf('.');
+        return (dot > 0) ? n.substring(0, dot) : n;
+    }
+    
+    /**
+     * Returns the cache file of the given source code. The name is a hash 
+     * of the code, the Java version and the versions of the Processing 
+     * core and of MixProcessing.
+     * @param src preprocessed source code
+     * @return file or null (no hash algorithm)
+     */
+    private File getCacheFile(String src)
+    {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(src.getBytes(StandardCharsets.UTF_8));
+            String versions = "\n" + System.getProperty("java.version") + 
+                    "\n" + getVersion(PApplet.class) + "\n" + getVersion(PApplet2.class);
+            digest.update(versions.getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder();
+            for (byte b : digest.digest()) {
+                name.append(String.format("%02x", b & 0xff));
+            }
+            File folder = new File(BasePath.getBasePath(), CACHE_FOLDER);
+            folder.mkdirs();
+            return new File(folder, name.append(".classes").toString());
+        } catch (NoSuchAlgorithmException e) {
+            e.printStackTrace(System.err);
+            return null;
+        }
+    }
+    
+    /**
+     * Identifies the version of the library, which contains the class:
+     * Implementation version, size and modification time of the JAR.
+     * @param libraryClass
+     * @return 
+     */
+    private static String getVersion(Class<?> libraryClass)
+    {
+        String version = String.valueOf(libraryClass.getPackage() != null ?
+                libraryClass.getPackage().getImplementationVersion() : null);
+        CodeSource source = libraryClass.getProtectionDomain().getCodeSource();
+        if(source != null && source.getLocation() != null) {
+            try {
+                File location = new File(source.getLocation().toURI());
+                version += " " + location + " " + location.length() + 
+                        " " + location.lastModified();
+            } catch (URISyntaxException | IllegalArgumentException e) {
+                version += " " + source.getLocation();
+            }
+        }
+        return version;
+    }
+    
+    /**
+     * Defines the classes of a cache file, without compiling.
+     * @param className
+     * @param cacheFile
+     * @return the class or null (not cached, unreadable)
+     */
+    private Class<?> loadCached(String className, File cacheFile)
+    {
+        if(!cacheFile.isFile()) {
+            return null;
+        }
+        MemClassLoader classLoader = new MemClassLoader();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(cacheFile)))) {
+            final int count = in.readInt();
+            for(int i = 0; i < count; i++) {
+                final String name = in.readUTF();
+                final byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                classLoader.addClassBytes(name, bytes);
+            }
+            return Class.forName( className, true, classLoader );
+        } catch (IOException | ClassNotFoundException | LinkageError e) {
+            System.err.println("Ignoring broken compiler cache: " + cacheFile.getName());
+            cacheFile.delete();
+            return null;
+        }
+    }
+    
+    /**
+     * Writes all compiled classes to the cache file (temporary file, which
+     * replaces the cache file atomically).
+     * @param classLoader
+     * @param cacheFile 
+     */
+    private void storeCached(MemClassLoader classLoader, File cacheFile)
+    {
+        File tempFile = new File(cacheFile.getPath() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(tempFile)))) {
+                Map<String, byte[]> classes = classLoader.getClassBytes();
+                out.writeInt(classes.size());
+                for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    out.writeInt(entry.getValue().length);
+                    out.write(entry.getValue());
+                }
+            }
+            Files.move(tempFile.toPath(), cacheFile.toPath(), 
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            e.printStackTrace(System.err);
+            tempFile.delete();
+        }
     }
     
     /**
      * Uses the Java Compiler API to compile a given code in memory. 
      * @param className
      * @param src
+     * @param cacheFile stores the compiled classes, if not null
      * @return compiled class or null
      */
-    private Class<?> compileCode(String className, String src) {
+    private Class<?> compileCode(String className, String src, File cacheFile) {
         JavaFileManager fileManager = null;
         try {
             JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
@@ -168,8 +302,13 @@ public class SketchCompiler {
             JavaFileObject javaFile = new StringJavaFileObject( className, src );
             Collection<JavaFileObject> units = Collections.singleton( javaFile );
             JavaCompiler.CompilationTask task = compiler.getTask( null, fileManager, null, null, null, units );
-            task.call();
-            return Class.forName( className, true, classLoader );
+            final boolean success = task.call();
+            final Class<?> compiled = Class.forName( className, true, classLoader );
+            if(success && cacheFile != null && 
+                    PApplet2.class.equals(compiled.getSuperclass())) {
+                storeCached(classLoader, cacheFile);
+            }
+            return compiled;
         } 
         catch (ClassNotFoundException e) {
             //e.printStackTrace(System.err);
@@ -239,6 +378,8 @@ public class SketchCompiler {
     private class MemClassLoader extends ClassLoader {
 
         private final Map<String, MemJavaFileObject> classFiles = new HashMap<>();
+        /* Classes read from the compiler cache */
+        private final Map<String, byte[]> cachedClasses = new HashMap<>();
 
         public MemClassLoader() {
             super(ClassLoader.getSystemClassLoader());
@@ -247,6 +388,18 @@ public class SketchCompiler {
         public void addClassFile(MemJavaFileObject memJavaFileObject) {
             classFiles.put(memJavaFileObject.getClassName(), memJavaFileObject);
         }
+        
+        public void addClassBytes(String name, byte[] bytes) {
+            cachedClasses.put(name, bytes);
+        }
+        
+        public Map<String, byte[]> getClassBytes() {
+            Map<String, byte[]> classes = new HashMap<>();
+            for (MemJavaFileObject fileObject : classFiles.values()) {
+                classes.put(fileObject.getClassName(), fileObject.getClassBytes());
+            }
+            return classes;
+        }
 
         @Override
         protected Class<?> findClass(String name) throws ClassNotFoundException {
@@ -256,6 +409,10 @@ public class SketchCompiler {
                 byte[] bytes = fileObject.getClassBytes();
                 return defineClass(name, bytes, 0, bytes.length);
             }
+            byte[] cached = cachedClasses.get(name);
+            if (cached != null) {
+                return defineClass(name, cached, 0, cached.length);
+            }
 
             return super.findClass(name);
         }
@@ -0,0 +1,312 @@
+/*
+MixProcessing - Live Mixing of Processing Sketches 
+https://github.com/itschleemilch/MixProcessing
+
+Copyright (c) 2014 Sebastian Schleemilch
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package mixprocessing.load;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import mixprocessing.EventManager;
+import mixprocessing.MixRenderer;
+import mixprocessing.RenderFrame;
+import mixprocessing.sketches.Sketch;
+
+/**
+ * Hot reload of compiled sketches: Watches the folders of the loaded .pde
+ * sketches. A changed sketch is recompiled on a background thread, a new 
+ * instance is created and set up on a private image, and the result is 
+ * offered to the existing Sketch object, which swaps it in at the next
+ * frame (see Sketch#offerReload). The old instance and class are dropped,
+ * so their class loader can be collected. The setup of the new instance 
+ * runs on its own thread with a time limit: if it hangs, the reload fails,
+ * is reported as SketchFailed event and the thread is replaced.
+ *
+ * @author Sebastian Schleemilch
+ * @see SketchCompiler
+ */
+public class SketchReloader implements Runnable {
+    /* Editors write files in several steps: wait, until the folder is quiet */
+    private static final long SETTLE_MILLIS = 200;
+    /* Constructor and setup() may load files: more time than for a frame */
+    private static final long SETUP_TIME_LIMIT_MILLIS = 10000;
+    private static final ThreadFactory SETUP_THREADS = new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "Sketch Setup");
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        }
+    };
+    
+    public EventManager eventManager = null; // is set external by ScriptingApi
+    private final RenderFrame frame;
+    private final MixRenderer renderer;
+    /* Watched sketch folder -> sketch and its pde file */
+    private final Map<Path, WatchedSketch> watched = new ConcurrentHashMap<>();
+    /* Sketches, whose reload is queued */
+    private final Set<Sketch> queued = ConcurrentHashMap.newKeySet();
+    private final ExecutorService compiler = Executors.newSingleThreadExecutor(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "Sketch Compiler");
+                    t.setDaemon(true);
+                    t.setPriority(Thread.MIN_PRIORITY);
+                    return t;
+                }
+            });
+    /* Replaced, if a setup() hangs (compiler thread only) */
+    private ExecutorService setup = null;
+    private WatchService watcher = null;
+    private volatile boolean enabled = true;
+    
+    private volatile long reloads = 0;
+    private volatile long failures = 0;
+
+    /**
+     * Creates the reloader. The folder watcher is started with the first
+     * watched sketch.
+     * @param frame window of the new instances
+     * @param renderer provides the canvas size
+     */
+    public SketchReloader(RenderFrame frame, MixRenderer renderer) {
+        this.frame = frame;
+        this.renderer = renderer;
+    }
+
+    /**
+     * Enables the automatic reload of changed sketches.
+     * @param enabled 
+     */
+    public final void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public final boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Watches the folder of the sketch's pde file.
+     * @param sketch
+     * @param pdeFile 
+     */
+    public final synchronized void watch(Sketch sketch, File pdeFile)
+    {
+        final Path folder = pdeFile.getAbsoluteFile().getParentFile().toPath();
+        try {
+            if(watcher == null) {
+                watcher = FileSystems.getDefault().newWatchService();
+                Thread thread = new Thread(this, "Sketch Watcher");
+                thread.setDaemon(true);
+                thread.start();
+            }
+            if(watched.put(folder, new WatchedSketch(sketch, pdeFile)) == null) {
+                folder.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY);
+            }
+        } catch (IOException e) {
+            e.printStackTrace(System.err);
+        }
+    }
+
+    /**
+     * Recompiles the sketch on the background thread. Several requests for
+     * the same sketch are merged.
+     * @param sketch existing sketch
+     * @param pdeFile 
+     */
+    public final void reload(final Sketch sketch, final File pdeFile)
+    {
+        if(!queued.add(sketch)) {
+            return;
+        }
+        compiler.execute(new Runnable() {
+            @Override
+            public void run() {
+                queued.remove(sketch);
+                if(!compileAndPrepare(sketch, pdeFile)) {
+                    failures++;
+                }
+            }
+        });
+    }
+
+    /**
+     * Watcher thread: collects the changed sketch folders and reloads them.
+     */
+    @Override
+    public void run()
+    {
+        final Set<Path> changed = new HashSet<>();
+        try {
+            while(true) {
+                WatchKey key = watcher.take();
+                do {
+                    collectChanges(key, changed);
+                    key = watcher.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+                } while(key != null);
+                
+                if(enabled) {
+                    for (Path folder : changed) {
+                        WatchedSketch entry = watched.get(folder);
+                        if(entry != null) {
+                            System.out.printf("Sketch changed: %s\n", entry.sketch.getName());
+                            reload(entry.sketch, entry.pdeFile);
+                        }
+                    }
+                }
+                changed.clear();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // stopped
+        }
+    }
+    
+    private static void collectChanges(WatchKey key, Set<Path> changed)
+    {
+        for (WatchEvent<?> event : key.pollEvents()) {
+            Object context = event.context();
+            if(context instanceof Path && 
+                    context.toString().toLowerCase().endsWith(".pde")) {
+                changed.add((Path) key.watchable());
+            }
+        }
+        key.reset();
+    }
+
+    /**
+     * Compiles the sketch, sets up a new instance off the render thread
+     * (if the sketch has an instance) and offers it to the sketch.
+     * @return success
+     */
+    private boolean compileAndPrepare(Sketch sketch, File pdeFile)
+    {
+        final long startTime = System.nanoTime();
+        final Class<?> compiled = new SketchCompiler().compileSketch(pdeFile);
+        if(compiled == null) {
+            System.out.printf("Reload failed, keeping old version: %s\n", sketch.getName());
+            return false;
+        }
+        final Sketch staging = new Sketch(compiled);
+        if(sketch.getInstance() != null && !prepareInstance(sketch, staging, 
+                pdeFile.getAbsoluteFile().getParent())) {
+            return false;
+        }
+        sketch.offerReload(staging);
+        reloads++;
+        System.out.printf("Sketch reloaded: %s (%d ms)\n", sketch.getName(), 
+                (System.nanoTime() - startTime) / 1000000L);
+        return true;
+    }
+
+    /**
+     * Creates and sets up the instance of the recompiled sketch on the setup
+     * thread, waits at most SETUP_TIME_LIMIT_MILLIS for it.
+     * @return success
+     */
+    private boolean prepareInstance(Sketch sketch, final Sketch staging, final String sketchPath)
+    {
+        if(setup == null) {
+            setup = Executors.newSingleThreadExecutor(SETUP_THREADS);
+        }
+        final Future<Boolean> prepared = setup.submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return staging.createInstance(frame, sketchPath) != null && 
+                        staging.setupOffscreen(renderer.getCanvasWidth(), 
+                                renderer.getCanvasHeight());
+            }
+        });
+        boolean success = false;
+        try {
+            success = prepared.get(SETUP_TIME_LIMIT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            /* The hung thread keeps the staging instance */
+            setup.shutdownNow();
+            setup = null;
+            report(sketch, "reload failed, setup() exceeded " + 
+                    SETUP_TIME_LIMIT_MILLIS / 1000 + " s");
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            e.getCause().printStackTrace(System.err);
+        }
+        if(!success) {
+            staging.deleteInstance(frame);
+            System.out.printf("Reload failed in setup(), keeping old version: %s\n", 
+                    sketch.getName());
+        }
+        return success;
+    }
+    
+    private void report(Sketch sketch, String reason) {
+        System.err.println("Sketch " + sketch.getName() + " " + reason);
+        if(eventManager != null) {
+            eventManager.fireSketchFailed(sketch.getName(), reason);
+        }
+    }
+
+    /**
+     * Returns the number of successful reloads.
+     * @return 
+     */
+    public final long getReloads() {
+        return reloads;
+    }
+
+    /**
+     * Returns the number of reloads, which failed to compile or set up.
+     * @return 
+     */
+    public final long getFailures() {
+        return failures;
+    }
+    
+    private static final class WatchedSketch {
+        private final Sketch sketch;
+        private final File pdeFile;
+
+        WatchedSketch(Sketch sketch, File pdeFile) {
+            this.sketch = sketch;
+            this.pdeFile = pdeFile;
+        }
+    }
+}
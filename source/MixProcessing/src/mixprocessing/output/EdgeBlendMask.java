@@ -0,0 +1,213 @@
+/*
+MixProcessing - Live Mixing of Processing Sketches 
+https://github.com/itschleemilch/MixProcessing
+
+Copyright (c) 2014 Sebastian Schleemilch
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package mixprocessing.output;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Soft edge blending of overlapping projectors: The brightness falls off
+ * within the overlap zones at the edges of an output, so the overlapping
+ * images of two projectors add up to an even brightness.
+ *
+ * The ramp is f(x) = 0.5 * (2x)^curve for x &lt; 0.5, 1 - 0.5 * (2(1-x))^curve
+ * above, corrected by the projector's gamma (f^(1/gamma)). The mask is
+ * separable: the gains of all columns and rows are precomputed (0..256)
+ * and only recalculated, if a parameter or the output size changes. The 
+ * multiply pass processes row bands in parallel and skips pixels outside
+ * of the overlap zones.
+ *
+ * @author Sebastian Schleemilch
+ * @see OutputViewport#getEdgeBlend() 
+ */
+public class EdgeBlendMask {
+    private static final int FULL = 256;
+    /* Minimum number of rows processed by one task */
+    private static final int BAND_ROWS = 32;
+
+    /* Overlap widths in pixels */
+    private volatile int left = 0, right = 0, top = 0, bottom = 0;
+    private volatile float gamma = 2.2f, curve = 2.0f;
+    private volatile boolean changed = true;
+    
+    /* Gains of the render thread */
+    private int maskWidth = 0, maskHeight = 0, maskLeft = 0, maskRight = 0;
+    private int[] columnGains = new int[0], rowGains = new int[0];
+    /* Pixels of the current apply() call */
+    private int[] pixels;
+
+    public EdgeBlendMask() {
+    }
+    
+    /**
+     * Sets the widths of the overlap zones.
+     * @param left pixels, 0: no blending
+     * @param right pixels, 0: no blending
+     * @param top pixels, 0: no blending
+     * @param bottom pixels, 0: no blending
+     */
+    public final void setOverlap(int left, int right, int top, int bottom) {
+        this.left = Math.max(0, left);
+        this.right = Math.max(0, right);
+        this.top = Math.max(0, top);
+        this.bottom = Math.max(0, bottom);
+        changed = true;
+    }
+    
+    /**
+     * Sets the shape of the ramp.
+     * @param gamma gamma of the projector, e.g. 2.2 (1: linear)
+     * @param curve steepness of the ramp, 1: linear, 2: default
+     */
+    public final void setCurve(float gamma, float curve) {
+        if(gamma > 0f && curve > 0f) {
+            this.gamma = gamma;
+            this.curve = curve;
+            changed = true;
+        }
+    }
+    
+    /**
+     * Returns the parameters.
+     * @return left, right, top, bottom, gamma, curve
+     */
+    public final double[] getParameters() {
+        return new double[] { left, right, top, bottom, gamma, curve };
+    }
+    
+    /**
+     * Returns if an overlap zone is set.
+     * @return 
+     */
+    public final boolean isActive() {
+        return left > 0 || right > 0 || top > 0 || bottom > 0;
+    }
+    
+    /**
+     * Applies the mask to the image (int pixel buffer, e.g. TYPE_INT_RGB).
+     * Called by the render thread.
+     * @param image 
+     */
+    public final void apply(BufferedImage image)
+    {
+        final int width = image.getWidth(), height = image.getHeight();
+        if(changed || width != maskWidth || height != maskHeight) {
+            changed = false;
+            maskLeft = left;
+            maskRight = right;
+            columnGains = createGains(width, maskLeft, maskRight);
+            rowGains = createGains(height, top, bottom);
+            maskWidth = width;
+            maskHeight = height;
+        }
+        pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        try {
+            ForkJoinPool.commonPool().invoke(new BlendBand(0, height));
+        } finally {
+            pixels = null;
+        }
+    }
+    
+    /**
+     * Calculates the gains along one axis.
+     */
+    private int[] createGains(int size, int start, int end)
+    {
+        final int[] gains = new int[size];
+        final double exponent = 1.0 / gamma;
+        for(int i = 0; i < size; i++) {
+            double gain = 1.0;
+            if(i < start) {
+                gain *= ramp((i + 0.5) / start);
+            }
+            if(i >= size - end) {
+                gain *= ramp((size - i - 0.5) / end);
+            }
+            gains[i] = (int) Math.round(Math.pow(gain, exponent) * FULL);
+        }
+        return gains;
+    }
+    
+    /**
+     * Blend function of the overlap zone.
+     * @param x 0 (outer edge) .. 1 (inner edge)
+     */
+    private double ramp(double x)
+    {
+        if(x < 0.5) {
+            return 0.5 * Math.pow(2 * x, curve);
+        }
+        else {
+            return 1 - 0.5 * Math.pow(2 * (1 - x), curve);
+        }
+    }
+    
+    /**
+     * Multiplies a range of pixels with a gain (0..256).
+     */
+    private static void multiply(int[] pixels, int[] gains, int offset, int from, int to, 
+            int rowGain)
+    {
+        for(int x = from; x < to; x++) {
+            final int gain = (gains[x] * rowGain) >> 8;
+            final int p = pixels[offset + x];
+            pixels[offset + x] = ((((p & 0xff00ff) * gain) >>> 8) & 0xff00ff) |
+                    ((((p & 0x00ff00) * gain) >>> 8) & 0x00ff00);
+        }
+    }
+    
+    /**
+     * Blends a band of rows, split until BAND_ROWS.
+     */
+    private final class BlendBand extends RecursiveAction {
+        private final int y0, y1;
+
+        BlendBand(int y0, int y1) {
+            this.y0 = y0;
+            this.y1 = y1;
+        }
+
+        @Override
+        protected void compute() {
+            if(y1 - y0 > BAND_ROWS) {
+                final int mid = (y0 + y1) >>> 1;
+                invokeAll(new BlendBand(y0, mid), new BlendBand(mid, y1));
+                return;
+            }
+            final int width = maskWidth;
+            final int[] columns = columnGains, rows = rowGains, p = pixels;
+            final int leftEnd = Math.min(width, maskLeft);
+            final int rightStart = Math.max(leftEnd, width - maskRight);
+            for(int y = y0; y < y1; y++) {
+                final int rowGain = rows[y];
+                if(rowGain < FULL) {
+                    multiply(p, columns, y * width, 0, width, rowGain);
+                }
+                else { // only the overlap zones of the columns
+                    multiply(p, columns, y * width, 0, leftEnd, FULL);
+                    multiply(p, columns, y * width, rightStart, width, FULL);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,39 @@
+/*
+MixProcessing - Live Mixing of Processing Sketches 
+https://github.com/itschleemilch/MixProcessing
+
+Copyright (c) 2014 Sebastian Schleemilch
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package mixprocessing.output;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Receives every composed frame of the renderer, e.g. an output viewport.
+ *
+ * @author Sebastian Schleemilch
+ * @see OutputManagement#addConsumer(mixprocessing.output.FrameConsumer) 
+ */
+public interface FrameConsumer {
+    /**
+     * Called by the render thread after a frame has been composed. The frame
+     * must not be modified and not be used after returning.
+     * @param frame composed canvas
+     * @param frameNanos System.nanoTime() of the frame (or simulated time)
+     */
+    public void frameRendered(BufferedImage frame, long frameNanos);
+}
@@ -0,0 +1,343 @@
+/*
+MixProcessing - Live Mixing of Processing Sketches 
+https://github.com/itschleemilch/MixProcessing
+
+Copyright (c) 2014 Sebastian Schleemilch
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package mixprocessing.output;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+/**
+ * Records the composed frames as PNG sequence or MJPEG file without
+ * slowing down the renderer: The render thread copies a frame into a free 
+ * buffer of a preallocated pool and hands it to the encoder threads. If no
+ * buffer is free (encoders too slow), the frame is dropped and counted.
+ *
+ * PNG frames are encoded by several threads (frame_000000.png, ...), an
+ * MJPEG file (concatenated JPEG images, e.g. for ffmpeg -f mjpeg) by one.
+ *
+ * @author Sebastian Schleemilch
+ * @see OutputManagement#getRecorder() 
+ */
+public class FrameRecorder implements FrameConsumer {
+    public static final String FORMAT_PNG = "png";
+    public static final String FORMAT_MJPEG = "mjpeg";
+    /* Pooled buffers per encoder thread */
+    private static final int BUFFERS_PER_ENCODER = 3;
+    private static final float JPEG_QUALITY = 0.9f;
+
+    private volatile Session session = null;
+    /* Statistics of the last recording */
+    private final AtomicLong recordedFrames = new AtomicLong();
+    private volatile long droppedFrames = 0;
+
+    public FrameRecorder() {
+    }
+    
+    /**
+     * Starts a recording. A running recording is stopped before.
+     * @param target folder (PNG) or file (MJPEG)
+     * @param format FORMAT_PNG or FORMAT_MJPEG
+     * @param frameRate maximum frames per second, 0: every frame
+     * @throws IOException if the target cannot be created
+     */
+    public final synchronized void start(File target, String format, float frameRate) 
+            throws IOException
+    {
+        stop();
+        final boolean mjpeg = FORMAT_MJPEG.equalsIgnoreCase(format);
+        if(!mjpeg && !FORMAT_PNG.equalsIgnoreCase(format)) {
+            throw new IOException("Unknown format: " + format);
+        }
+        final int encoders = mjpeg ? 1 : 
+                Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        recordedFrames.set(0);
+        droppedFrames = 0;
+        session = new Session(target, mjpeg, encoders, frameRate);
+        System.out.printf("Recording started: %s\n", target.getAbsolutePath());
+    }
+    
+    /**
+     * Stops the recording and waits until the captured frames are written.
+     */
+    public final synchronized void stop()
+    {
+        final Session s = session;
+        if(s == null) {
+            return;
+        }
+        session = null;
+        s.finish();
+        System.out.printf("Recording stopped: %d frames, %d dropped\n", 
+                recordedFrames.get(), droppedFrames);
+    }
+    
+    /**
+     * Returns if a recording is running.
+     * @return 
+     */
+    public final boolean isRecording() {
+        return session != null;
+    }
+    
+    /**
+     * Returns the number of written frames of the current (or last) 
+     * recording.
+     * @return 
+     */
+    public final long getRecordedFrames() {
+        return recordedFrames.get();
+    }
+    
+    /**
+     * Returns the number of frames, which were dropped because the
+     * encoders were busy.
+     * @return 
+     */
+    public final long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    @Override
+    public void frameRendered(BufferedImage frame, long frameNanos)
+    {
+        final Session s = session;
+        if(s != null) {
+            s.capture(frame, frameNanos);
+        }
+    }
+    
+    /**
+     * Pooled frame buffer.
+     */
+    private static final class FrameBuffer {
+        private BufferedImage image = null;
+        private Graphics2D g = null;
+        private long index = 0;
+        
+        /**
+         * Copies the frame, allocates only if the size has changed.
+         */
+        void copy(BufferedImage frame)
+        {
+            final int width = frame.getWidth(), height = frame.getHeight();
+            if(image == null || image.getWidth() != width || image.getHeight() != height) {
+                if(g != null) {
+                    g.dispose();
+                }
+                image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+                g = image.createGraphics();
+            }
+            copyFrame(frame, image, g);
+        }
+    }
+    
+    /**
+     * Copies a frame into an image of the same size (TYPE_INT_RGB). Int
+     * pixel frames are copied without conversion.
+     * @param frame
+     * @param target
+     * @param targetG graphics of the target, used for other frame types
+     */
+    public static void copyFrame(BufferedImage frame, BufferedImage target, Graphics2D targetG)
+    {
+        if(frame.getType() == BufferedImage.TYPE_INT_RGB || 
+                frame.getType() == BufferedImage.TYPE_INT_ARGB) {
+            System.arraycopy(((DataBufferInt) frame.getRaster().getDataBuffer()).getData(), 0,
+                    ((DataBufferInt) target.getRaster().getDataBuffer()).getData(), 0,
+                    frame.getWidth() * frame.getHeight());
+        }
+        else {
+            targetG.drawImage(frame, 0, 0, null);
+        }
+    }
+    
+    /**
+     * One recording: buffer pool, encoder threads and output.
+     */
+    private final class Session {
+        private final File target;
+        private final boolean mjpeg;
+        private final long periodNanos;
+        private final ArrayBlockingQueue<FrameBuffer> free, filled;
+        private final Thread[] encoders;
+        private volatile boolean running = true;
+        private long frames = 0;
+        private long nextFrameNanos = 0;
+        private boolean started = false;
+        /* MJPEG output, only used by the single encoder thread */
+        private OutputStream out = null;
+        private ImageWriter jpegWriter = null;
+        private ImageWriteParam jpegParam = null;
+
+        Session(File target, boolean mjpeg, int encoderCount, float frameRate) 
+                throws IOException {
+            this.target = target;
+            this.mjpeg = mjpeg;
+            this.periodNanos = frameRate > 0f ? Math.round(1000000000d / frameRate) : 0L;
+            final int buffers = encoderCount * BUFFERS_PER_ENCODER;
+            free = new ArrayBlockingQueue<>(buffers);
+            filled = new ArrayBlockingQueue<>(buffers);
+            for(int i = 0; i < buffers; i++) {
+                free.add(new FrameBuffer());
+            }
+            if(mjpeg) {
+                File parent = target.getAbsoluteFile().getParentFile();
+                if(parent != null) {
+                    parent.mkdirs();
+                }
+                Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpeg");
+                if(!writers.hasNext()) {
+                    throw new IOException("No JPEG encoder available");
+                }
+                jpegWriter = writers.next();
+                jpegParam = jpegWriter.getDefaultWriteParam();
+                jpegParam.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                jpegParam.setCompressionQuality(JPEG_QUALITY);
+                out = new BufferedOutputStream(new FileOutputStream(target), 1 << 20);
+            }
+            else if(!target.isDirectory() && !target.mkdirs()) {
+                throw new IOException("Cannot create folder: " + target.getAbsolutePath());
+            }
+            encoders = new Thread[encoderCount];
+            for(int i = 0; i < encoderCount; i++) {
+                encoders[i] = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        encode();
+                    }
+                }, "MP Recorder " + i);
+                encoders[i].setDaemon(true);
+                encoders[i].start();
+            }
+        }
+        
+        /**
+         * Copies the frame into a free buffer (render thread).
+         */
+        void capture(BufferedImage frame, long frameNanos)
+        {
+            if(periodNanos > 0) {
+                if(!started) {
+                    started = true;
+                    nextFrameNanos = frameNanos;
+                }
+                final long late = frameNanos - nextFrameNanos; // overflow safe
+                if(late < 0) {
+                    return;
+                }
+                /* Resynchronizes after a gap */
+                nextFrameNanos = (late >= periodNanos) ?
+                        frameNanos + periodNanos : nextFrameNanos + periodNanos;
+            }
+            final FrameBuffer buffer = free.poll();
+            if(buffer == null) {
+                droppedFrames++;
+                return;
+            }
+            buffer.copy(frame);
+            buffer.index = frames++;
+            filled.offer(buffer);
+        }
+        
+        /**
+         * Loop of an encoder thread.
+         */
+        private void encode()
+        {
+            while(running || !filled.isEmpty()) {
+                final FrameBuffer buffer;
+                try {
+                    buffer = filled.poll(100, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if(buffer == null) {
+                    continue;
+                }
+                try {
+                    if(mjpeg) {
+                        writeJpeg(buffer.image);
+                    }
+                    else {
+                        ImageIO.write(buffer.image, "png", new File(target, 
+                                String.format(Locale.US, "frame_%06d.png", buffer.index)));
+                    }
+                    recordedFrames.incrementAndGet();
+                } catch (IOException e) {
+                    e.printStackTrace(System.err);
+                } finally {
+                    free.offer(buffer);
+                }
+            }
+        }
+        
+        private void writeJpeg(BufferedImage image) throws IOException
+        {
+            ImageOutputStream ios = new MemoryCacheImageOutputStream(out);
+            try {
+                jpegWriter.setOutput(ios);
+                jpegWriter.write(null, new IIOImage(image, null, null), jpegParam);
+            } finally {
+                ios.close(); // flushes into out, out stays open
+            }
+        }
+        
+        /**
+         * Writes the remaining frames and closes the output.
+         */
+        void finish()
+        {
+            running = false;
+            for (Thread encoder : encoders) {
+                try {
+                    encoder.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            if(out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    e.printStackTrace(System.err);
+                }
+                jpegWriter.dispose();
+            }
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+MixProcessing - Live Mixing of Processing Sketches 
+https://github.com/itschleemilch/MixProcessing
+
+Copyright (c) 2014 Sebastian Schleemilch
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package mixprocessing.output;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Distributes the composed frames to the output viewports, the recorder
+ * and other frame consumers. The sketches are rendered once into a
+ * (virtual) canvas, each viewport copies a region of it.
+ *
+ * @author Sebastian Schleemilch
+ * @see OutputViewport
+ */
+public class OutputManagement {
+    private final CopyOnWriteArrayList<FrameConsumer> consumers = new CopyOnWriteArrayList<>();
+    private final CopyOnWriteArrayList<OutputViewport> viewports = new CopyOnWriteArrayList<>();
+    private final FrameRecorder recorder = new FrameRecorder();
+
+    public OutputManagement() {
+        consumers.add(recorder);
+    }
+    
+    /**
+     * Returns the recorder of the composed frames.
+     * @return 
+     */
+    public final FrameRecorder getRecorder() {
+        return recorder;
+    }
+    
+    /**
+     * Adds a consumer, which receives every composed frame.
+     * @param consumer 
+     */
+    public final void addConsumer(FrameConsumer consumer) {
+        consumers.addIfAbsent(consumer);
+    }
+    
+    public final void removeConsumer(FrameConsumer consumer) {
+        consumers.remove(consumer);
+    }
+    
+    /**
+     * Creates a viewport or changes the region of an existing one.
+     * @param name
+     * @param source region of the canvas
+     * @return the viewport
+     */
+    public final synchronized OutputViewport setViewport(String name, Rectangle source)
+    {
+        OutputViewport viewport = getViewport(name);
+        if(viewport != null) {
+            viewport.setSource(source);
+        }
+        else {
+            viewport = new OutputViewport(name, source);
+            viewports.add(viewport);
+            consumers.add(viewport);
+        }
+        return viewport;
+    }
+    
+    /**
+     * Returns the viewport with the given name.
+     * @param name
+     * @return viewport or null
+     */
+    public final OutputViewport getViewport(String name)
+    {
+        for (OutputViewport viewport : viewports) {
+            if(viewport.getName().equals(name)) {
+                return viewport;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Removes a viewport and closes its window.
+     * @param name
+     * @return false, if not found
+     */
+    public final synchronized boolean removeViewport(String name)
+    {
+        OutputViewport viewport = getViewport(name);
+        if(viewport == null) {
+            return false;
+        }
+        viewports.remove(viewport);
+        consumers.remove(viewport);
+        viewport.closeWindow();
+        return true;
+    }
+    
+    /**
+     * Returns all viewports.
+     * @return unmodifiable snapshot
+     */
+    public final List<OutputViewport> getViewports() {
+        return Collections.unmodifiableList(
+                Arrays.asList(viewports.toArray(new OutputViewport[0])));
+    }
+    
+    /**
+     * Passes a composed frame to all consumers (render thread).
+     * @param frame
+     * @param frameNanos 
+     */
+    public final void frameRendered(BufferedImage frame, long frameNanos)
+    {
+        for (FrameConsumer consumer : consumers) {
+            try {
+                consumer.frameRendered(frame, frameNanos);
+            } catch (RuntimeException e) {
+                e.printStackTrace(System.err);
+            }
+        }
+    }
+}
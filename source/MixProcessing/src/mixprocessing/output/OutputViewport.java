@@ -0,0 +1,327 @@
+/*
+MixProcessing - Live Mixing of Processing Sketches 
+https://github.com/itschleemilch/MixProcessing
+
+Copyright (c) 2014 Sebastian Schleemilch
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package mixprocessing.output;
+
+import java.awt.Color;
+import java.awt.EventQueue;
+import java.awt.Graphics2D;
+import java.awt.GraphicsDevice;
+import java.awt.GraphicsEnvironment;
+import java.awt.Rectangle;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Maps a rectangle of the composed canvas to an output: The region is
+ * copied into an offscreen image every frame, optionally warped and edge
+ * blended, and shown by an optional window (e.g. fullscreen on a
+ * projector) on the event dispatch thread. The output image is swapped
+ * with the presented one, not copied. Without window, the viewport works
+ * headless.
+ *
+ * @author Sebastian Schleemilch
+ * @see OutputManagement
+ */
+public class OutputViewport implements FrameConsumer {
+    private final String name;
+    /* Region of the canvas, replaced as a whole */
+    private volatile Rectangle source;
+    /* Offscreen target, guarded by imageLock */
+    private final Object imageLock = new Object();
+    private BufferedImage image = null, warped = null;
+    private Graphics2D imageG = null;
+    private final Rectangle area = new Rectangle();
+    /* Last output frame: image or warped */
+    private BufferedImage output = null;
+    
+    /* Projection mapping */
+    private final WarpMap warp = new WarpMap();
+    private final EdgeBlendMask edgeBlend = new EdgeBlendMask();
+    private volatile boolean editing = false;
+    
+    private volatile ViewportWindow window = null;
+    private volatile long frames = 0;
+    /* Output image shown by the window (swap buffer), with its graphics or
+       null, replaced only if no present is pending */
+    private BufferedImage presented = null;
+    private Graphics2D presentedG = null;
+    private final AtomicBoolean presentPending = new AtomicBoolean(false);
+    private volatile long presentsSkipped = 0;
+    private final Runnable presentTask = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                final ViewportWindow w = window;
+                if(w != null) {
+                    w.present(presented);
+                }
+            } finally {
+                presentPending.set(false);
+            }
+        }
+    };
+
+    /**
+     * Creates a viewport.
+     * @param name
+     * @param source region of the canvas
+     */
+    public OutputViewport(String name, Rectangle source) {
+        this.name = name;
+        this.source = new Rectangle(source);
+    }
+
+    public final String getName() {
+        return name;
+    }
+    
+    /**
+     * Sets the region of the canvas shown by this viewport.
+     * @param source 
+     */
+    public final void setSource(Rectangle source) {
+        this.source = new Rectangle(source);
+    }
+    
+    /**
+     * Returns the region of the canvas shown by this viewport.
+     * @return 
+     */
+    public final Rectangle getSource() {
+        return new Rectangle(source);
+    }
+    
+    /**
+     * Returns the warp of this viewport (identity: not warped).
+     * @return 
+     */
+    public final WarpMap getWarp() {
+        return warp;
+    }
+    
+    /**
+     * Returns the soft edge blending of this viewport.
+     * @return 
+     */
+    public final EdgeBlendMask getEdgeBlend() {
+        return edgeBlend;
+    }
+    
+    /**
+     * Shows the warp control points in the window, they can be dragged
+     * with the mouse.
+     * @param editing 
+     */
+    public final void setEditing(boolean editing) {
+        this.editing = editing;
+    }
+    
+    public final boolean isEditing() {
+        return editing;
+    }
+    
+    /**
+     * Returns the number of frames copied into this viewport.
+     * @return 
+     */
+    public final long getFrameCount() {
+        return frames;
+    }
+
+    @Override
+    public void frameRendered(BufferedImage frame, long frameNanos)
+    {
+        final Rectangle src = source;
+        if(src.isEmpty()) {
+            return;
+        }
+        synchronized(imageLock) {
+            if(image == null || image.getWidth() != src.width || 
+                    image.getHeight() != src.height) {
+                if(imageG != null) {
+                    imageG.dispose();
+                }
+                image = new BufferedImage(src.width, src.height, BufferedImage.TYPE_INT_RGB);
+                imageG = image.createGraphics();
+            }
+            area.setBounds(0, 0, frame.getWidth(), frame.getHeight());
+            Rectangle.intersect(src, area, area);
+            if(area.width < src.width || area.height < src.height) {
+                /* Partly outside of the canvas */
+                imageG.setColor(Color.BLACK);
+                imageG.fillRect(0, 0, src.width, src.height);
+            }
+            if(!area.isEmpty()) {
+                final int dx = area.x - src.x, dy = area.y - src.y;
+                imageG.drawImage(frame, dx, dy, dx + area.width, dy + area.height,
+                        area.x, area.y, area.x + area.width, area.y + area.height, null);
+            }
+            output = image;
+            if(!warp.isIdentity()) {
+                if(warped == null || warped.getWidth() != src.width || 
+                        warped.getHeight() != src.height) {
+                    warped = new BufferedImage(src.width, src.height, BufferedImage.TYPE_INT_RGB);
+                }
+                warp.warp(image, warped);
+                output = warped;
+            }
+            if(edgeBlend.isActive()) {
+                edgeBlend.apply(output);
+            }
+            if(window != null) {
+                requestPresent();
+            }
+        }
+        frames++;
+    }
+    
+    /**
+     * Passes the output frame to the window on the event dispatch thread
+     * (like the repaint of the main window), so the renderer never waits
+     * for the display. The output buffer is exchanged with the one shown
+     * last, the next frame is drawn into that. Skipped, while the last frame
+     * is still presented. Called with imageLock held.
+     */
+    private void requestPresent()
+    {
+        if(!presentPending.compareAndSet(false, true)) {
+            presentsSkipped++;
+            return;
+        }
+        BufferedImage back = presented;
+        Graphics2D backG = presentedG;
+        if(back == null || back.getWidth() != output.getWidth() ||
+                back.getHeight() != output.getHeight()) {
+            if(backG != null) {
+                backG.dispose();
+            }
+            back = new BufferedImage(output.getWidth(), output.getHeight(),
+                    BufferedImage.TYPE_INT_RGB);
+            backG = null;
+        }
+        presented = output;
+        if(output == image) {
+            presentedG = imageG;
+            image = back;
+            imageG = (backG != null) ? backG : back.createGraphics();
+        }
+        else {
+            presentedG = null;
+            warped = back;
+            if(backG != null) {
+                backG.dispose();
+            }
+        }
+        EventQueue.invokeLater(presentTask);
+    }
+    
+    /**
+     * Returns the number of frames not shown by the window, because the 
+     * previous one was still being presented.
+     * @return 
+     */
+    public final long getPresentsSkipped() {
+        return presentsSkipped;
+    }
+    
+    /**
+     * Returns a copy of the last frame of this viewport.
+     * @return image or null (no frame yet)
+     */
+    public final BufferedImage snapshot()
+    {
+        synchronized(imageLock) {
+            if(output == null) {
+                return null;
+            }
+            BufferedImage copy = new BufferedImage(output.getWidth(), output.getHeight(),
+                    BufferedImage.TYPE_INT_RGB);
+            output.copyData(copy.getRaster());
+            return copy;
+        }
+    }
+    
+    /**
+     * Opens a window, that shows this viewport.
+     * @param screen index of the screen (fullscreen, undecorated) or -1 for
+     * a normal window with the size of the region
+     * @return false, if headless or the screen does not exist
+     */
+    public final boolean openWindow(int screen)
+    {
+        if(GraphicsEnvironment.isHeadless()) {
+            return false;
+        }
+        final GraphicsDevice[] devices = 
+                GraphicsEnvironment.getLocalGraphicsEnvironment().getScreenDevices();
+        if(screen >= devices.length) {
+            return false;
+        }
+        final boolean fullscreen = screen >= 0;
+        final Rectangle bounds = fullscreen ? 
+                devices[screen].getDefaultConfiguration().getBounds() :
+                new Rectangle(source.getSize());
+        closeWindow();
+        EventQueue.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                final ViewportWindow w = new ViewportWindow(OutputViewport.this,
+                        bounds, fullscreen);
+                w.addWindowListener(new WindowAdapter() {
+                    @Override
+                    public void windowClosing(WindowEvent e) {
+                        closeWindow();
+                    }
+                });
+                w.setVisible(true);
+                window = w;
+            }
+        });
+        return true;
+    }
+    
+    /**
+     * Closes the window of this viewport (if opened).
+     */
+    public final void closeWindow()
+    {
+        final ViewportWindow w = window;
+        window = null;
+        if(w != null) {
+            EventQueue.invokeLater(new Runnable() {
+                @Override
+                public void run() {
+                    w.dispose();
+                }
+            });
+        }
+    }
+    
+    /**
+     * Returns if a window shows this viewport.
+     * @return 
+     */
+    public final boolean isWindowOpen() {
+        return window != null;
+    }
+}
@@ -0,0 +1,147 @@
+/*
+MixProcessing - Live Mixing of Processing Sketches 
+https://github.com/itschleemilch/MixProcessing
+
+Copyright (c) 2014 Sebastian Schleemilch
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package mixprocessing.output;
+
+import java.awt.BorderLayout;
+import java.awt.Canvas;
+import java.awt.Color;
+import java.awt.Frame;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseListener;
+import java.awt.event.MouseMotionListener;
+import java.awt.image.BufferStrategy;
+import java.awt.image.BufferedImage;
+import mixprocessing.channels.ChannelEditing;
+
+/**
+ * Window of an output viewport. The frames are shown on the event dispatch
+ * thread through a BufferStrategy, scaled to the window size. While editing, the
+ * warp control points are shown and can be dragged with the mouse.
+ *
+ * @author Sebastian Schleemilch
+ * @see OutputViewport#openWindow(int) 
+ */
+class ViewportWindow extends Frame implements MouseListener, MouseMotionListener {
+    private final Canvas canvas = new Canvas();
+    private BufferStrategy strategy = null;
+    private final OutputViewport viewport;
+    /* Dragged warp control point (column, row) or null */
+    private int[] dragged = null;
+
+    ViewportWindow(OutputViewport viewport, Rectangle bounds, boolean undecorated) {
+        super("MixProcessing - " + viewport.getName());
+        this.viewport = viewport;
+        setUndecorated(undecorated);
+        setBackground(Color.BLACK);
+        setLayout(new BorderLayout());
+        canvas.setIgnoreRepaint(true);
+        canvas.setBackground(Color.BLACK);
+        canvas.addMouseListener(this);
+        canvas.addMouseMotionListener(this);
+        add(canvas, BorderLayout.CENTER);
+        setBounds(bounds);
+        if(undecorated) {
+            setAlwaysOnTop(true);
+        }
+    }
+    
+    /**
+     * Shows the image (called on the event dispatch thread).
+     * @param image 
+     */
+    final void present(BufferedImage image)
+    {
+        if(!canvas.isDisplayable() || canvas.getWidth() <= 0 || canvas.getHeight() <= 0) {
+            strategy = null;
+            return;
+        }
+        try {
+            if(strategy == null) {
+                canvas.createBufferStrategy(2);
+                strategy = canvas.getBufferStrategy();
+            }
+            final BufferStrategy bs = strategy;
+            do {
+                do {
+                    Graphics g = bs.getDrawGraphics();
+                    try {
+                        ((Graphics2D) g).setRenderingHint(RenderingHints.KEY_INTERPOLATION, 
+                                RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                        g.drawImage(image, 0, 0, canvas.getWidth(), canvas.getHeight(), null);
+                        if(viewport.isEditing()) {
+                            ChannelEditing.drawWarpGrid((Graphics2D) g, viewport.getWarp(),
+                                    canvas.getWidth(), canvas.getHeight());
+                        }
+                    } finally {
+                        g.dispose();
+                    }
+                } while(bs.contentsRestored());
+                bs.show();
+            } while(bs.contentsLost());
+        } catch (IllegalStateException e) { // buffers not available, e.g. closed
+            strategy = null;
+        }
+    }
+    
+    @Override
+    public void mousePressed(MouseEvent e) {
+        if(viewport.isEditing()) {
+            dragged = ChannelEditing.findWarpPoint(viewport.getWarp(), e.getX(), e.getY(),
+                    canvas.getWidth(), canvas.getHeight());
+        }
+    }
+
+    @Override
+    public void mouseDragged(MouseEvent e) {
+        final int[] point = dragged;
+        if(point != null && viewport.isEditing()) {
+            viewport.getWarp().setPoint(point[0], point[1], 
+                    e.getX() / (float) canvas.getWidth(), e.getY() / (float) canvas.getHeight());
+        }
+    }
+
+    @Override
+    public void mouseReleased(MouseEvent e) {
+        dragged = null;
+    }
+
+    @Override
+    public void mouseClicked(MouseEvent e) {
+    }
+
+    @Override
+    public void mouseEntered(MouseEvent e) {
+    }
+
+    @Override
+    public void mouseExited(MouseEvent e) {
+    }
+
+    @Override
+    public void mouseMoved(MouseEvent e) {
+    }
+    
+    private static final long serialVersionUID = 1L;
+}
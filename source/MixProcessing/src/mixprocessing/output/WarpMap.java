@@ -0,0 +1,375 @@
+/*
+MixProcessing - Live Mixing of Processing Sketches 
+https://github.com/itschleemilch/MixProcessing
+
+Copyright (c) 2014 Sebastian Schleemilch
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package mixprocessing.output;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Geometric correction of an output for projection mapping: A grid of
+ * control points defines, where the image is shown. A 2x2 grid is a corner
+ * pin (homography, keystone), larger grids are meshes (two linear 
+ * triangles per cell).
+ *
+ * The inverse mapping is stored as lookup table (source pixel and 8 bit 
+ * fractions of every output pixel) and only recalculated after a control
+ * point has changed. Warping samples the source bilinearly, row bands are 
+ * processed in parallel.
+ *
+ * @author Sebastian Schleemilch
+ * @see OutputViewport#getWarp() 
+ */
+public class WarpMap {
+    /* Minimum number of rows processed by one task */
+    private static final int BAND_ROWS = 32;
+    /* Lookup table entry of pixels without source */
+    private static final int OUTSIDE = -1;
+    /* Tolerance of the source edges (rounding errors) */
+    private static final double EDGE = 1e-6;
+    /* Flags of the fractions: neighbour pixels exist */
+    private static final int NEXT_COLUMN = 1 << 16, NEXT_ROW = 1 << 17;
+
+    private int columns = 2, rows = 2;
+    /* Control points in output coordinates (0..1), row by row, x/y pairs */
+    private float[] points;
+    private volatile boolean changed = true;
+    
+    /* Lookup table of the render thread */
+    private int lutWidth = 0, lutHeight = 0;
+    /* Source index (-1: outside) and fractions x | y << 8 | neighbours */
+    private int[] lutIndex = null, lutFraction = null;
+    /* Pixels of the current warp() call */
+    private int[] srcPixels, dstPixels;
+
+    /**
+     * Creates an identity mapping (corner pin).
+     */
+    public WarpMap() {
+        setGrid(2, 2);
+    }
+    
+    /**
+     * Resets the grid to an identity mapping with the given number of 
+     * control points.
+     * @param columns at least 2
+     * @param rows at least 2
+     */
+    public final synchronized void setGrid(int columns, int rows)
+    {
+        this.columns = Math.max(2, columns);
+        this.rows = Math.max(2, rows);
+        points = new float[this.columns * this.rows * 2];
+        for(int r = 0; r < this.rows; r++) {
+            for(int c = 0; c < this.columns; c++) {
+                final int i = (r * this.columns + c) * 2;
+                points[i] = c / (float) (this.columns - 1);
+                points[i + 1] = r / (float) (this.rows - 1);
+            }
+        }
+        changed = true;
+    }
+    
+    public final int getColumns() {
+        return columns;
+    }
+    
+    public final int getRows() {
+        return rows;
+    }
+    
+    /**
+     * Moves a control point.
+     * @param column
+     * @param row
+     * @param x output position (0..1 = left..right edge)
+     * @param y output position (0..1 = top..bottom edge)
+     * @return false, if the point does not exist
+     */
+    public final synchronized boolean setPoint(int column, int row, float x, float y)
+    {
+        if(column < 0 || row < 0 || column >= columns || row >= rows ||
+                Float.isNaN(x) || Float.isNaN(y)) {
+            return false;
+        }
+        final int i = (row * columns + column) * 2;
+        points[i] = x;
+        points[i + 1] = y;
+        changed = true;
+        return true;
+    }
+    
+    /**
+     * Returns the position of a control point.
+     * @param column
+     * @param row
+     * @return x, y or null (not existing)
+     */
+    public final synchronized float[] getPoint(int column, int row)
+    {
+        if(column < 0 || row < 0 || column >= columns || row >= rows) {
+            return null;
+        }
+        final int i = (row * columns + column) * 2;
+        return new float[] { points[i], points[i + 1] };
+    }
+    
+    /**
+     * Sets the four corners of a corner pin (the grid is reset to 2x2).
+     * Order: top left, top right, bottom right, bottom left.
+     * @param corners x/y pairs in output coordinates (0..1)
+     */
+    public final synchronized void setCorners(float[] corners)
+    {
+        setGrid(2, 2);
+        setPoint(0, 0, corners[0], corners[1]);
+        setPoint(1, 0, corners[2], corners[3]);
+        setPoint(1, 1, corners[4], corners[5]);
+        setPoint(0, 1, corners[6], corners[7]);
+    }
+    
+    /**
+     * Returns if all control points are at their identity position.
+     * @return 
+     */
+    public final synchronized boolean isIdentity()
+    {
+        for(int r = 0; r < rows; r++) {
+            for(int c = 0; c < columns; c++) {
+                final int i = (r * columns + c) * 2;
+                if(points[i] != c / (float) (columns - 1) ||
+                        points[i + 1] != r / (float) (rows - 1)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Warps the source into the target. Both images need the same size and
+     * an int pixel buffer (e.g. TYPE_INT_RGB). Called by the render thread.
+     * @param source
+     * @param target 
+     */
+    public final void warp(BufferedImage source, BufferedImage target)
+    {
+        final int width = source.getWidth(), height = source.getHeight();
+        if(changed || width != lutWidth || height != lutHeight) {
+            updateLookupTable(width, height);
+        }
+        srcPixels = ((DataBufferInt) source.getRaster().getDataBuffer()).getData();
+        dstPixels = ((DataBufferInt) target.getRaster().getDataBuffer()).getData();
+        try {
+            ForkJoinPool.commonPool().invoke(new WarpBand(0, height));
+        } finally {
+            srcPixels = dstPixels = null;
+        }
+    }
+    
+    /**
+     * Recalculates the inverse mapping.
+     */
+    private void updateLookupTable(int width, int height)
+    {
+        final float[] p;
+        final int cols, rws;
+        synchronized(this) {
+            p = points.clone();
+            cols = columns;
+            rws = rows;
+            changed = false;
+        }
+        if(lutIndex == null || lutIndex.length != width * height) {
+            lutIndex = new int[width * height];
+            lutFraction = new int[width * height];
+        }
+        lutWidth = width;
+        lutHeight = height;
+        Arrays.fill(lutIndex, OUTSIDE);
+        if(cols == 2 && rws == 2) {
+            fillHomography(p, width, height);
+        }
+        else {
+            for(int r = 0; r < rws - 1; r++) {
+                for(int c = 0; c < cols - 1; c++) {
+                    final int i00 = (r * cols + c) * 2, i10 = i00 + 2;
+                    final int i01 = i00 + cols * 2, i11 = i01 + 2;
+                    final float u0 = c / (float) (cols - 1), u1 = (c + 1) / (float) (cols - 1);
+                    final float v0 = r / (float) (rws - 1), v1 = (r + 1) / (float) (rws - 1);
+                    fillTriangle(p[i00], p[i00 + 1], u0, v0, p[i10], p[i10 + 1], u1, v0,
+                            p[i11], p[i11 + 1], u1, v1, width, height);
+                    fillTriangle(p[i00], p[i00 + 1], u0, v0, p[i11], p[i11 + 1], u1, v1,
+                            p[i01], p[i01 + 1], u0, v1, width, height);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Fills the lookup table with the inverse of the projective mapping of 
+     * the unit square to the corners (Heckbert).
+     */
+    private void fillHomography(float[] p, int width, int height)
+    {
+        /* Corners clockwise: top left, top right, bottom right, bottom left */
+        final double x0 = p[0] * width, y0 = p[1] * height;
+        final double x1 = p[2] * width, y1 = p[3] * height;
+        final double x2 = p[6] * width, y2 = p[7] * height;
+        final double x3 = p[4] * width, y3 = p[5] * height;
+        final double sx = x0 - x1 + x2 - x3, sy = y0 - y1 + y2 - y3;
+        final double dx1 = x1 - x2, dx2 = x3 - x2, dy1 = y1 - y2, dy2 = y3 - y2;
+        final double det = dx1 * dy2 - dx2 * dy1;
+        double g = 0, h = 0;
+        if((sx != 0 || sy != 0) && det != 0) { // projective, else affine
+            g = (sx * dy2 - dx2 * sy) / det;
+            h = (dx1 * sy - sx * dy1) / det;
+        }
+        final double a = x1 - x0 + g * x1, b = x3 - x0 + h * x3, c = x0;
+        final double d = y1 - y0 + g * y1, e = y3 - y0 + h * y3, f = y0;
+        /* Adjugate: output position -> unit square */
+        final double ia = e - f * h, ib = c * h - b, ic = b * f - c * e;
+        final double id = f * g - d, ie = a - c * g, iff = c * d - a * f;
+        final double ig = d * h - e * g, ih = b * g - a * h, ii = a * e - b * d;
+        for(int y = 0; y < height; y++) {
+            final double py = y + 0.5;
+            for(int x = 0; x < width; x++) {
+                final double px = x + 0.5;
+                final double w = ig * px + ih * py + ii;
+                if(w == 0) {
+                    continue;
+                }
+                final double u = (ia * px + ib * py + ic) / w;
+                final double v = (id * px + ie * py + iff) / w;
+                store(y * width + x, u, v, width, height);
+            }
+        }
+    }
+    
+    /**
+     * Rasterizes a triangle of the mesh: output positions (0..1) with their
+     * source positions (u, v: 0..1).
+     */
+    private void fillTriangle(float ax, float ay, float au, float av,
+            float bx, float by, float bu, float bv, float cx, float cy, float cu, float cv,
+            int width, int height)
+    {
+        final double x0 = ax * width, y0 = ay * height;
+        final double x1 = bx * width, y1 = by * height;
+        final double x2 = cx * width, y2 = cy * height;
+        final double area = (x1 - x0) * (y2 - y0) - (x2 - x0) * (y1 - y0);
+        if(area == 0) {
+            return;
+        }
+        final int minX = Math.max(0, (int) Math.floor(Math.min(x0, Math.min(x1, x2))));
+        final int maxX = Math.min(width - 1, (int) Math.ceil(Math.max(x0, Math.max(x1, x2))));
+        final int minY = Math.max(0, (int) Math.floor(Math.min(y0, Math.min(y1, y2))));
+        final int maxY = Math.min(height - 1, (int) Math.ceil(Math.max(y0, Math.max(y1, y2))));
+        /* Small tolerance: no gaps between neighbouring triangles */
+        final double epsilon = -1e-9;
+        for(int y = minY; y <= maxY; y++) {
+            final double py = y + 0.5;
+            for(int x = minX; x <= maxX; x++) {
+                final double px = x + 0.5;
+                final double w0 = ((x1 - px) * (y2 - py) - (x2 - px) * (y1 - py)) / area;
+                final double w1 = ((x2 - px) * (y0 - py) - (x0 - px) * (y2 - py)) / area;
+                final double w2 = 1 - w0 - w1;
+                if(w0 < epsilon || w1 < epsilon || w2 < epsilon) {
+                    continue;
+                }
+                store(y * width + x, w0 * au + w1 * bu + w2 * cu, 
+                        w0 * av + w1 * bv + w2 * cv, width, height);
+            }
+        }
+    }
+    
+    /**
+     * Stores the source position (u, v: 0..1) of an output pixel.
+     */
+    private void store(int index, double u, double v, int width, int height)
+    {
+        if(u < -EDGE || v < -EDGE || u > 1 + EDGE || v > 1 + EDGE) {
+            return;
+        }
+        final int fx = (int) Math.round(Math.max(0, Math.min(width - 1, u * width - 0.5)) * 256);
+        final int fy = (int) Math.round(Math.max(0, Math.min(height - 1, v * height - 0.5)) * 256);
+        final int sx = fx >> 8, sy = fy >> 8;
+        lutIndex[index] = sy * width + sx;
+        lutFraction[index] = (fx & 0xff) | (fy & 0xff) << 8 |
+                (sx + 1 < width ? NEXT_COLUMN : 0) | (sy + 1 < height ? NEXT_ROW : 0);
+    }
+    
+    /**
+     * Linear interpolation of two RGB pixels.
+     * @param weight of b, 0..256
+     */
+    private static int mix(int a, int b, int weight)
+    {
+        final int inverse = 256 - weight;
+        final int rb = (((a & 0xff00ff) * inverse + (b & 0xff00ff) * weight) >>> 8) & 0xff00ff;
+        final int g = (((a & 0x00ff00) * inverse + (b & 0x00ff00) * weight) >>> 8) & 0x00ff00;
+        return rb | g;
+    }
+    
+    /**
+     * Warps a band of rows, split until BAND_ROWS.
+     */
+    private final class WarpBand extends RecursiveAction {
+        private final int y0, y1;
+
+        WarpBand(int y0, int y1) {
+            this.y0 = y0;
+            this.y1 = y1;
+        }
+
+        @Override
+        protected void compute() {
+            if(y1 - y0 > BAND_ROWS) {
+                final int mid = (y0 + y1) >>> 1;
+                invokeAll(new WarpBand(y0, mid), new WarpBand(mid, y1));
+                return;
+            }
+            final int width = lutWidth;
+            final int[] index = lutIndex, fraction = lutFraction;
+            final int[] src = srcPixels, dst = dstPixels;
+            for(int i = y0 * width, end = y1 * width; i < end; i++) {
+                final int p = index[i];
+                if(p == OUTSIDE) {
+                    dst[i] = 0;
+                    continue;
+                }
+                final int f = fraction[i];
+                final int fx = f & 0xff, fy = (f >> 8) & 0xff;
+                if(fx == 0 && fy == 0) {
+                    dst[i] = src[p];
+                    continue;
+                }
+                final int right = (f & NEXT_COLUMN) != 0 ? 1 : 0;
+                final int below = (f & NEXT_ROW) != 0 ? p + width : p;
+                final int top = mix(src[p], src[p + right], fx);
+                final int bottom = mix(src[below], src[below + right], fx);
+                dst[i] = mix(top, bottom, fy);
+            }
+        }
+    }
+}
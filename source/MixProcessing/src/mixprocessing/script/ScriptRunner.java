@@ -32,18 +32,28 @@ import javax.swing.SwingUtilities;
  */
 public class ScriptRunner {
     private final ScriptEngine scriptingEngine;
+    private final ScriptingApi api;
 
     /**
      * 
      * @param api Access to the scripting API
      */
     public ScriptRunner(final ScriptingApi api) {        
+        this.api = api;
         /* Init Scripting API */
         ScriptEngineManager factory = new ScriptEngineManager();
         scriptingEngine = factory.getEngineByName("JavaScript");
         scriptingEngine.put("Api", api); // access to EventManager through mp Variable
     }
     
+    /**
+     * Returns the scripting API used by the scripts.
+     * @return 
+     */
+    public final ScriptingApi getApi() {
+        return api;
+    }
+    
     /**
      * Executes a JavaScript and outputs thrown Exceptions to TextArea.
      * Uses a seperate Thread.
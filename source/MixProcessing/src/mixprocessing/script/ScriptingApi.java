@@ -26,14 +26,26 @@ import mixprocessing.channels.ChannelManagement;
 import mixprocessing.channels.GroupChannel;
 import mixprocessing.channels.SingleChannel;
 import mixprocessing.load.SketchCompiler;
+import mixprocessing.load.SketchReloader;
+import mixprocessing.output.FrameRecorder;
+import mixprocessing.output.OutputViewport;
+import mixprocessing.sketches.FrameBudgetGovernor;
+import mixprocessing.sketches.InstanceCache;
 import mixprocessing.sketches.Sketch;
 import mixprocessing.sketches.Sketches;
+import mixprocessing.util.AllocationCounter;
+import mixprocessing.util.BasePath;
+import java.awt.GraphicsEnvironment;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
 import java.awt.Shape;
 import java.awt.event.KeyEvent;
 import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 /**
  * MixProcessing's scripting API.
@@ -48,6 +60,7 @@ public class ScriptingApi {
     protected final MixRenderer renderer;
     protected final ChannelManagement channels;
     protected final Sketches sketches;
+    protected final SketchReloader reloader;
     
     /**
      * Public Constructor
@@ -62,6 +75,9 @@ public class ScriptingApi {
         this.channels = renderer.getChannels();
         this.channels.eventManager = events;
         this.sketches = renderer.getSketches();
+        this.sketches.getWatchdog().eventManager = events;
+        this.reloader = new SketchReloader(outputWindow, renderer);
+        this.reloader.eventManager = events;
     }
     
     /*************************************************************
@@ -286,12 +302,35 @@ public class ScriptingApi {
         return true;
     }
     
+    /**
+     * Sets a fixed logical resolution of the output: sketches and channels 
+     * use this size, independent of the window size. The frames are scaled
+     * to the window.
+     * @param width 0: follow the window size
+     * @param height 0: follow the window size
+     * @return true
+     */
+    @ApiMethodInfo(category = "Renderer", description = "Resolution")
+    public final boolean rendererResolution(int width, int height) {
+        renderer.setLogicalSize(width, height);
+        return true;
+    }
+    
+    /**
+     * Returns the resolution sketches and channels use.
+     * @return width, height
+     */
+    @ApiMethodInfo(category = "Renderer", description = "Resolution?")
+    public final int[] rendererResolutionGet() {
+        return new int[] { renderer.getCanvasWidth(), renderer.getCanvasHeight() };
+    }
+    
     /**
      * Returns the set maximum frame rate of the renderer
      * @return 
      */
     @ApiMethodInfo(category = "Renderer", description = "Frame Rate?")
-    public float rendererFrameRateGet() {
+    public final float rendererFrameRateGet() {
         return renderer.getMaxFrameRate();
     }
     
@@ -305,7 +344,644 @@ public class ScriptingApi {
         renderer.setMaxFrameRate(frameRate);
         return true;
     }
+
+    /**
+     * Returns the measured output frame rate of the renderer.
+     * @return
+     */
+    @ApiMethodInfo(category = "Renderer", description = "Frame Rate (measured)?")
+    public final float rendererFrameRateActualGet() {
+        return renderer.getFramePacer().getActualFrameRate();
+    }
+
+    /**
+     * Returns the average frame time jitter in milliseconds.
+     * @return
+     */
+    @ApiMethodInfo(category = "Renderer", description = "Jitter?")
+    public final float rendererJitterGet() {
+        return renderer.getFramePacer().getJitterMillis();
+    }
+
+    /**
+     * Returns the largest frame time jitter in milliseconds since the last
+     * statistics reset.
+     * @return
+     */
+    @ApiMethodInfo(category = "Renderer", description = "Jitter (max)?")
+    public final float rendererJitterMaxGet() {
+        return renderer.getFramePacer().getMaxJitterMillis();
+    }
+
+    /**
+     * Returns the number of frames, that missed their deadline.
+     * @return
+     */
+    @ApiMethodInfo(category = "Renderer", description = "Missed Frames?")
+    public final long rendererMissedFramesGet() {
+        return renderer.getFramePacer().getMissedDeadlines();
+    }
+
+    /**
+     * Resets the jitter and missed frames statistics.
+     * @return true
+     */
+    @ApiMethodInfo(category = "Renderer", description = "Reset Timing Statistics")
+    public final boolean rendererTimingReset() {
+        renderer.getFramePacer().resetStatistics();
+        sketches.resetTimings();
+        return true;
+    }
+
+    /**
+     * Returns the render time of all sketches per frame (including
+     * composition) in milliseconds: p50, p95, p99 and maximum.
+     * @return
+     */
+    @ApiMethodInfo(category = "Renderer", description = "Composite Time?")
+    public final double[] rendererCompositeTimeGet() {
+        return sketches.getCompositeTimes().getSummaryMillis();
+    }
+
+    /**
+     * Enables the measurement of the bytes allocated by the render pipeline
+     * per frame (without the sketches' own allocations).
+     * @param enabled
+     * @return false, if not supported by the JVM
+     */
+    @ApiMethodInfo(category = "Renderer", description = "Allocation Tracking")
+    public final boolean rendererAllocationTracking(boolean enabled) {
+        sketches.setAllocationTracking(enabled);
+        return sketches.isAllocationTracking() == enabled;
+    }
+
+    /**
+     * Returns the bytes allocated by the render pipeline per frame: 
+     * average, maximum and last frame.
+     * @return
+     */
+    @ApiMethodInfo(category = "Renderer", description = "Allocated Bytes?")
+    public final double[] rendererAllocatedBytesGet() {
+        AllocationCounter allocations = sketches.getAllocations();
+        return new double[] {
+            allocations.getAverageBytes(), allocations.getMaxBytes(),
+            allocations.getLastBytes()
+        };
+    }
+
+    /**
+     * Switches between active rendering (render thread shows the frames
+     * itself) and the AWT repaint mechanism.
+     * @param enabled
+     * @return true
+     */
+    @ApiMethodInfo(category = "Renderer", description = "Active Rendering")
+    public final boolean rendererActive(boolean enabled) {
+        renderer.setActiveRendering(enabled);
+        return true;
+    }
+
+    /**
+     * Returns if active rendering is used.
+     * @return
+     */
+    @ApiMethodInfo(category = "Renderer", description = "Active Rendering?")
+    public final boolean rendererActiveGet() {
+        return renderer.isActiveRendering();
+    }
+
+    /**
+     * Returns the number of repaint requests, which were coalesced or dropped
+     * by AWT (repaint mode).
+     * @return
+     */
+    @ApiMethodInfo(category = "Renderer", description = "Coalesced Frames?")
+    public final long rendererFramesCoalescedGet() {
+        return renderer.getPassiveCoalescedCount();
+    }
+
+    /**
+     * Returns the number of frames, which could not be shown (active
+     * rendering mode).
+     * @return
+     */
+    @ApiMethodInfo(category = "Renderer", description = "Dropped Frames?")
+    public final long rendererFramesDroppedGet() {
+        return renderer.getActiveDroppedCount();
+    }
+
+    /**
+     * Sets the time limit of a sketch's frame. Sketches exceeding it are
+     * quarantined (not drawn anymore, their channel keeps the last frame).
+     * @param millis 0: no limit, sketches are drawn on the render thread
+     * @return true
+     */
+    @ApiMethodInfo(category = "Renderer", description = "Watchdog Time Limit")
+    public final boolean rendererWatchdog(long millis) {
+        sketches.getWatchdog().setTimeLimit(millis);
+        return true;
+    }
+
+    /**
+     * Returns the time limit of a sketch's frame in milliseconds (0: no 
+     * limit).
+     * @return
+     */
+    @ApiMethodInfo(category = "Renderer", description = "Watchdog Time Limit?")
+    public final long rendererWatchdogGet() {
+        return sketches.getWatchdog().getTimeLimit();
+    }
+
+    /**
+     * Sets, how sketches without enabled output channel are drawn (if not
+     * set per sketch).
+     * @param policy "pause" (not drawn), "tick" (drawn with a reduced rate,
+     * see rendererOffChannelTickRate) or "run" (drawn with their frame rate)
+     * @return false, if the policy is unknown
+     */
+    @ApiMethodInfo(category = "Renderer", description = "Off Channel Policy")
+    public final boolean rendererOffChannel(String policy) {
+        Sketch.OffChannelPolicy p = Sketch.OffChannelPolicy.getByName(policy);
+        if(p == null) {
+            return false;
+        }
+        sketches.setOffChannelPolicy(p);
+        return true;
+    }
+
+    /**
+     * Returns the default off channel policy.
+     * @return "pause", "tick" or "run"
+     */
+    @ApiMethodInfo(category = "Renderer", description = "Off Channel Policy?")
+    public final String rendererOffChannelGet() {
+        return sketches.getOffChannelPolicy().toString().toLowerCase();
+    }
+
+    /**
+     * Sets the frame rate of off channel sketches with the "tick" policy.
+     * @param frameRate
+     * @return false, if not greater than 0
+     */
+    @ApiMethodInfo(category = "Renderer", description = "Off Channel Tick Rate")
+    public final boolean rendererOffChannelTickRate(float frameRate) {
+        sketches.setOffChannelTickRate(frameRate);
+        return frameRate > 0f;
+    }
+
+    /**
+     * Enables the frame budget governor: Under overload, sketches with a low
+     * priority skip frames, so the output frame rate is kept.
+     * @param enabled
+     * @return true
+     * @see ScriptingApi#sketchPriority(java.lang.String, int) 
+     */
+    @ApiMethodInfo(category = "Renderer", description = "Frame Budget Governor")
+    public final boolean rendererBudgetGovernor(boolean enabled) {
+        sketches.getGovernor().setEnabled(enabled);
+        return true;
+    }
+
+    /**
+     * Returns if the frame budget governor is enabled.
+     * @return
+     */
+    @ApiMethodInfo(category = "Renderer", description = "Frame Budget Governor?")
+    public final boolean rendererBudgetGovernorGet() {
+        return sketches.getGovernor().isEnabled();
+    }
+
+    /**
+     * Returns the decisions of the frame budget governor: budget (ms), 
+     * predicted drawing time of the last frame (ms), number of overloaded 
+     * frames and number of skipped sketch frames.
+     * @return
+     */
+    @ApiMethodInfo(category = "Renderer", description = "Frame Budget?")
+    public final double[] rendererBudgetGet() {
+        FrameBudgetGovernor governor = sketches.getGovernor();
+        return new double[] {
+            governor.getBudgetMillis(), governor.getPredictedMillis(),
+            governor.getOverloadedFrames(), governor.getSkippedFrames()
+        };
+    }
+
+    /**
+     * Enables the visibility culling: sketches hidden by an opaque sketch 
+     * (alpha 1, full background()) or outside of the canvas are only 
+     * drawn with the off channel tick rate (or paused).
+     * @param enabled
+     * @return true
+     */
+    @ApiMethodInfo(category = "Renderer", description = "Visibility Culling")
+    public final boolean rendererCulling(boolean enabled) {
+        sketches.setCulling(enabled);
+        return true;
+    }
+
+    /**
+     * Returns if the visibility culling is enabled.
+     * @return
+     */
+    @ApiMethodInfo(category = "Renderer", description = "Visibility Culling?")
+    public final boolean rendererCullingGet() {
+        return sketches.isCulling();
+    }
+
+    /**
+     * Returns the culled sketches: number of hidden sketches and number of
+     * sketches outside of the canvas in the last frame, total number of 
+     * culled sketch frames.
+     * @return
+     */
+    @ApiMethodInfo(category = "Renderer", description = "Culled Sketches?")
+    public final long[] rendererCullGet() {
+        return new long[] {
+            sketches.getOccludedSketches(), sketches.getOffCanvasSketches(),
+            sketches.getCulledFrames()
+        };
+    }
+
+    /**
+     * Sets the eviction of idle sketches (disabled by default): Sketch 
+     * instances are created, when the sketch is routed to a channel or 
+     * accessed by a script. Sketches without enabled channel are deleted
+     * after the idle time, or least recently used first, while the used 
+     * heap exceeds the budget. Attention: an evicted sketch loses its 
+     * state (variables), it is set up again on the next use.
+     * @param idleSeconds 0: no eviction by time
+     * @param heapBudgetMB 0: no heap budget
+     * @return true
+     */
+    @ApiMethodInfo(category = "Renderer", description = "Sketch Eviction")
+    public final boolean rendererEviction(double idleSeconds, long heapBudgetMB) {
+        InstanceCache cache = sketches.getInstanceCache();
+        cache.setIdleTime(idleSeconds);
+        cache.setHeapBudget(heapBudgetMB);
+        return true;
+    }
+
+    /**
+     * Returns the eviction settings: idle time in seconds, heap budget in 
+     * megabytes.
+     * @return
+     */
+    @ApiMethodInfo(category = "Renderer", description = "Sketch Eviction?")
+    public final double[] rendererEvictionGet() {
+        InstanceCache cache = sketches.getInstanceCache();
+        return new double[] { cache.getIdleTime(), cache.getHeapBudget() };
+    }
+
+    /**
+     * Returns the sketch instances: existing instances, created and 
+     * evicted instances in total, used heap in megabytes.
+     * @return
+     */
+    @ApiMethodInfo(category = "Renderer", description = "Sketch Instances?")
+    public final long[] rendererInstancesGet() {
+        InstanceCache cache = sketches.getInstanceCache();
+        return new long[] {
+            cache.getInstanceCount(), cache.getCreatedCount(), 
+            cache.getEvictedCount(), InstanceCache.getUsedHeap() / (1024L * 1024L)
+        };
+    }
+
+    /**
+     * Draws sketches with non-overlapping channels in parallel on all
+     * processor cores. The output stays the same.
+     * @param enabled
+     * @return true
+     */
+    @ApiMethodInfo(category = "Renderer", description = "Parallel Rendering")
+    public final boolean rendererParallel(boolean enabled) {
+        sketches.setParallelRendering(enabled);
+        return true;
+    }
+
+    /**
+     * Returns if sketches are drawn in parallel.
+     * @return
+     */
+    @ApiMethodInfo(category = "Renderer", description = "Parallel Rendering?")
+    public final boolean rendererParallelGet() {
+        return sketches.isParallelRendering();
+    }
+
+    /**
+     * Keeps the last frame of every sketch in its own layer. Sketches are
+     * only drawn when due, all layers are composited every frame.
+     * @param enabled
+     * @return true
+     */
+    @ApiMethodInfo(category = "Renderer", description = "Retained Layers")
+    public final boolean rendererRetained(boolean enabled) {
+        sketches.setRetainedLayers(enabled);
+        return true;
+    }
+
+    /**
+     * Returns if retained layers are used.
+     * @return
+     */
+    @ApiMethodInfo(category = "Renderer", description = "Retained Layers?")
+    public final boolean rendererRetainedGet() {
+        return sketches.isRetainedLayers();
+    }
+
+    /*************************************************************
+     * Output Viewports
+     *************************************************************/
+    
+    /**
+     * Creates an output viewport or changes its region. A viewport shows a
+     * rectangle of the canvas (see rendererResolution), e.g. one projector
+     * of a virtual canvas spanning several projectors.
+     * @param name
+     * @param x left edge on the canvas
+     * @param y top edge on the canvas
+     * @param width
+     * @param height
+     * @return false, if the size is empty
+     */
+    @ApiMethodInfo(category = "Output", description = "Viewport")
+    public final boolean outputViewport(String name, int x, int y, int width, int height) {
+        if(name == null || width <= 0 || height <= 0) {
+            return false;
+        }
+        renderer.getOutputs().setViewport(name, new Rectangle(x, y, width, height));
+        return true;
+    }
+    
+    /**
+     * Removes an output viewport and closes its window.
+     * @param name
+     * @return false, if not found
+     */
+    @ApiMethodInfo(category = "Output", description = "Remove Viewport")
+    public final boolean outputViewportRemove(String name) {
+        return renderer.getOutputs().removeViewport(name);
+    }
     
+    /**
+     * Opens a window showing the viewport.
+     * @param name
+     * @param screen index of the screen (fullscreen) or -1 (normal window)
+     * @return false, if not found, headless or the screen does not exist
+     */
+    @ApiMethodInfo(category = "Output", description = "Viewport Window")
+    public final boolean outputViewportWindow(String name, int screen) {
+        OutputViewport viewport = renderer.getOutputs().getViewport(name);
+        return viewport != null && viewport.openWindow(screen);
+    }
+    
+    /**
+     * Closes the window of the viewport. The viewport keeps rendering 
+     * offscreen.
+     * @param name
+     * @return false, if not found
+     */
+    @ApiMethodInfo(category = "Output", description = "Close Viewport Window")
+    public final boolean outputViewportClose(String name) {
+        OutputViewport viewport = renderer.getOutputs().getViewport(name);
+        if(viewport == null) {
+            return false;
+        }
+        viewport.closeWindow();
+        return true;
+    }
+    
+    /**
+     * Returns the region of the viewport on the canvas.
+     * @param name
+     * @return x, y, width, height or null (not found)
+     */
+    @ApiMethodInfo(category = "Output", description = "Viewport?")
+    public final int[] outputViewportGet(String name) {
+        OutputViewport viewport = renderer.getOutputs().getViewport(name);
+        if(viewport == null) {
+            return null;
+        }
+        Rectangle r = viewport.getSource();
+        return new int[] { r.x, r.y, r.width, r.height };
+    }
+    
+    /**
+     * Warps the viewport with a corner pin (keystone correction). The 
+     * positions are relative to the output (0..1 = left/top..right/bottom).
+     * @param name
+     * @param x0 top left
+     * @param y0 top left
+     * @param x1 top right
+     * @param y1 top right
+     * @param x2 bottom right
+     * @param y2 bottom right
+     * @param x3 bottom left
+     * @param y3 bottom left
+     * @return false, if not found
+     */
+    @ApiMethodInfo(category = "Output", description = "Warp Corners")
+    public final boolean outputWarpCorners(String name, double x0, double y0, 
+            double x1, double y1, double x2, double y2, double x3, double y3) {
+        OutputViewport viewport = renderer.getOutputs().getViewport(name);
+        if(viewport == null) {
+            return false;
+        }
+        viewport.getWarp().setCorners(new float[] {
+            (float) x0, (float) y0, (float) x1, (float) y1, 
+            (float) x2, (float) y2, (float) x3, (float) y3
+        });
+        return true;
+    }
+    
+    /**
+     * Resets the warp of the viewport to a mesh of control points (not 
+     * warped until a point is moved).
+     * @param name
+     * @param columns number of control points per row, at least 2
+     * @param rows number of control points per column, at least 2
+     * @return false, if not found
+     */
+    @ApiMethodInfo(category = "Output", description = "Warp Mesh")
+    public final boolean outputWarpMesh(String name, int columns, int rows) {
+        OutputViewport viewport = renderer.getOutputs().getViewport(name);
+        if(viewport == null) {
+            return false;
+        }
+        viewport.getWarp().setGrid(columns, rows);
+        return true;
+    }
+    
+    /**
+     * Moves a control point of the viewport's warp mesh.
+     * @param name
+     * @param column
+     * @param row
+     * @param x relative to the output (0..1)
+     * @param y relative to the output (0..1)
+     * @return false, if viewport or point not found
+     */
+    @ApiMethodInfo(category = "Output", description = "Warp Point")
+    public final boolean outputWarpPoint(String name, int column, int row, double x, double y) {
+        OutputViewport viewport = renderer.getOutputs().getViewport(name);
+        return viewport != null && 
+                viewport.getWarp().setPoint(column, row, (float) x, (float) y);
+    }
+    
+    /**
+     * Returns the position of a control point of the viewport's warp mesh.
+     * @param name
+     * @param column
+     * @param row
+     * @return x, y or null (not found)
+     */
+    @ApiMethodInfo(category = "Output", description = "Warp Point?")
+    public final float[] outputWarpPointGet(String name, int column, int row) {
+        OutputViewport viewport = renderer.getOutputs().getViewport(name);
+        return (viewport != null) ? viewport.getWarp().getPoint(column, row) : null;
+    }
+    
+    /**
+     * Shows the warp control points in the viewport's window, so they can 
+     * be dragged with the mouse.
+     * @param name
+     * @param enabled
+     * @return false, if not found
+     */
+    @ApiMethodInfo(category = "Output", description = "Warp Editing")
+    public final boolean outputWarpEdit(String name, boolean enabled) {
+        OutputViewport viewport = renderer.getOutputs().getViewport(name);
+        if(viewport == null) {
+            return false;
+        }
+        viewport.setEditing(enabled);
+        return true;
+    }
+    
+    /**
+     * Sets the soft edge blending zones of the viewport, where it overlaps
+     * with the outputs of other projectors.
+     * @param name
+     * @param left width of the overlap in pixels, 0: none
+     * @param right width of the overlap in pixels, 0: none
+     * @param top height of the overlap in pixels, 0: none
+     * @param bottom height of the overlap in pixels, 0: none
+     * @return false, if not found
+     */
+    @ApiMethodInfo(category = "Output", description = "Edge Blending")
+    public final boolean outputBlend(String name, int left, int right, int top, int bottom) {
+        OutputViewport viewport = renderer.getOutputs().getViewport(name);
+        if(viewport == null) {
+            return false;
+        }
+        viewport.getEdgeBlend().setOverlap(left, right, top, bottom);
+        return true;
+    }
+    
+    /**
+     * Sets the ramp of the viewport's edge blending.
+     * @param name
+     * @param gamma gamma of the projector (default 2.2, 1: linear)
+     * @param curve steepness of the ramp (default 2, 1: linear)
+     * @return false, if not found or a value is not greater than 0
+     */
+    @ApiMethodInfo(category = "Output", description = "Edge Blending Curve")
+    public final boolean outputBlendCurve(String name, double gamma, double curve) {
+        OutputViewport viewport = renderer.getOutputs().getViewport(name);
+        if(viewport == null || gamma <= 0 || curve <= 0) {
+            return false;
+        }
+        viewport.getEdgeBlend().setCurve((float) gamma, (float) curve);
+        return true;
+    }
+    
+    /**
+     * Returns the edge blending parameters of the viewport.
+     * @param name
+     * @return left, right, top, bottom, gamma, curve or null (not found)
+     */
+    @ApiMethodInfo(category = "Output", description = "Edge Blending?")
+    public final double[] outputBlendGet(String name) {
+        OutputViewport viewport = renderer.getOutputs().getViewport(name);
+        return (viewport != null) ? viewport.getEdgeBlend().getParameters() : null;
+    }
+    
+    /**
+     * Starts recording the output (the whole canvas) in the background.
+     * Frames are dropped instead of slowing down the renderer, if the 
+     * encoding is too slow.
+     * @param path folder (png) or file (mjpeg), relative to the program folder
+     * @param format "png" (image sequence) or "mjpeg"
+     * @param frameRate maximum frames per second, 0: every frame
+     * @return false, if the recording could not be started
+     */
+    @ApiMethodInfo(category = "Output", description = "Record")
+    public final boolean outputRecord(String path, String format, double frameRate) {
+        File target = new File(path);
+        if(!target.isAbsolute()) {
+            target = new File(BasePath.getBasePath(), path);
+        }
+        try {
+            renderer.getOutputs().getRecorder().start(target, format, (float) frameRate);
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace(System.err);
+            return false;
+        }
+    }
+    
+    /**
+     * Stops the recording and waits until all captured frames are written.
+     * @return false, if not recording
+     */
+    @ApiMethodInfo(category = "Output", description = "Stop Recording")
+    public final boolean outputRecordStop() {
+        FrameRecorder recorder = renderer.getOutputs().getRecorder();
+        if(!recorder.isRecording()) {
+            return false;
+        }
+        recorder.stop();
+        return true;
+    }
+    
+    /**
+     * Returns the state of the current (or last) recording.
+     * @return recording (1/0), written frames, dropped frames
+     */
+    @ApiMethodInfo(category = "Output", description = "Recording?")
+    public final long[] outputRecordGet() {
+        FrameRecorder recorder = renderer.getOutputs().getRecorder();
+        return new long[] {
+            recorder.isRecording() ? 1 : 0, recorder.getRecordedFrames(), 
+            recorder.getDroppedFrames()
+        };
+    }
+    
+    /**
+     * Returns the names of all viewports.
+     * @return 
+     */
+    @ApiMethodInfo(category = "Output", description = "Viewports?")
+    public final String[] outputViewportsGet() {
+        List<OutputViewport> viewports = renderer.getOutputs().getViewports();
+        String[] names = new String[viewports.size()];
+        for(int i = 0; i < names.length; i++) {
+            names[i] = viewports.get(i).getName();
+        }
+        return names;
+    }
+    
+    /**
+     * Returns the number of screens (0 if headless).
+     * @return 
+     */
+    @ApiMethodInfo(category = "Output", description = "Screens?")
+    public final int outputScreensGet() {
+        if(GraphicsEnvironment.isHeadless()) {
+            return 0;
+        }
+        return GraphicsEnvironment.getLocalGraphicsEnvironment().getScreenDevices().length;
+    }
+
     /*************************************************************
      * Sketch Control
      *************************************************************/
@@ -356,6 +1032,120 @@ public class ScriptingApi {
         }
     }
     
+    /**
+     * Sets, how a sketch is drawn while it has no enabled output channel.
+     * @param sketchName
+     * @param policy "pause", "tick", "run" or "default" (see 
+     * rendererOffChannel)
+     * @return false, if sketch or policy not found
+     */
+    @ApiMethodInfo(category = "Sketches", description = "Off Channel Policy")
+    public final boolean sketchOffChannel(String sketchName, String policy) {
+        Sketch s = sketches.findSketch(sketchName);
+        Sketch.OffChannelPolicy p = Sketch.OffChannelPolicy.getByName(policy);
+        if(s == null || (p == null && !"default".equalsIgnoreCase(policy))) {
+            return false;
+        }
+        else {
+            s.setOffChannelPolicy(p);
+            return true;
+        }
+    }
+    
+    /**
+     * Returns the off channel policy of a sketch.
+     * @param sketchName
+     * @return "pause", "tick", "run", "default" or null (not found)
+     */
+    @ApiMethodInfo(category = "Sketches", description = "Off Channel Policy?")
+    public final String sketchOffChannelGet(String sketchName) {
+        Sketch s = sketches.findSketch(sketchName);
+        if(s == null) {
+            return null;
+        }
+        else if(s.getOffChannelPolicy() == null) {
+            return "default";
+        }
+        else {
+            return s.getOffChannelPolicy().toString().toLowerCase();
+        }
+    }
+    
+    /**
+     * Sets the resolution a sketch is drawn with, relative to the output 
+     * (e.g. 0.5). The frames are scaled up into the channel. Changing the 
+     * scale restarts the sketch.
+     * @param sketchName
+     * @param scale 0.05 .. 1 (full resolution)
+     * @return 
+     */
+    @ApiMethodInfo(category = "Sketches", description = "Render Scale")
+    public final boolean sketchScale(String sketchName, float scale) {
+        Sketch s = sketches.findSketch(sketchName);
+        if(s != null) {
+            s.setRenderScale(scale);
+            return true;
+        }
+        else {
+            return false;
+        }
+    }
+    
+    /**
+     * 
+     * @param sketchName
+     * @param scale
+     * @return 
+     * @see ScriptingApi#sketchScale(java.lang.String, float) 
+     */
+    @ApiMethodInfo(category = "Sketches", description = "Render Scale", ignore = true)
+    public final boolean sketchScale(String sketchName, double scale) {
+        return sketchScale(sketchName, (float)scale);
+    }
+    
+    /**
+     * Returns the render scale of a sketch.
+     * @param sketchName
+     * @return scale or 0 (not found)
+     */
+    @ApiMethodInfo(category = "Sketches", description = "Render Scale?")
+    public final float sketchScaleGet(String sketchName) {
+        Sketch s = sketches.findSketch(sketchName);
+        return (s != null) ? s.getRenderScale() : 0.0f;
+    }
+    
+    /**
+     * Sets the interpolation, which scales up the frames of a sketch with a
+     * render scale below 1.
+     * @param sketchName
+     * @param mode "nearest", "bilinear" or "bicubic"
+     * @return false, if sketch or mode not found
+     */
+    @ApiMethodInfo(category = "Sketches", description = "Render Scale Interpolation")
+    public final boolean sketchScaleInterpolation(String sketchName, String mode) {
+        Sketch s = sketches.findSketch(sketchName);
+        final Object hint;
+        if("nearest".equalsIgnoreCase(mode)) {
+            hint = RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR;
+        }
+        else if("bilinear".equalsIgnoreCase(mode)) {
+            hint = RenderingHints.VALUE_INTERPOLATION_BILINEAR;
+        }
+        else if("bicubic".equalsIgnoreCase(mode)) {
+            hint = RenderingHints.VALUE_INTERPOLATION_BICUBIC;
+        }
+        else {
+            return false;
+        }
+        if(s != null) {
+            s.setInterpolation(hint);
+            return true;
+        }
+        else {
+            return false;
+        }
+    }
+    
     /**
      * Updates the sketch-output channel association.
      * Attention: Restarts Sketch!
@@ -410,15 +1200,17 @@ public class ScriptingApi {
     }
     
     /**
-     * Forces an restart of the given sketch (calls setup()).
+     * Forces an restart of the given sketch (calls setup()). Also enables
+     * a sketch disabled by the watchdog again.
      * @param sketchName
-     * @return 
+     * @return false, if not found or if a quarantined sketch's call is
+     * still running
      */
     @ApiMethodInfo(category = "Sketches", description = "Restart")
     public final boolean sketchRestart(String sketchName)
     {
         Sketch s = sketches.findSketch(sketchName);
-        if(s == null) {
+        if(s == null || !sketches.getWatchdog().release(s)) {
             return false;
         }
         else {
@@ -427,6 +1219,19 @@ public class ScriptingApi {
         }
     }
     
+    /**
+     * Returns the watchdog state of a sketch: "ok", "disabled" (throws
+     * exceptions, paused for a while) or "quarantined" (exceeded the time
+     * limit, see sketchRestart).
+     * @param sketchName
+     * @return state or null (not found)
+     */
+    @ApiMethodInfo(category = "Sketches", description = "Watchdog State?")
+    public final String sketchStateGet(String sketchName) {
+        Sketch s = sketches.findSketch(sketchName);
+        return (s != null) ? sketches.getWatchdog().getState(s) : null;
+    }
+    
     
     /**
      * Set sketch's variables. Includes public, private and protected ones.
@@ -439,7 +1244,7 @@ public class ScriptingApi {
     @ApiMethodInfo(category = "Sketches", description = "Variable")
     public final boolean sketchVar(String sketchName, String varName, Object newValue) {
         Sketch s = sketches.findSketch(sketchName);
-        if(s == null || s.getInstance() == null) {
+        if(s == null || s.obtainInstance() == null) {
             return false;
         }
         else {
@@ -528,7 +1333,7 @@ public class ScriptingApi {
             Object finalValue, long delayMS, long durationMS, long periodeMS, 
             String timingFunction) {
         Sketch s = sketches.findSketch(sketchName);
-        if(s == null || s.getInstance() == null) {
+        if(s == null || s.obtainInstance() == null) {
             return false;
         }
         else {
@@ -548,7 +1353,7 @@ public class ScriptingApi {
     @ApiMethodInfo(category = "Sketches", description = "Variable?")
     public final Object sketchVarGet(String sketchName, String varName) {
         Sketch s = sketches.findSketch(sketchName);
-        if(s == null || s.getInstance() == null) {
+        if(s == null || s.obtainInstance() == null) {
             return null;
         }
         else {
@@ -609,7 +1414,7 @@ public class ScriptingApi {
     @ApiMethodInfo(category = "Sketches", description = "Variables?")
     public final String[] sketchVarsGet(String sketchName) {
         Sketch s = sketches.findSketch(sketchName);
-        if(s == null || s.getInstance() == null) {
+        if(s == null || s.obtainInstance() == null) {
             return null;
         }
         else {
@@ -625,7 +1430,7 @@ public class ScriptingApi {
     @ApiMethodInfo(category = "Sketches", description = "Frame Rate?")
     public final boolean sketchFrameRate(String sketchName, float fps) {
         Sketch s = sketches.findSketch(sketchName);
-        if(s != null && s.getInstance() == null) {
+        if(s != null && s.obtainInstance() != null) {
             s.getInstance().frameRate(fps);
             return true;
         }
@@ -642,7 +1447,7 @@ public class ScriptingApi {
     @ApiMethodInfo(category = "Sketches", description = "Frame Rate")
     public final float sketchFrameRateGet(String sketchName) {
         Sketch s = sketches.findSketch(sketchName);
-        if(s == null || s.getInstance() == null) {
+        if(s == null || s.obtainInstance() == null) {
             return -1f;
         }
         else {
@@ -650,6 +1455,72 @@ public class ScriptingApi {
         }
     } 
     
+    /**
+     * Returns the timing statistics of a sketch in milliseconds: 
+     * p50, p95, p99 and maximum.
+     * @param sketchName
+     * @param phase "setup" (graphics settings, setup()), "draw" or "store"
+     * (storing graphics settings)
+     * @return values or null (sketch or phase not found)
+     */
+    @ApiMethodInfo(category = "Sketches", description = "Timing?")
+    public final double[] sketchTimingGet(String sketchName, String phase) {
+        Sketch s = sketches.findSketch(sketchName);
+        if(s == null || s.getTimings().getPhase(phase) == null) {
+            return null;
+        }
+        else {
+            return s.getTimings().getPhase(phase).getSummaryMillis();
+        }
+    }
+    
+    /**
+     * Sets the priority of a sketch. If the frame budget is exceeded, 
+     * sketches with lower priorities skip frames first.
+     * @param sketchName
+     * @param priority default: 0
+     * @return 
+     */
+    @ApiMethodInfo(category = "Sketches", description = "Priority")
+    public final boolean sketchPriority(String sketchName, int priority) {
+        Sketch s = sketches.findSketch(sketchName);
+        if(s != null) {
+            s.setPriority(priority);
+            return true;
+        }
+        else {
+            return false;
+        }
+    }
+    
+    /**
+     * Returns the priority of a sketch or 0 (not found).
+     * @param sketchName
+     * @return 
+     */
+    @ApiMethodInfo(category = "Sketches", description = "Priority?")
+    public final int sketchPriorityGet(String sketchName) {
+        Sketch s = sketches.findSketch(sketchName);
+        return (s != null) ? s.getPriority() : 0;
+    }
+    
+    /**
+     * Returns the frame budget data of a sketch: average cost of a frame 
+     * (ms) and number of frames skipped because of the budget.
+     * @param sketchName
+     * @return values or null (sketch not found)
+     */
+    @ApiMethodInfo(category = "Sketches", description = "Frame Budget?")
+    public final double[] sketchBudgetGet(String sketchName) {
+        Sketch s = sketches.findSketch(sketchName);
+        if(s == null) {
+            return null;
+        }
+        else {
+            return new double[] { s.getDrawCostMillis(), s.getBudgetSkippedFrames() };
+        }
+    }
+    
     /**
      * Returns a sketch's frame count value or -1f (not found, not inited)
      * @param sketchName
@@ -658,7 +1529,7 @@ public class ScriptingApi {
     @ApiMethodInfo(category = "Sketches", description = "Frame Count?")
     public final int sketchFrameCountGet(String sketchName) {
         Sketch s = sketches.findSketch(sketchName);
-        if(s == null || s.getInstance() == null) {
+        if(s == null || s.obtainInstance() == null) {
             return -1;
         }
         else {
@@ -746,28 +1617,39 @@ public class ScriptingApi {
     
     /**
      * Loads, compiles and registers a Processing Sketch from source code.
+     * The sketch's folder is watched afterwards, changes are reloaded 
+     * automatically. An already loaded sketch is recompiled in the 
+     * background and replaced at a frame boundary (see systemHotReload).
      * @param sketchPath Path to Sketch's project folder or PDE file.
-     * @return sucess of process.
+     * @return sucess of process (of the compilation, if not loaded yet).
      */
     @ApiMethodInfo(category = "System", description = "Load Sketch")
     public final boolean systemLoad(String sketchPath) {
-        final File sketchFile = new File(sketchPath);
+        File sketchFile = new File(sketchPath);
         
         final File sketchFolder;
         if(sketchFile.isDirectory()) {
             sketchFolder = sketchFile;
+            sketchFile = new File(sketchFile, sketchFile.getName() + ".pde");
         }
         else {
             sketchFolder = sketchFile.getParentFile();
         }
         
         if(sketchFile.exists()) {
+            Sketch loaded = getSketches().findSketch(SketchCompiler.getClassName(sketchFile));
+            if(loaded != null) {
+                reloader.watch(loaded, sketchFile);
+                reloader.reload(loaded, sketchFile);
+                return true;
+            }
             SketchCompiler compiler =  new SketchCompiler();
-            Class<?> result = compiler.compileSketch(new File(sketchPath));
+            Class<?> result = compiler.compileSketch(sketchFile);
             if(result != null) {
                 Sketch newSketch = new Sketch(result);
-                newSketch.createInstance(outputWindow, sketchFolder.getAbsolutePath());
+                newSketch.prepareInstance(outputWindow, sketchFolder.getAbsolutePath());
                 getSketches().addSketch(newSketch);
+                reloader.watch(newSketch, sketchFile);
                 events.fireSketchesChanged();
                 return true;
             }
@@ -780,6 +1662,37 @@ public class ScriptingApi {
         }
     }
     
+    /**
+     * Enables the automatic reload of changed sketches, which were loaded
+     * by systemLoad.
+     * @param enabled
+     * @return true
+     */
+    @ApiMethodInfo(category = "System", description = "Hot Reload")
+    public final boolean systemHotReload(boolean enabled) {
+        reloader.setEnabled(enabled);
+        return true;
+    }
+    
+    /**
+     * Returns if the automatic reload of changed sketches is enabled.
+     * @return
+     */
+    @ApiMethodInfo(category = "System", description = "Hot Reload?")
+    public final boolean systemHotReloadGet() {
+        return reloader.isEnabled();
+    }
+    
+    /**
+     * Returns the number of reloaded sketches and of failed reloads 
+     * (compile errors, exceptions in setup).
+     * @return
+     */
+    @ApiMethodInfo(category = "System", description = "Hot Reloads?")
+    public final long[] systemReloadsGet() {
+        return new long[] { reloader.getReloads(), reloader.getFailures() };
+    }
+    
     /**
      * Returns an array of all sketches
      * @return Sketch[] Array
@@ -832,24 +1745,26 @@ public class ScriptingApi {
     }
     
     /**
-     * Moves the virtual mouse to the given position for all receiving sketches.
+     * Moves the virtual mouse to the given position for all receiving sketches
+     * within the channels at this position.
      * @param x
      * @param y
      * @return 
      */
     @ApiMethodInfo(category = "System", description = "Mouse: Position")
     public final boolean systemMouse(int x, int y) {
-        getSketches().mouseMoved(x, y, false);
+        getSketches().mouseMoved(x, y, false, channels);
         return true;
     }
     
     /**
-     * Calls the sketches' mouseClicked() method for all receiving sketches.
+     * Calls the sketches' mouseClicked() method for all receiving sketches
+     * at the mouse position.
      * @return 
      */
     @ApiMethodInfo(category = "System", description = "Mouse: Click")
     public final boolean systemMouseClick() {
-        getSketches().mouseEvent(false, false, true);
+        getSketches().mouseEvent(false, false, true, channels);
         return true;
     }
     
@@ -0,0 +1,208 @@
+/*
+MixProcessing - Live Mixing of Processing Sketches 
+https://github.com/itschleemilch/MixProcessing
+
+Copyright (c) 2014 Sebastian Schleemilch
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package mixprocessing.sketches;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Keeps the output frame rate under overload: Tracks the recent draw cost
+ * of every sketch (running average) and predicts the cost of the next
+ * frame. If the prediction exceeds the frame budget, sketches with a low
+ * priority skip the frame (lowest priority and most expensive first), 
+ * until the prediction fits. Sketches with the highest priority of the 
+ * frame are never skipped, and no sketch is skipped more than 
+ * MAX_SKIP_STREAK frames in a row.
+ *
+ * @author Sebastian Schleemilch
+ * @see Sketch#setPriority(int)
+ */
+public class FrameBudgetGovernor {
+    /* Part of the frame period, that is available for the sketches */
+    private static final double BUDGET_SHARE = 0.8d;
+    /* Weight of a new sample within the running average of the draw cost */
+    private static final double COST_WEIGHT = 1d / 8d;
+    /* A throttled sketch is drawn at least every (MAX_SKIP_STREAK + 1)th frame */
+    private static final int MAX_SKIP_STREAK = 7;
+    
+    private static final Comparator<Sketch> SKIP_ORDER = new Comparator<Sketch>() {
+        @Override
+        public int compare(Sketch a, Sketch b) {
+            if(a.getPriority() != b.getPriority()) {
+                return a.getPriority() < b.getPriority() ? -1 : 1;
+            }
+            return Double.compare(b.budgetCost, a.budgetCost);
+        }
+    };
+
+    private volatile boolean enabled = true;
+    /* 0: no budget (e.g. offline rendering) */
+    private volatile long budgetNanos = 0;
+    private final ArrayList<Sketch> candidates = new ArrayList<>();
+    private boolean overloaded = false;
+    
+    /* Metrics */
+    private volatile long overloadedFrames = 0;
+    private volatile long skippedFrames = 0;
+    private volatile double predictedNanos = 0;
+
+    public FrameBudgetGovernor() {
+    }
+
+    /**
+     * Derives the frame budget from the output frame rate.
+     * @param frameRate frames per second, 0: no budget
+     */
+    public final void setFrameRate(float frameRate) {
+        budgetNanos = (frameRate <= 0f) ? 0 : 
+                Math.round(BUDGET_SHARE * 1000000000d / frameRate);
+    }
+
+    /**
+     * Returns the time available for drawing the sketches per frame.
+     * @return milliseconds, 0: no budget
+     */
+    public final double getBudgetMillis() {
+        return budgetNanos / 1000000d;
+    }
+
+    public final void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public final boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Decides, which sketches skip the current frame (see 
+     * Sketch#isBudgetSkipped()). Has to be called before the sketches are
+     * drawn.
+     * @param sketches all sketches
+     * @param frameNanos frame time
+     * @param retained true: sketches stopped with noLoop() are not drawn
+     * @param parallelism number of sketches drawn at the same time
+     */
+    final void beginFrame(List<Sketch> sketches, long frameNanos, boolean retained,
+            int parallelism)
+    {
+        candidates.clear();
+        double predicted = 0;
+        int maxPriority = Integer.MIN_VALUE;
+        for(int i = 0; i < sketches.size(); i++) {
+            final Sketch sketch = sketches.get(i);
+            sketch.budgetSkipped = false;
+            if(sketch.getInstance() != null && !sketch.quarantined && 
+                    !sketch.disabled && !sketch.offChannelSkipped &&
+                    sketch.needsRedraw(frameNanos) &&
+                    (!retained || sketch.isLooping())) {
+                candidates.add(sketch);
+                predicted += sketch.budgetCost;
+                maxPriority = Math.max(maxPriority, sketch.getPriority());
+            }
+        }
+        predicted /= Math.max(1, parallelism);
+        predictedNanos = predicted;
+        
+        final boolean overload = enabled && budgetNanos > 0 && predicted > budgetNanos;
+        if(overload != overloaded) {
+            overloaded = overload;
+            if(overload) {
+                System.out.printf("Frame budget exceeded (%.1f of %.1f ms), throttling low priority sketches.\n",
+                        predicted / 1000000d, budgetNanos / 1000000d);
+            }
+            else {
+                System.out.println("Frame budget met again.");
+            }
+        }
+        if(overload) {
+            overloadedFrames++;
+            candidates.sort(SKIP_ORDER);
+            for(int i = 0; i < candidates.size() && predicted > budgetNanos; i++) {
+                final Sketch sketch = candidates.get(i);
+                if(sketch.getPriority() >= maxPriority) {
+                    break;
+                }
+                if(sketch.budgetSkipStreak < MAX_SKIP_STREAK) {
+                    sketch.budgetSkipped = true;
+                    sketch.budgetSkippedFrames++;
+                    skippedFrames++;
+                    predicted -= sketch.budgetCost / Math.max(1, parallelism);
+                }
+            }
+        }
+        for(int i = 0; i < candidates.size(); i++) {
+            final Sketch sketch = candidates.get(i);
+            sketch.budgetSkipStreak = sketch.budgetSkipped ? 
+                    sketch.budgetSkipStreak + 1 : 0;
+        }
+        candidates.clear();
+    }
+
+    /**
+     * Adds a measured draw cost (setup, draw and storing of the settings)
+     * to the sketch's running average.
+     * @param sketch
+     * @param nanos
+     */
+    final void recordCost(Sketch sketch, long nanos) {
+        if(sketch.budgetCost == 0) {
+            sketch.budgetCost = nanos;
+        }
+        else {
+            sketch.budgetCost += (nanos - sketch.budgetCost) * COST_WEIGHT;
+        }
+    }
+
+    /**
+     * Returns the number of frames, whose predicted cost exceeded the 
+     * budget.
+     * @return
+     */
+    public final long getOverloadedFrames() {
+        return overloadedFrames;
+    }
+
+    /**
+     * Returns the total number of frames skipped by sketches.
+     * @return
+     */
+    public final long getSkippedFrames() {
+        return skippedFrames;
+    }
+
+    /**
+     * Returns the predicted drawing time of the last frame.
+     * @return milliseconds
+     */
+    public final double getPredictedMillis() {
+        return predictedNanos / 1000000d;
+    }
+
+    /**
+     * Clears the counters.
+     */
+    public final void reset() {
+        overloadedFrames = 0;
+        skippedFrames = 0;
+    }
+}
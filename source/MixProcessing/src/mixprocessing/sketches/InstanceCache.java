@@ -0,0 +1,346 @@
+/*
+MixProcessing - Live Mixing of Processing Sketches 
+https://github.com/itschleemilch/MixProcessing
+
+Copyright (c) 2014 Sebastian Schleemilch
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package mixprocessing.sketches;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeoutException;
+import mixprocessing.channels.SingleChannel;
+import processing.core.PApplet;
+
+/**
+ * Creates the instances of the sketches lazily and deletes idle ones:
+ * <ul>
+ * <li>A prepared sketch (see Sketch#prepareInstance) is instantiated, as
+ * soon as it is routed to an enabled channel. The constructor and the first
+ * setup() run on a loader thread, the instance is swapped in at the next 
+ * frame (Sketch#offerInstance). A sketch, whose loading exceeds the load 
+ * time limit, is disabled and the loader thread is replaced.</li>
+ * <li>Sketches without an enabled channel are idle. If enabled, they are
+ * evicted (Sketch#deleteInstance), when they are idle longer than the idle
+ * time, or least recently used first, while the used heap exceeds the 
+ * budget. Access by scripts counts as use (Sketch#obtainInstance). Routing
+ * them again creates a new instance: setup() is called again and the 
+ * sketch's variables are lost. Both limits are off by default.</li>
+ * </ul>
+ * Runs on the render thread before the sketches are drawn, so no instance
+ * is swapped in or deleted while it draws.
+ *
+ * @author Sebastian Schleemilch
+ * @see Sketches#paintAll(java.awt.image.BufferedImage, java.awt.Graphics2D, mixprocessing.channels.ChannelManagement, long) 
+ */
+public class InstanceCache {
+    /* Idle sketches are checked at most once per interval */
+    private static final long CHECK_INTERVAL_NANOS = 1000000000L;
+    /* Constructor and setup() may load files: more time than for a frame */
+    private static final long LOAD_TIME_LIMIT_NANOS = 10000000000L;
+    private static final ThreadFactory LOADER_THREADS = new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "Sketch Loader");
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        }
+    };
+    
+    private static final Comparator<Sketch> LRU_ORDER = new Comparator<Sketch>() {
+        @Override
+        public int compare(Sketch a, Sketch b) {
+            return Long.compare(a.lastUsedNanos, b.lastUsedNanos);
+        }
+    };
+    
+    /* 0: idle sketches are not evicted by time */
+    private volatile long idleNanos = 0;
+    /* 0: no heap budget */
+    private volatile long heapBudget = 0;
+    private final SketchWatchdog watchdog;
+    private final ArrayList<Sketch> idle = new ArrayList<>();
+    private long lastCheck = 0;
+    private ExecutorService loader = null;
+    /* Current instantiation on the loader thread, one at a time */
+    private LoadTask loading = null;
+    
+    /* Metrics */
+    private volatile int instances = 0;
+    private volatile long created = 0;
+    private volatile long evicted = 0;
+
+    /**
+     * Creates the cache.
+     * @param watchdog disables sketches, which can not be instantiated
+     */
+    public InstanceCache(SketchWatchdog watchdog) {
+        this.watchdog = watchdog;
+    }
+
+    /**
+     * Sets the time, after which a sketch without enabled output channel
+     * is evicted.
+     * @param seconds 0: no eviction by time
+     */
+    public final void setIdleTime(double seconds) {
+        idleNanos = Math.max(0, Math.round(seconds * 1000000000d));
+    }
+
+    /**
+     * Returns the idle time.
+     * @return seconds, 0: no eviction by time
+     * @see InstanceCache#setIdleTime(double) 
+     */
+    public final double getIdleTime() {
+        return idleNanos / 1000000000d;
+    }
+
+    /**
+     * Sets the heap budget: While more heap is used, idle sketches are 
+     * evicted (least recently used first, one per second).
+     * @param megabytes 0: no budget
+     */
+    public final void setHeapBudget(long megabytes) {
+        heapBudget = Math.max(0, megabytes) * 1024L * 1024L;
+    }
+
+    /**
+     * Returns the heap budget.
+     * @return megabytes, 0: no budget
+     */
+    public final long getHeapBudget() {
+        return heapBudget / (1024L * 1024L);
+    }
+
+    /**
+     * Swaps in the loaded instances, starts loading the instances of routed
+     * sketches, marks them as used and evicts idle sketches.
+     * @param sketches all sketches
+     * @param width canvas width of new instances (0: size of the frame)
+     * @param height canvas height of new instances
+     * @param frameNanos frame time
+     */
+    final void update(List<Sketch> sketches, int width, int height, long frameNanos)
+    {
+        checkLoading(frameNanos);
+        int count = 0;
+        for(int i = 0; i < sketches.size(); i++) {
+            final Sketch sketch = sketches.get(i);
+            if(sketch.applyInstance()) {
+                created++;
+            }
+            if(isRouted(sketch)) {
+                sketch.lastUsedNanos = frameNanos;
+                if(loading == null && sketch.getInstance() == null && 
+                        sketch.isInstancePrepared() &&
+                        watchdog.isRunnable(sketch, frameNanos)) {
+                    startLoading(sketch, width, height);
+                }
+            }
+            if(sketch.getInstance() != null) {
+                count++;
+            }
+        }
+        instances = count;
+        if(frameNanos - lastCheck < CHECK_INTERVAL_NANOS) {
+            return;
+        }
+        lastCheck = frameNanos;
+        
+        final long idleLimit = idleNanos;
+        final long budget = heapBudget;
+        if(idleLimit == 0 && budget == 0) {
+            return;
+        }
+        idle.clear();
+        for(int i = 0; i < sketches.size(); i++) {
+            final Sketch sketch = sketches.get(i);
+            if(sketch.getInstance() != null && sketch.isInstancePrepared() &&
+                    !isRouted(sketch) && !sketch.drawing && !sketch.quarantined) {
+                idle.add(sketch);
+            }
+        }
+        idle.sort(LRU_ORDER);
+        int next = 0;
+        if(idleLimit > 0) {
+            while(next < idle.size() && 
+                    frameNanos - idle.get(next).lastUsedNanos >= idleLimit) {
+                evict(idle.get(next++));
+            }
+        }
+        if(budget > 0 && next < idle.size() && getUsedHeap() > budget) {
+            evict(idle.get(next));
+        }
+        idle.clear();
+    }
+    
+    /**
+     * Hands the instantiation of a prepared sketch to the loader thread.
+     */
+    private void startLoading(Sketch sketch, int width, int height)
+    {
+        if(loader == null) {
+            loader = Executors.newSingleThreadExecutor(LOADER_THREADS);
+        }
+        loading = new LoadTask(sketch, width, height);
+        loader.execute(loading);
+    }
+    
+    /**
+     * Finishes the current instantiation. A sketch, whose class, constructor
+     * or setup() fails or exceeds the load time limit, is disabled by the 
+     * watchdog, so it is not retried every frame. A hung loader thread is
+     * replaced.
+     */
+    private void checkLoading(long frameNanos)
+    {
+        final LoadTask task = loading;
+        if(task == null) {
+            return;
+        }
+        if(task.done) {
+            loading = null;
+            if(task.error != null) {
+                watchdog.instanceFailed(task.sketch, task.error, frameNanos);
+            }
+        }
+        else if(System.nanoTime() - task.startNanos > LOAD_TIME_LIMIT_NANOS) {
+            loading = null;
+            task.abandoned = true;
+            loader.shutdownNow();
+            loader = null;
+            watchdog.instanceFailed(task.sketch, new TimeoutException(
+                    "Loading exceeded " + LOAD_TIME_LIMIT_NANOS / 1000000000L + " s"), 
+                    frameNanos);
+        }
+    }
+    
+    private void evict(Sketch sketch)
+    {
+        sketch.deleteInstance();
+        evicted++;
+        instances--;
+        System.out.printf("Evicted idle Sketch: %s\n", sketch.getName());
+    }
+    
+    private static boolean isRouted(Sketch sketch)
+    {
+        final SingleChannel channel = sketch.getOutputChannel();
+        return channel != null && channel.isEnabled();
+    }
+
+    /**
+     * Returns the used heap of the JVM after the last garbage collections
+     * (garbage, that is not collected yet, is not counted).
+     * @return bytes
+     */
+    public static long getUsedHeap()
+    {
+        long used = 0;
+        boolean supported = false;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if(pool.getType() == MemoryType.HEAP) {
+                final MemoryUsage usage = pool.getCollectionUsage();
+                if(usage != null) {
+                    used += usage.getUsed();
+                    supported = true;
+                }
+            }
+        }
+        if(!supported) {
+            final Runtime runtime = Runtime.getRuntime();
+            return runtime.totalMemory() - runtime.freeMemory();
+        }
+        return used;
+    }
+
+    /**
+     * Returns the number of existing sketch instances.
+     * @return 
+     */
+    public final int getInstanceCount() {
+        return instances;
+    }
+
+    /**
+     * Returns the number of lazily created instances.
+     * @return 
+     */
+    public final long getCreatedCount() {
+        return created;
+    }
+
+    /**
+     * Returns the number of evicted instances.
+     * @return 
+     */
+    public final long getEvictedCount() {
+        return evicted;
+    }
+    
+    /**
+     * Creates and sets up the instance of a sketch on the loader thread.
+     */
+    private static final class LoadTask implements Runnable {
+        private final Sketch sketch;
+        private final int width, height;
+        private final long startNanos = System.nanoTime();
+        private volatile boolean done = false, abandoned = false;
+        private volatile Throwable error = null;
+
+        LoadTask(Sketch sketch, int width, int height) {
+            this.sketch = sketch;
+            this.width = width;
+            this.height = height;
+        }
+
+        @Override
+        public void run() {
+            final Sketch staging = sketch.createStaging();
+            try {
+                final PApplet applet = staging.createInstance();
+                if(applet != null) {
+                    final int w = (width > 0 && height > 0) ? width : applet.width;
+                    final int h = (width > 0 && height > 0) ? height : applet.height;
+                    if(!staging.setupOffscreen(w, h)) {
+                        throw new IllegalStateException("setup() failed: " + sketch.getName());
+                    }
+                }
+            } catch (Throwable t) {
+                staging.deleteInstance();
+                error = t;
+            }
+            if(abandoned) {
+                staging.deleteInstance();
+            }
+            else if(error == null) {
+                sketch.offerInstance(staging);
+            }
+            done = true;
+        }
+    }
+}
@@ -21,15 +21,19 @@ along with this program.  If not, see <http://www.gnu.org/licenses/>.
 
 package mixprocessing.sketches;
 
+import mixprocessing.GraphicsState;
 import mixprocessing.MPGraphics2D;
 import mixprocessing.RenderFrame;
 import java.awt.AlphaComposite;
 import java.awt.Graphics2D;
+import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
 import java.lang.reflect.Field;
+import java.util.concurrent.atomic.AtomicReference;
 import mixprocessing.channels.SingleChannel;
+import mixprocessing.load.PApplet2;
+import mixprocessing.load.SketchClass;
 import processing.core.PApplet;
-import processing.core.PGraphicsJava2D;
 
 /**
  * Manages a Processing Sketch and a created instance of it. The sketch
@@ -39,19 +43,72 @@ import processing.core.PGraphicsJava2D;
  * @author Sebastian Schleemilch
  */
 public class Sketch implements Comparable<Sketch> {
-    private final Class<?> template;
-    private PApplet instance = null;
+    private volatile SketchClass template;
+    private volatile PApplet instance = null;
+    /* Arguments of the lazy instantiation, see InstanceCache */
+    private RenderFrame instanceFrame = null;
+    private String instanceSketchPath = null;
+    /* Last frame time the sketch was routed to an enabled channel */
+    volatile long lastUsedNanos = 0;
+    /* Recompiled sketch, swapped in by Sketches at the next frame */
+    private final AtomicReference<Sketch> reloaded = new AtomicReference<>();
+    /* Lazily created instance, set up off the render thread (InstanceCache) */
+    private final AtomicReference<Sketch> created = new AtomicReference<>();
     private boolean setupDone = false;
     private boolean receivingMouseEvents = true, receivingKeyEvents = true;
     private float alpha = 1.0f; // 1.0: opace, 0.0: transparent
+    private volatile AlphaComposite alphaComposite = AlphaComposite.SrcOver;
     
     private SingleChannel outputChannel = null;
+    /* Image the sketch's graphics object currently paints to */
+    private BufferedImage boundTarget = null;
+    /* Private drawing surface, used by the parallel rendering mode */
+    private final SketchLayer layer = new SketchLayer();
+    /* Render scale: the sketch draws into a smaller layer, which is scaled up */
+    private volatile float renderScale = 1.0f;
+    private volatile Object interpolation = RenderingHints.VALUE_INTERPOLATION_BILINEAR;
+    private final SketchLayer scaledLayer = new SketchLayer();
+    /* Frame timing statistics */
+    private final SketchTimings timings = new SketchTimings();
+    /* Offline rendering: value of millis(), -1: real time */
+    private volatile long simulatedMillis = -1;
+    /* Frame budget: higher priorities are throttled last */
+    private volatile int priority = 0;
+    /* State of the FrameBudgetGovernor (render thread) */
+    double budgetCost = 0;
+    int budgetSkipStreak = 0;
+    boolean budgetSkipped = false;
+    volatile long budgetSkippedFrames = 0;
+    /* Behaviour without enabled output channel, null: default of Sketches */
+    private volatile OffChannelPolicy offChannelPolicy = null;
+    /* Set per frame by Sketches: not drawn, because off channel */
+    boolean offChannelSkipped = false;
+    /* The last frame called background(): its channel is covered completely */
+    private volatile boolean opaque = false;
+    /* Set per frame by Sketches: channel hidden or outside of the canvas */
+    boolean culled = false;
+    /* State of the SketchWatchdog */
+    volatile boolean drawing = false, quarantined = false, disabled = false;
+    volatile long disabledUntil = 0;
+    /* Allocation tracking: bytes of draw() in the current job on a worker */
+    long workerDrawBytes = 0;
+    int failures = 0;
+    long backoffNanos = 0;
 
     /**
      * Creates a Processing sketch represenation.
      * @param template base class of the sketch
      */
     public Sketch(Class<?> template) {
+        this(new SketchClass(template));
+    }
+    
+    /**
+     * Creates a Processing sketch represenation, whose class is loaded
+     * with the first instance.
+     * @param template class of the sketch
+     */
+    public Sketch(SketchClass template) {
         this.template = template;
     }
     
@@ -83,29 +140,129 @@ public class Sketch implements Comparable<Sketch> {
      */
     public final PApplet createInstance(RenderFrame f, String sketchPath)
     {
-        if(getInstance() != null) {
-            return getInstance();
+        try {
+            return instantiate(f, f.getWidth(), f.getHeight(), sketchPath);
+        } catch (Throwable t) {
+            t.printStackTrace(System.err);
+            return null;
         }
-        else
-        {
+    }
+    
+    /**
+     * Returns the instance, a prepared sketch is instantiated if necessary
+     * (e.g. for the access of scripts to an unrouted sketch). Marks the 
+     * sketch as used, so it is not evicted as idle soon.
+     * @return the instance or null (not prepared, failed)
+     * @see InstanceCache
+     */
+    public final PApplet obtainInstance()
+    {
+        lastUsedNanos = System.nanoTime();
+        if(instance == null && instanceFrame != null) {
             try {
-                Object localInstance = template.newInstance();
-                if(localInstance instanceof PApplet)
-                {
-                    instance = (PApplet) localInstance;
-                    instance.frame = f;
-                    instance.sketchPath = sketchPath;
-                    instance.width = f.getWidth();
-                    instance.height = f.getHeight();
-                    instance.frameCount = 0;
-                    setupDone = false;  
-                }
-                return instance;
-            } catch (IllegalAccessException | InstantiationException e) {
-                e.printStackTrace(System.err);
+                instantiate(instanceFrame, instanceFrame.getWidth(), 
+                        instanceFrame.getHeight(), instanceSketchPath);
+            } catch (Throwable t) {
+                t.printStackTrace(System.err);
             }
+        }
+        return instance;
+    }
+    
+    /**
+     * Stores the arguments of the instantiation, the instance itself is
+     * created when the sketch is routed to an enabled channel.
+     * @param f Access to AWT System for the Sketch
+     * @param sketchPath Data-Path where files can be loaded
+     * @see InstanceCache
+     */
+    public final void prepareInstance(RenderFrame f, String sketchPath)
+    {
+        instanceFrame = f;
+        instanceSketchPath = sketchPath;
+    }
+    
+    /**
+     * Returns if the instance can be created (and deleted) lazily.
+     * @return 
+     * @see Sketch#prepareInstance(mixprocessing.RenderFrame, java.lang.String) 
+     */
+    public final boolean isInstancePrepared()
+    {
+        return instanceFrame != null;
+    }
+    
+    /**
+     * Creates the instance with the prepared arguments.
+     * @return the instance or null (not prepared)
+     * @throws Throwable anything the class loading or the sketch's
+     * constructor throws
+     */
+    final PApplet createInstance() throws Throwable
+    {
+        if(instanceFrame == null) {
+            return getInstance();
+        }
+        return instantiate(instanceFrame, instanceFrame.getWidth(), 
+                instanceFrame.getHeight(), instanceSketchPath);
+    }
+    
+    /**
+     * Returns a new sketch of the same class with the prepared arguments of
+     * the instantiation. Its instance can be created and set up off the 
+     * render thread.
+     * @return the new sketch or null (not prepared)
+     * @see Sketch#offerInstance(mixprocessing.sketches.Sketch) 
+     */
+    final Sketch createStaging()
+    {
+        if(instanceFrame == null) {
             return null;
         }
+        final Sketch staging = new Sketch(template);
+        staging.prepareInstance(instanceFrame, instanceSketchPath);
+        return staging;
+    }
+    
+    /**
+     * Creates an instance of the sketch without a window (offline rendering). 
+     * @param width canvas width
+     * @param height canvas height
+     * @param sketchPath Data-Path where files can be loaded
+     * @return the created instance
+     * @see mixprocessing.OfflineRenderer
+     */
+    public final PApplet createInstance(int width, int height, String sketchPath)
+    {
+        try {
+            return instantiate(null, width, height, sketchPath);
+        } catch (Throwable t) {
+            t.printStackTrace(System.err);
+            return null;
+        }
+    }
+    
+    private synchronized PApplet instantiate(RenderFrame f, int width, int height, String sketchPath)
+            throws Throwable
+    {
+        if(instance != null) {
+            return instance;
+        }
+        Class<?> sketchClass = template.loadClass();
+        if(sketchClass == null) {
+            throw new ClassNotFoundException("Can't load sketch class: " + getName());
+        }
+        PApplet applet = (PApplet) sketchClass.newInstance();
+        if(f != null) {
+            applet.frame = f;
+        }
+        applet.sketchPath = sketchPath;
+        applet.width = width;
+        applet.height = height;
+        applet.frameCount = 0;
+        setupDone = false;
+        instance = applet;
+        return applet;
     }
     
     /**
@@ -114,17 +271,148 @@ public class Sketch implements Comparable<Sketch> {
      * 
      * @param f 
      */
-    public final void deleteInstance(RenderFrame f)
+    public final synchronized void deleteInstance(RenderFrame f)
     {
         if(instance != null)
         {
             instance.stop();
             instance.destroy();
-            f.removeFocusListener(instance);
+            if(f != null) {
+                f.removeFocusListener(instance);
+            }
             instance = null;
+            boundTarget = null;
+            setupDone = false;
+            opaque = false;
+            layer.dispose();
+            scaledLayer.dispose();
+        }
+    }
+    
+    /**
+     * Deletes the instance of a prepared sketch (see InstanceCache).
+     */
+    final void deleteInstance()
+    {
+        deleteInstance(instanceFrame);
+    }
+    
+    /**
+     * Runs setup() of the instance on a private image, so the instance can
+     * replace the instance of another sketch without calling setup() on the
+     * render thread.
+     * @param width canvas width
+     * @param height canvas height
+     * @return false, if there is no instance or setup() failed
+     * @see Sketch#offerReload(mixprocessing.sketches.Sketch) 
+     */
+    public final boolean setupOffscreen(int width, int height)
+    {
+        if(instance == null) {
+            return false;
+        }
+        instance.width = width;
+        instance.height = height;
+        BufferedImage scratch = new BufferedImage(Math.max(1, width), 
+                Math.max(1, height), BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = scratch.createGraphics();
+        try {
+            doSetup(scratch, g, false);
+            ((MPGraphics2D) instance.g).storeGraphicSettings(null);
+            return true;
+        } catch (RuntimeException e) {
+            e.printStackTrace(System.err);
+            return false;
+        } finally {
+            g.dispose();
+        }
+    }
+    
+    /**
+     * Offers a recompiled version of this sketch. Its class and instance 
+     * (if set up already, see setupOffscreen) replace the own ones at the 
+     * next frame. Channel, alpha, priority and event settings are kept.
+     * @param staging sketch of the recompiled class
+     */
+    public final void offerReload(Sketch staging)
+    {
+        Sketch previous = reloaded.getAndSet(staging);
+        if(previous != null && previous != staging) {
+            previous.deleteInstance(previous.instanceFrame);
         }
     }
     
+    /**
+     * Offers an instance, which has been created and set up off the render
+     * thread. It becomes the instance of this sketch at the next frame.
+     * @param staging sketch of createStaging
+     * @see InstanceCache
+     */
+    final void offerInstance(Sketch staging)
+    {
+        Sketch previous = created.getAndSet(staging);
+        if(previous != null && previous != staging) {
+            previous.deleteInstance(previous.instanceFrame);
+        }
+    }
+    
+    /**
+     * Swaps in an offered instance (render thread, between two frames). It
+     * is dropped, if the sketch got an instance otherwise in the meantime 
+     * (e.g. by a script) or has been reloaded.
+     * @return true, if swapped
+     */
+    final synchronized boolean applyInstance()
+    {
+        final Sketch staging = created.getAndSet(null);
+        if(staging == null) {
+            return false;
+        }
+        if(instance != null || staging.template != template || staging.instance == null) {
+            staging.deleteInstance(staging.instanceFrame);
+            return false;
+        }
+        instance = staging.instance;
+        setupDone = staging.setupDone;
+        staging.instance = null;
+        return true;
+    }
+    
+    /**
+     * Swaps in an offered reload (render thread, between two frames). The
+     * old instance is deleted, so its class loader can be collected. The 
+     * state of the watchdog is cleared: a hung call of a quarantined old 
+     * instance is abandoned, the new version starts without failures.
+     * @return true, if swapped
+     */
+    final synchronized boolean applyReload()
+    {
+        if((drawing && !quarantined) || reloaded.get() == null) {
+            return false;
+        }
+        final Sketch staging = reloaded.getAndSet(null);
+        if(staging == null) {
+            return false;
+        }
+        final boolean hadInstance = (instance != null);
+        deleteInstance(instanceFrame);
+        template = staging.template;
+        if(hadInstance && staging.instance != null) {
+            instance = staging.instance;
+            setupDone = staging.setupDone;
+        }
+        else {
+            staging.deleteInstance(staging.instanceFrame);
+        }
+        staging.instance = null;
+        drawing = false;
+        quarantined = false;
+        disabled = false;
+        failures = 0;
+        backoffNanos = 0;
+        return true;
+    }
+    
     /*************************************************************
      * Initialisation and graphics methods
      *************************************************************/
@@ -135,6 +423,7 @@ public class Sketch implements Comparable<Sketch> {
     public final void resetSetup()
     {
         setupDone = false;
+        opaque = false;
     }
     
     /**
@@ -143,13 +432,29 @@ public class Sketch implements Comparable<Sketch> {
      * @param g 
      */
     public final void doSetup(BufferedImage bi, Graphics2D g)
+    {
+        doSetup(bi, g, true);
+    }
+    
+    /**
+     * Initial setup and Grafics settings before the sketch is drawn
+     * @param bi
+     * @param g 
+     * @param applyAlpha false, if the opacity is applied later (e.g. when
+     * compositing the sketch's layer)
+     */
+    public final void doSetup(BufferedImage bi, Graphics2D g, boolean applyAlpha)
     {
         MPGraphics2D mpg2d;
         if(instance.g == null || !(instance.g instanceof MPGraphics2D) ) {
            createMPGraphics(bi, g);
         }
         mpg2d = (MPGraphics2D) instance.g;
-        mpg2d.g2 = g;
+        mpg2d.bind(g);
+        if(boundTarget != bi) {
+            boundTarget = bi;
+            mpg2d.setOffscreen(bi);
+        }
        
         boolean callSetup = false;
         if(!setupDone )
@@ -162,9 +467,8 @@ public class Sketch implements Comparable<Sketch> {
         
         mpg2d.loadGraphicSettings();
         // Set sketch's opacity
-        if(alpha < 1.0f) {
-            AlphaComposite ac = AlphaComposite.getInstance(AlphaComposite.SRC_OVER, alpha);
-            mpg2d.g2.setComposite(ac);
+        if(applyAlpha && alpha < 1.0f) {
+            mpg2d.setOpacity(alphaComposite);
         }
         if(callSetup) {
             try {
@@ -180,28 +484,46 @@ public class Sketch implements Comparable<Sketch> {
      * Stores internal Graphics settings after drawing this Sketch
      */
     public final void storeInternalSettings()
+    {
+        storeInternalSettings(null);
+    }
+    
+    /**
+     * Stores internal Graphics settings after drawing this Sketch and resets
+     * the changed attributes of a shared graphics object.
+     * @param base attributes of the graphics object before the sketch was
+     * drawn, null: graphics object is not shared (layer)
+     */
+    public final void storeInternalSettings(GraphicsState base)
     {
         MPGraphics2D mpg2d = (MPGraphics2D) instance.g;
-        mpg2d.storeGraphicSettings();
+        mpg2d.storeGraphicSettings(base);
+        opaque = mpg2d.takeBackgroundFilled();
         instance.frameCount++;
     }
     
+    /**
+     * Redirects the drawing of the instance to a private image, so a
+     * running (hung) call does not reach the output anymore.
+     */
+    final void detachGraphics()
+    {
+        if(instance != null && instance.g instanceof MPGraphics2D) {
+            ((MPGraphics2D) instance.g).detach();
+        }
+        boundTarget = null;
+    }
+    
     private void createMPGraphics(BufferedImage bi, Graphics2D g)
     {
         MPGraphics2D mpg2d = new MPGraphics2D();
         instance.g = mpg2d;
-        mpg2d.g2 = g;
+        mpg2d.bind(g);
         mpg2d.width = instance.width;
         mpg2d.height = instance.height;
         mpg2d.parent = instance;
-        try {
-            Field f = PGraphicsJava2D.class.getDeclaredField("offscreen");
-            f.setAccessible(true);
-            f.set(mpg2d, bi);
-        } catch (NoSuchFieldException | SecurityException | 
-                IllegalArgumentException | IllegalAccessException e) {
-            e.printStackTrace(System.err);
-        }
+        mpg2d.setOffscreen(bi);
+        boundTarget = bi;
         mpg2d.init();
     }
     
@@ -210,13 +532,23 @@ public class Sketch implements Comparable<Sketch> {
      * @return 
      */
     public final boolean needsRedraw()
+    {
+        return needsRedraw(System.nanoTime());
+    }
+    
+    /**
+     * Checks if Sketch needs redraw at the given frame time
+     * @param frameNanos current (or simulated) System.nanoTime() value
+     * @return 
+     */
+    public final boolean needsRedraw(long frameNanos)
     {
         if(FRAME_RATE_PERIOD_FIELD != null && FRAME_RATE_LAST_NANOS_FIELD != null)
         {
             try {
                 long period = FRAME_RATE_PERIOD_FIELD.getLong(instance);
                 long lastDrawn = FRAME_RATE_LAST_NANOS_FIELD.getLong(instance);
-                long diff = System.nanoTime() - lastDrawn;
+                long diff = frameNanos - lastDrawn;
                 return diff >= period;
             } catch (IllegalArgumentException | IllegalAccessException e) {
                 e.printStackTrace(System.out);
@@ -225,21 +557,320 @@ public class Sketch implements Comparable<Sketch> {
         return true;
     }
     
+    /**
+     * Checks if the sketch's retained layer has to be drawn again. Looping
+     * sketches depend on their frame rate (see needsRedraw()), sketches
+     * stopped with noLoop() are only drawn after a redraw() call.
+     * @return 
+     */
+    public final boolean needsRetainedRedraw()
+    {
+        return needsRetainedRedraw(System.nanoTime());
+    }
+    
+    /**
+     * Checks if the sketch's retained layer has to be drawn again at the
+     * given frame time.
+     * @param frameNanos current (or simulated) System.nanoTime() value
+     * @return 
+     */
+    public final boolean needsRetainedRedraw(long frameNanos)
+    {
+        if(!setupDone) {
+            return true;
+        }
+        if(LOOPING_FIELD != null && REDRAW_FIELD != null)
+        {
+            try {
+                if(!LOOPING_FIELD.getBoolean(instance)) {
+                    if(REDRAW_FIELD.getBoolean(instance)) {
+                        REDRAW_FIELD.setBoolean(instance, false);
+                        return true;
+                    }
+                    return false;
+                }
+            } catch (IllegalArgumentException | IllegalAccessException e) {
+                e.printStackTrace(System.out);
+            }
+        }
+        return needsRedraw(frameNanos);
+    }
+    
+    /**
+     * Checks if the sketch has not been drawn for the given period.
+     * @param frameNanos current (or simulated) System.nanoTime() value
+     * @param periodNanos
+     * @return 
+     */
+    public final boolean isIdleFor(long frameNanos, long periodNanos)
+    {
+        if(FRAME_RATE_LAST_NANOS_FIELD != null)
+        {
+            try {
+                return frameNanos - FRAME_RATE_LAST_NANOS_FIELD.getLong(instance) >= periodNanos;
+            } catch (IllegalArgumentException | IllegalAccessException e) {
+                e.printStackTrace(System.out);
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Returns if the sketch is looping (not stopped with noLoop()).
+     * @return 
+     */
+    final boolean isLooping()
+    {
+        if(LOOPING_FIELD != null)
+        {
+            try {
+                return LOOPING_FIELD.getBoolean(instance);
+            } catch (IllegalArgumentException | IllegalAccessException e) {
+                e.printStackTrace(System.out);
+            }
+        }
+        return true;
+    }
+    
     /**
      * Sets the last-redrawn field to the current time
      */
     public final void updateLastRedrawTime()
+    {
+        updateLastRedrawTime(System.nanoTime());
+    }
+    
+    /**
+     * Sets the last-redrawn field to the given frame time
+     * @param frameNanos current (or simulated) System.nanoTime() value
+     */
+    public final void updateLastRedrawTime(long frameNanos)
     {
         if(FRAME_RATE_LAST_NANOS_FIELD != null)
         {
             try {
-                FRAME_RATE_LAST_NANOS_FIELD.setLong(instance, System.nanoTime());
+                FRAME_RATE_LAST_NANOS_FIELD.setLong(instance, frameNanos);
             } catch (IllegalArgumentException | IllegalAccessException e) {
                 e.printStackTrace(System.out);
             }
         }
     }
     
+    /**
+     * Sets the value millis() of the sketch returns during the next frames 
+     * (simulated time of the offline rendering).
+     * @param millis simulated time or -1 (real time)
+     * @see mixprocessing.OfflineRenderer
+     */
+    public final void setSimulatedMillis(long millis)
+    {
+        this.simulatedMillis = millis;
+    }
+    
+    /**
+     * Applies the simulated time (if set) to the millis() function of the
+     * instance. Called immediately before setup() and draw(). Compiled 
+     * sketches (PApplet2) return the frozen time during the whole frame.
+     * Exported sketches get a shifted millisOffset, their millis() runs on 
+     * in real time while draw() is running.
+     */
+    final void applySimulatedMillis()
+    {
+        final PApplet applet = instance;
+        if(applet instanceof PApplet2) {
+            ((PApplet2) applet).setFrozenMillis(simulatedMillis);
+        }
+        else if(simulatedMillis >= 0 && MILLIS_OFFSET_FIELD != null)
+        {
+            try {
+                MILLIS_OFFSET_FIELD.setLong(applet, 
+                        System.currentTimeMillis() - simulatedMillis);
+            } catch (IllegalArgumentException | IllegalAccessException e) {
+                e.printStackTrace(System.out);
+            }
+        }
+    }
+    
+    /**
+     * Returns the private drawing surface of this sketch. 
+     * @return 
+     * @see Sketches#setParallelRendering(boolean) 
+     */
+    public final SketchLayer getLayer() {
+        return layer;
+    }
+    
+    /**
+     * Sets, how the sketch is drawn while it has no enabled output channel.
+     * @param policy null: default of the sketch management
+     * @see Sketches#setOffChannelPolicy(mixprocessing.sketches.Sketch.OffChannelPolicy) 
+     */
+    public final void setOffChannelPolicy(OffChannelPolicy policy) {
+        this.offChannelPolicy = policy;
+    }
+    
+    /**
+     * Returns the off channel policy of the sketch.
+     * @return policy or null (default of the sketch management)
+     */
+    public final OffChannelPolicy getOffChannelPolicy() {
+        return offChannelPolicy;
+    }
+    
+    /**
+     * Returns if the sketch skips the current frame, because it has no
+     * enabled output channel.
+     * @return 
+     */
+    public final boolean isOffChannelSkipped() {
+        return offChannelSkipped;
+    }
+    
+    /**
+     * Returns if the last frame of the sketch called background(), so it
+     * covers its channel completely (if not transparent or scaled).
+     * @return 
+     */
+    public final boolean isOpaque() {
+        return opaque;
+    }
+    
+    /**
+     * Returns if the sketch is culled in the current frame: its channel is
+     * hidden by opaque sketches drawn later or lies outside of the canvas.
+     * @return 
+     * @see Sketches#setCulling(boolean) 
+     */
+    public final boolean isCulled() {
+        return culled;
+    }
+    
+    /**
+     * Returns the low resolution drawing surface of this sketch.
+     * @return 
+     * @see Sketch#setRenderScale(float) 
+     */
+    public final SketchLayer getScaledLayer() {
+        return scaledLayer;
+    }
+    
+    /**
+     * Sets the resolution the sketch is drawn with, relative to the output.
+     * The sketch's width and height are scaled (the sketch is restarted) 
+     * and its frames are scaled up into the channel.
+     * @param scale 0.05 .. 1 (full resolution)
+     */
+    public final void setRenderScale(float scale) {
+        if(Float.isNaN(scale)) {
+            return;
+        }
+        renderScale = Math.max(0.05f, Math.min(1.0f, scale));
+    }
+    
+    public final float getRenderScale() {
+        return renderScale;
+    }
+    
+    /**
+     * Returns if the sketch is drawn with a lower resolution.
+     * @return 
+     */
+    public final boolean isScaled() {
+        return renderScale < 1.0f;
+    }
+    
+    /**
+     * Returns the size the sketch is drawn with.
+     * @param outputSize width or height of the output
+     * @return 
+     */
+    public final int getScaledSize(int outputSize) {
+        return Math.max(1, Math.round(outputSize * renderScale));
+    }
+    
+    /**
+     * Sets the interpolation used for scaling up the sketch's frames.
+     * @param hint a RenderingHints.VALUE_INTERPOLATION_* value
+     */
+    public final void setInterpolation(Object hint) {
+        if(RenderingHints.KEY_INTERPOLATION.isCompatibleValue(hint)) {
+            interpolation = hint;
+        }
+    }
+    
+    public final Object getInterpolation() {
+        return interpolation;
+    }
+    
+    /**
+     * Updates the sketch's size, if it differs. The sketch is restarted then.
+     * @param width
+     * @param height 
+     */
+    final void applySize(int width, int height)
+    {
+        if(instance != null && (instance.width != width || instance.height != height))
+        {
+            instance.width = width;
+            instance.height = height;
+            if(instance.g != null) {
+                instance.g.width = width;
+                instance.g.height = height;
+            }
+            setupDone = false;
+        }
+    }
+    
+    /**
+     * Returns the frame timing statistics of this sketch.
+     * @return 
+     */
+    public final SketchTimings getTimings() {
+        return timings;
+    }
+    
+    /**
+     * Sets the priority of the sketch. Under overload, sketches with lower
+     * priorities skip frames first, sketches with the highest priority are
+     * not throttled.
+     * @param priority default: 0
+     * @see FrameBudgetGovernor
+     */
+    public final void setPriority(int priority) {
+        this.priority = priority;
+    }
+    
+    public final int getPriority() {
+        return priority;
+    }
+    
+    /**
+     * Returns if the frame budget governor skips the sketch in the current
+     * frame.
+     * @return 
+     */
+    public final boolean isBudgetSkipped() {
+        return budgetSkipped;
+    }
+    
+    /**
+     * Returns the number of frames the sketch skipped because of the frame
+     * budget.
+     * @return 
+     */
+    public final long getBudgetSkippedFrames() {
+        return budgetSkippedFrames;
+    }
+    
+    /**
+     * Returns the average cost of a frame of this sketch, as predicted by 
+     * the frame budget governor.
+     * @return milliseconds
+     */
+    public final double getDrawCostMillis() {
+        return budgetCost / 1000000d;
+    }
+    
     /*************************************************************
      * Normal get/set methods
      *************************************************************/
@@ -285,6 +916,17 @@ public class Sketch implements Comparable<Sketch> {
         else {
             this.alpha = alpha;
         }
+        alphaComposite = (this.alpha < 1.0f) ? 
+                AlphaComposite.getInstance(AlphaComposite.SRC_OVER, this.alpha) :
+                AlphaComposite.SrcOver;
+    }
+    
+    /**
+     * Returns the composite, that draws with the sketch's alpha value.
+     * @return 
+     */
+    public final AlphaComposite getAlphaComposite() {
+        return alphaComposite;
     }
     
     /**
@@ -348,6 +990,9 @@ public class Sketch implements Comparable<Sketch> {
     
     private static final Field FRAME_RATE_PERIOD_FIELD;
     private static final Field FRAME_RATE_LAST_NANOS_FIELD;
+    private static final Field LOOPING_FIELD;
+    private static final Field REDRAW_FIELD;
+    private static final Field MILLIS_OFFSET_FIELD;
     /**
      * Creates global variables needed for reflection methods during
      * PApplet modification.
@@ -369,5 +1014,50 @@ public class Sketch implements Comparable<Sketch> {
             e.printStackTrace(System.out);
         }
         FRAME_RATE_LAST_NANOS_FIELD = fRLN_F;
+        LOOPING_FIELD = getAppletField("looping");
+        REDRAW_FIELD = getAppletField("redraw");
+        MILLIS_OFFSET_FIELD = getAppletField("millisOffset");
+    }
+    
+    private static Field getAppletField(String name)
+    {
+        try {
+            Field f = PApplet.class.getDeclaredField(name);
+            f.setAccessible(true);
+            return f;
+        } catch (NoSuchFieldException | SecurityException e) {
+            e.printStackTrace(System.out);
+            return null;
+        }
+    }
+    
+    /**
+     * Behaviour of a sketch without enabled output channel.
+     */
+    public enum OffChannelPolicy {
+        /* Not drawn at all */
+        PAUSE,
+        /* draw() is called with a reduced rate, the output is clipped */
+        TICK,
+        /* draw() is called with the sketch's frame rate (constant paint rate) */
+        RUN;
+        
+        /**
+         * Returns the policy with the given name (case insensitive).
+         * @param name
+         * @return policy or null
+         */
+        public static OffChannelPolicy getByName(String name) {
+            if(name == null) {
+                return null;
+            }
+            name = name.trim().toUpperCase();
+            for (OffChannelPolicy policy : values()) {
+                if(policy.toString().equals(name)) {
+                    return policy;
+                }
+            }
+            return null;
+        }
     }
 }
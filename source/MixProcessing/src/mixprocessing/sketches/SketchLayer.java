@@ -0,0 +1,291 @@
+/*
+MixProcessing - Live Mixing of Processing Sketches 
+https://github.com/itschleemilch/MixProcessing
+
+Copyright (c) 2014 Sebastian Schleemilch
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package mixprocessing.sketches;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import mixprocessing.channels.ChannelMask;
+
+/**
+ * Private drawing surface of a single Sketch. 
+ * 
+ * Parallel rendering: The layer has the same size and pixel format as the 
+ * double buffer, so a Sketch can be drawn into it on a worker thread and the 
+ * result can be copied back without any conversion.
+ * 
+ * Retained layers: The layer is transparent and keeps the last frame of the
+ * sketch, until the sketch is drawn again.
+ * 
+ * Non-rectangular channels: The sketch is only clipped to the bounds of its
+ * channel, the layer is blended with the cached channel mask.
+ *
+ * @author Sebastian Schleemilch
+ * @see Sketches#setParallelRendering(boolean)
+ * @see Sketches#setRetainedLayers(boolean) 
+ */
+public class SketchLayer {
+    private BufferedImage image = null;
+    private Graphics2D graphics = null;
+    /* Set, if the layer contains a drawn frame */
+    private boolean painted = false;
+    /* Row buffers of the mask blending */
+    private int[] sourceRow = new int[0], targetRow = new int[0];
+
+    public SketchLayer() {
+    }
+
+    /**
+     * (Re-)Creates the layer if its size or pixel format differs from the
+     * given template image.
+     * @param template usually the double buffer image
+     * @return true, if the layer was (re-)created
+     */
+    public final boolean ensureCompatible(BufferedImage template)
+    {
+        if(image != null && image.getWidth() == template.getWidth() &&
+                image.getHeight() == template.getHeight() &&
+                image.getColorModel().equals(template.getColorModel())) {
+            return false;
+        }
+        dispose();
+        ColorModel cm = template.getColorModel();
+        image = new BufferedImage(cm,
+                cm.createCompatibleWritableRaster(template.getWidth(), template.getHeight()),
+                cm.isAlphaPremultiplied(), null);
+        graphics = image.createGraphics();
+        return true;
+    }
+    
+    /**
+     * (Re-)Creates the layer as transparent image, if its size differs.
+     * @param width
+     * @param height
+     * @return true, if the layer was (re-)created
+     */
+    public final boolean ensureTransparent(int width, int height)
+    {
+        if(image != null && image.getWidth() == width && 
+                image.getHeight() == height && 
+                image.getType() == BufferedImage.TYPE_INT_ARGB_PRE) {
+            return false;
+        }
+        dispose();
+        image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+        graphics = image.createGraphics();
+        return true;
+    }
+
+    /**
+     * Copies the given area from the source image into the layer.
+     * @param source
+     * @param area
+     */
+    public final void copyFrom(BufferedImage source, Rectangle area)
+    {
+        copyArea(source, image, area);
+    }
+
+    /**
+     * Copies the given area of the layer back into the target image.
+     * @param target
+     * @param area
+     */
+    public final void copyTo(BufferedImage target, Rectangle area)
+    {
+        copyArea(image, target, area);
+    }
+
+    private static void copyArea(BufferedImage source, BufferedImage target, Rectangle area)
+    {
+        if(area.isEmpty()) {
+            return;
+        }
+        Raster child = source.getRaster().createChild(area.x, area.y,
+                area.width, area.height, area.x, area.y, null);
+        target.getRaster().setRect(child);
+    }
+
+    /**
+     * Returns if the mask blending methods support the pixel format of the
+     * given target image.
+     * @param target
+     * @return 
+     * @see SketchLayer#blendTo(BufferedImage, Rectangle, ChannelMask) 
+     * @see SketchLayer#compositeTo(BufferedImage, Rectangle, ChannelMask, float) 
+     */
+    public static boolean isMaskSupported(BufferedImage target)
+    {
+        return target.getType() == BufferedImage.TYPE_INT_RGB ||
+                target.getType() == BufferedImage.TYPE_INT_ARGB_PRE;
+    }
+    
+    /**
+     * Parallel rendering: Copies the given area of the layer back into the 
+     * target image, weighted by the mask. The layer has to be compatible
+     * with the target.
+     * @param target
+     * @param area within the mask bounds
+     * @param mask 
+     */
+    public final void blendTo(BufferedImage target, Rectangle area, ChannelMask mask)
+    {
+        if(area.isEmpty()) {
+            return;
+        }
+        final WritableRaster src = image.getRaster(), dst = target.getRaster();
+        final Rectangle bounds = mask.getBounds();
+        final byte[] alpha = mask.getAlphaData();
+        ensureRows(area.width);
+        for(int y = area.y; y < area.y + area.height; y++)
+        {
+            src.getDataElements(area.x, y, area.width, 1, sourceRow);
+            dst.getDataElements(area.x, y, area.width, 1, targetRow);
+            final int maskOffset = (y - bounds.y) * bounds.width + (area.x - bounds.x);
+            for(int x = 0; x < area.width; x++)
+            {
+                final int m = alpha[maskOffset + x] & 0xff;
+                if(m == 255) {
+                    targetRow[x] = sourceRow[x];
+                }
+                else if(m != 0) {
+                    targetRow[x] = lerp(targetRow[x], sourceRow[x], m);
+                }
+            }
+            dst.setDataElements(area.x, y, area.width, 1, targetRow);
+        }
+    }
+    
+    /**
+     * Retained layers: Draws the given area of the (transparent) layer over 
+     * the target image, weighted by the mask and the opacity.
+     * @param target see isMaskSupported()
+     * @param area within the mask bounds
+     * @param mask
+     * @param opacity 0..1
+     */
+    public final void compositeTo(BufferedImage target, Rectangle area, ChannelMask mask, 
+            float opacity)
+    {
+        if(area.isEmpty()) {
+            return;
+        }
+        final WritableRaster src = image.getRaster(), dst = target.getRaster();
+        final Rectangle bounds = mask.getBounds();
+        final byte[] alpha = mask.getAlphaData();
+        final int k = Math.round(opacity * 255);
+        ensureRows(area.width);
+        for(int y = area.y; y < area.y + area.height; y++)
+        {
+            src.getDataElements(area.x, y, area.width, 1, sourceRow);
+            dst.getDataElements(area.x, y, area.width, 1, targetRow);
+            final int maskOffset = (y - bounds.y) * bounds.width + (area.x - bounds.x);
+            for(int x = 0; x < area.width; x++)
+            {
+                final int s = sourceRow[x];
+                final int m = mul(alpha[maskOffset + x] & 0xff, k);
+                if(m == 0 || s == 0) {
+                    continue;
+                }
+                /* Premultiplied source over: d = s * m + d * (1 - sa * m) */
+                final int inv = 255 - mul(s >>> 24, m);
+                final int d = targetRow[x];
+                targetRow[x] = 
+                        (mul(s >>> 24, m) + mul(d >>> 24, inv)) << 24 |
+                        (mul((s >> 16) & 0xff, m) + mul((d >> 16) & 0xff, inv)) << 16 |
+                        (mul((s >> 8) & 0xff, m) + mul((d >> 8) & 0xff, inv)) << 8 |
+                        (mul(s & 0xff, m) + mul(d & 0xff, inv));
+            }
+            dst.setDataElements(area.x, y, area.width, 1, targetRow);
+        }
+    }
+    
+    private void ensureRows(int width)
+    {
+        if(sourceRow.length < width) {
+            sourceRow = new int[width];
+            targetRow = new int[width];
+        }
+    }
+    
+    /* a * b / 255, rounded */
+    private static int mul(int a, int b)
+    {
+        final int t = a * b + 128;
+        return (t + (t >> 8)) >> 8;
+    }
+    
+    private static int lerp(int d, int s, int m)
+    {
+        final int inv = 255 - m;
+        return (mul(s >>> 24, m) + mul(d >>> 24, inv)) << 24 |
+                (mul((s >> 16) & 0xff, m) + mul((d >> 16) & 0xff, inv)) << 16 |
+                (mul((s >> 8) & 0xff, m) + mul((d >> 8) & 0xff, inv)) << 8 |
+                (mul(s & 0xff, m) + mul(d & 0xff, inv));
+    }
+
+    /**
+     * Returns the layer's image or null, if not created yet.
+     * @return
+     */
+    public final BufferedImage getImage() {
+        return image;
+    }
+
+    /**
+     * Returns the Graphics object of the layer or null, if not created yet.
+     * @return
+     */
+    public final Graphics2D getGraphics() {
+        return graphics;
+    }
+
+    /**
+     * Returns if the layer contains a drawn frame.
+     * @return 
+     */
+    public final boolean isPainted() {
+        return painted;
+    }
+
+    /**
+     * Marks the layer as containing a drawn frame.
+     */
+    public final void setPainted() {
+        this.painted = true;
+    }
+    
+    /**
+     * Frees the image memory.
+     */
+    public final void dispose()
+    {
+        if(graphics != null) {
+            graphics.dispose();
+        }
+        graphics = null;
+        image = null;
+        painted = false;
+    }
+}
@@ -0,0 +1,106 @@
+/*
+MixProcessing - Live Mixing of Processing Sketches 
+https://github.com/itschleemilch/MixProcessing
+
+Copyright (c) 2014 Sebastian Schleemilch
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package mixprocessing.sketches;
+
+import mixprocessing.util.LatencyHistogram;
+
+/**
+ * Frame timing statistics of a single Sketch: Durations of the graphics setup
+ * (doSetup), the sketch's draw() call and the storing of the graphics
+ * settings afterwards.
+ *
+ * @author Sebastian Schleemilch
+ * @see Sketch#getTimings() 
+ */
+public class SketchTimings {
+    private final LatencyHistogram setup = new LatencyHistogram();
+    private final LatencyHistogram draw = new LatencyHistogram();
+    private final LatencyHistogram store = new LatencyHistogram();
+
+    public SketchTimings() {
+    }
+    
+    /**
+     * Records the durations of one frame.
+     * @param setupNanos
+     * @param drawNanos
+     * @param storeNanos 
+     */
+    public final void record(long setupNanos, long drawNanos, long storeNanos) {
+        setup.record(setupNanos);
+        draw.record(drawNanos);
+        store.record(storeNanos);
+    }
+    
+    /**
+     * Durations of doSetup() (graphics settings, setup() of the sketch)
+     * @return 
+     */
+    public final LatencyHistogram getSetup() {
+        return setup;
+    }
+
+    /**
+     * Durations of the sketch's draw() method
+     * @return 
+     */
+    public final LatencyHistogram getDraw() {
+        return draw;
+    }
+
+    /**
+     * Durations of storing the graphics settings after draw()
+     * @return 
+     */
+    public final LatencyHistogram getStore() {
+        return store;
+    }
+    
+    /**
+     * Returns the histogram by its name.
+     * @param phase "setup", "draw" or "store"
+     * @return histogram or null
+     */
+    public final LatencyHistogram getPhase(String phase) {
+        if(phase == null) {
+            return null;
+        }
+        switch(phase.trim().toLowerCase()) {
+            case "setup":
+                return setup;
+            case "draw":
+                return draw;
+            case "store":
+                return store;
+            default:
+                return null;
+        }
+    }
+    
+    /**
+     * Clears all statistics.
+     */
+    public final void reset() {
+        setup.reset();
+        draw.reset();
+        store.reset();
+    }
+}
@@ -0,0 +1,305 @@
+/*
+MixProcessing - Live Mixing of Processing Sketches 
+https://github.com/itschleemilch/MixProcessing
+
+Copyright (c) 2014 Sebastian Schleemilch
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package mixprocessing.sketches;
+
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import mixprocessing.EventManager;
+
+/**
+ * Isolates failing sketches from the render loop:
+ * <ul>
+ * <li>Sketches are drawn on worker threads, the render thread waits at
+ * most the time limit for every sketch. In the sequential mode, one worker
+ * draws all sketches of the frame one after another. A sketch, whose call
+ * is still running afterwards, is quarantined: it is not drawn anymore and
+ * its graphics are detached from the output, so its channel keeps the last
+ * frame and the hung call cannot draw over the following sketches. The
+ * worker threads are replaced.</li>
+ * <li>Exceptions of setup() and draw() are caught. After MAX_FAILURES 
+ * failures in a row the sketch is disabled for a while, the pause doubles
+ * with every further failure (up to MAX_BACKOFF_NANOS).</li>
+ * </ul>
+ * Both cases are reported as SketchFailed events.
+ *
+ * @author Sebastian Schleemilch
+ * @see Sketches#paintAll(java.awt.image.BufferedImage, java.awt.Graphics2D, mixprocessing.channels.ChannelManagement, long) 
+ */
+public class SketchWatchdog {
+    /* Failures in a row, until a sketch is disabled */
+    private static final int MAX_FAILURES = 3;
+    private static final long MIN_BACKOFF_NANOS = 1000000000L;
+    private static final long MAX_BACKOFF_NANOS = 60000000000L;
+    
+    public EventManager eventManager = null; // is set external by ScriptingApi
+    
+    /* 0: sketches are drawn on the render thread without limit */
+    private volatile long timeLimitNanos = 1000000000L;
+    
+    /* Incremented by the worker threads */
+    private final AtomicLong failures = new AtomicLong();
+    private volatile long quarantines = 0;
+
+    public SketchWatchdog() {
+    }
+
+    /**
+     * Sets the maximum duration of a frame of a sketch.
+     * @param millis 0: disables the time limit (sketches are drawn on the
+     * render thread)
+     */
+    public final void setTimeLimit(long millis) {
+        timeLimitNanos = Math.max(0, millis) * 1000000L;
+    }
+
+    /**
+     * Returns the maximum duration of a frame of a sketch.
+     * @return milliseconds, 0: no limit
+     */
+    public final long getTimeLimit() {
+        return timeLimitNanos / 1000000L;
+    }
+    
+    final boolean isTimeLimited() {
+        return timeLimitNanos > 0;
+    }
+    
+    final long getTimeLimitNanos() {
+        return timeLimitNanos;
+    }
+
+    /**
+     * Waits for a task, that runs on the worker threads.
+     * @param task
+     * @return false, if the time limit was exceeded
+     */
+    final boolean await(WatchedAction task) {
+        return await(task, timeLimitNanos);
+    }
+
+    /**
+     * Waits for a task, that runs on the worker threads.
+     * @param task
+     * @param nanos maximum waiting time
+     * @return false, if the time was exceeded
+     */
+    final boolean await(WatchedAction task, long nanos) {
+        try {
+            return task.awaitDone(nanos);
+        } catch (InterruptedException e) {
+            /* The task may hang: handled like a timeout */
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Returns if the sketch may be drawn at the given frame time.
+     * @param sketch
+     * @param frameNanos
+     * @return
+     */
+    public final boolean isRunnable(Sketch sketch, long frameNanos) {
+        if(sketch.quarantined) {
+            return false;
+        }
+        return !sketch.disabled || frameNanos - sketch.disabledUntil >= 0;
+    }
+
+    /**
+     * Called after a successful frame of the sketch.
+     * @param sketch
+     */
+    final void succeeded(Sketch sketch) {
+        if(sketch.failures != 0) {
+            sketch.failures = 0;
+            sketch.backoffNanos = 0;
+            sketch.disabled = false;
+        }
+    }
+
+    /**
+     * Called, if setup() or draw() of the sketch has thrown.
+     * @param sketch
+     * @param t
+     * @param frameNanos
+     */
+    final void failed(Sketch sketch, Throwable t, long frameNanos) {
+        failures.incrementAndGet();
+        sketch.failures++;
+        if(sketch.failures == 1) {
+            System.err.println("Sketch " + sketch.getName() + " failed:");
+            t.printStackTrace(System.err);
+        }
+        if(sketch.failures >= MAX_FAILURES) {
+            sketch.backoffNanos = (sketch.backoffNanos == 0) ? MIN_BACKOFF_NANOS :
+                    Math.min(MAX_BACKOFF_NANOS, sketch.backoffNanos * 2);
+            sketch.disabled = true;
+            sketch.disabledUntil = frameNanos + sketch.backoffNanos;
+            report(sketch, String.format("disabled for %d s after %d failures (%s)", 
+                    sketch.backoffNanos / 1000000000L, sketch.failures, t));
+        }
+    }
+
+    /**
+     * Called, if the instance of the sketch could not be created. The 
+     * sketch is disabled at once, a new attempt follows after the pause.
+     * @param sketch
+     * @param t
+     * @param frameNanos
+     */
+    final void instanceFailed(Sketch sketch, Throwable t, long frameNanos) {
+        if(sketch.failures == 0) {
+            System.err.println("Sketch " + sketch.getName() + " can't be created:");
+            t.printStackTrace(System.err);
+        }
+        sketch.failures = Math.max(sketch.failures, MAX_FAILURES - 1);
+        failed(sketch, t, frameNanos);
+    }
+
+    /**
+     * Called, if the sketch's frame has exceeded the time limit.
+     * @param sketch
+     */
+    final void quarantine(Sketch sketch) {
+        quarantines++;
+        sketch.quarantined = true;
+        sketch.detachGraphics();
+        report(sketch, "quarantined, frame exceeded " + getTimeLimit() + " ms");
+    }
+
+    /**
+     * Enables a disabled or quarantined sketch again. A quarantined sketch
+     * has to finish its running call before.
+     * @param sketch
+     * @return false, if the sketch is still running
+     */
+    public final boolean release(Sketch sketch) {
+        if(sketch.drawing) {
+            return false;
+        }
+        sketch.quarantined = false;
+        sketch.disabled = false;
+        sketch.failures = 0;
+        sketch.backoffNanos = 0;
+        return true;
+    }
+
+    /**
+     * Returns the state of the sketch: "ok", "disabled" (throws, paused) or
+     * "quarantined" (exceeded the time limit).
+     * @param sketch
+     * @return
+     */
+    public final String getState(Sketch sketch) {
+        if(sketch.quarantined) {
+            return "quarantined";
+        }
+        else if(sketch.disabled) {
+            return "disabled";
+        }
+        else {
+            return "ok";
+        }
+    }
+
+    /**
+     * Returns the number of failed frames (exceptions).
+     * @return
+     */
+    public final long getFailures() {
+        return failures.get();
+    }
+
+    /**
+     * Returns the number of quarantined sketches.
+     * @return
+     */
+    public final long getQuarantines() {
+        return quarantines;
+    }
+
+    private void report(Sketch sketch, String reason) {
+        System.err.println("Sketch " + sketch.getName() + " " + reason);
+        if(eventManager != null) {
+            eventManager.fireSketchFailed(sketch.getName(), reason);
+        }
+    }
+    
+    /**
+     * A task of the worker threads, that signals its completion on its own
+     * monitor. Unlike ForkJoinTask.get(timeout), waiting for it does not 
+     * allocate per frame.
+     */
+    abstract static class WatchedAction extends RecursiveAction {
+        private final Object doneLock = new Object();
+        private boolean done = false;
+        
+        abstract void run();
+
+        @Override
+        protected final void compute() {
+            try {
+                run();
+            } catch (RuntimeException e) {
+                e.printStackTrace(System.err);
+            } finally {
+                synchronized(doneLock) {
+                    done = true;
+                    doneLock.notifyAll();
+                }
+            }
+        }
+
+        /**
+         * Prepares the task for the next execution.
+         */
+        final void prepare() {
+            synchronized(doneLock) {
+                if(done) {
+                    /* compute() has returned, the task completes right now */
+                    while(!isDone()) {
+                        Thread.yield();
+                    }
+                }
+                done = false;
+            }
+            reinitialize();
+        }
+        
+        final boolean awaitDone(long nanos) throws InterruptedException {
+            final long deadline = System.nanoTime() + nanos;
+            synchronized(doneLock) {
+                while(!done) {
+                    final long remaining = deadline - System.nanoTime();
+                    if(remaining <= 0) {
+                        return false;
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(doneLock, remaining);
+                }
+                return true;
+            }
+        }
+        
+        private static final long serialVersionUID = 1L;
+    }
+}
@@ -20,20 +20,28 @@ along with this program.  If not, see <http://www.gnu.org/licenses/>.
 
 package mixprocessing.sketches;
 
+import java.awt.AlphaComposite;
+import java.awt.Color;
 import java.awt.Composite;
-import java.awt.Font;
 import mixprocessing.channels.ChannelManagement;
+import mixprocessing.channels.ChannelMask;
 import java.awt.Graphics2D;
-import java.awt.Paint;
+import java.awt.Rectangle;
 import java.awt.RenderingHints;
 import java.awt.Shape;
-import java.awt.Stroke;
 import java.awt.event.KeyEvent;
 import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
 import mixprocessing.channels.SingleChannel;
+import mixprocessing.GraphicsState;
+import mixprocessing.util.AllocationCounter;
+import mixprocessing.util.LatencyHistogram;
 import processing.core.PApplet;
 
 /**
@@ -47,8 +55,63 @@ public class Sketches {
     private final ArrayList<Sketch> sketches = new ArrayList<>();
     private int lastW = 0, lastH = 0;
     private int lastMouseX = 0, lastMouseY = 0;
+    /* Sketches, that received the last mouse press */
+    private final ArrayList<Sketch> pressedSketches = new ArrayList<>();
+    /* Receivers of the current mouse event, reused: the events come from the
+     * EDT (under the render lock) and from scripts, so it is also the lock */
+    private final ArrayList<Sketch> mouseTargets = new ArrayList<>();
     
-    private final AffineTransform oneMatrix = new AffineTransform();
+    private static final AffineTransform oneMatrix = new AffineTransform();
+    
+    /* Parallel rendering: requested by the user, applied by the renderer */
+    private volatile boolean parallelRendering = false;
+    private boolean parallelActive = false;
+    private ForkJoinPool renderPool = null;
+    private final ArrayList<LayerJob> layerJobs = new ArrayList<>();
+    private final ArrayList<LayerJob> waveJobs = new ArrayList<>();
+    private final ArrayList<LayerJob> jobPool = new ArrayList<>();
+    private int usedJobs = 0;
+    private JobsAction jobsAction = new JobsAction();
+    private SequenceAction sequenceAction = new SequenceAction();
+    /* Reused rectangles of the composition */
+    private final Rectangle canvasBounds = new Rectangle(), compositeArea = new Rectangle();
+    /* Attributes of the double buffer graphics, saved during paintAll() */
+    private final GraphicsState baseState = new GraphicsState();
+    /* Transform of the graphics object passed to paintAll */
+    private Graphics2D baseGraphics = null;
+    private final AffineTransform baseTransform = new AffineTransform();
+    
+    /* Retained layers: requested by the user, applied by the renderer */
+    private volatile boolean retainedLayers = false;
+    private boolean retainedActive = false;
+    private volatile boolean compositionDirty = true;
+    private long lastLayoutSignature = 0;
+    
+    /* Duration of the whole paintAll() call */
+    private final LatencyHistogram compositeTimes = new LatencyHistogram();
+    
+    /* Allocations of the render pipeline on the render and worker threads */
+    private volatile boolean allocationTracking = false;
+    private final AllocationCounter allocations = new AllocationCounter();
+    private volatile Thread renderThread = null;
+    private long sketchBytes = 0, workerBytes = 0;
+    
+    /* Throttles low priority sketches under overload */
+    private final FrameBudgetGovernor governor = new FrameBudgetGovernor();
+    /* Isolates hung or throwing sketches */
+    private final SketchWatchdog watchdog = new SketchWatchdog();
+    /* Lazy instantiation and eviction of idle sketches */
+    private final InstanceCache instanceCache = new InstanceCache(watchdog);
+    
+    /* Sketches without enabled output channel */
+    private volatile Sketch.OffChannelPolicy offChannelPolicy = Sketch.OffChannelPolicy.RUN;
+    private volatile long offChannelTickNanos = 500000000L;
+    
+    /* Visibility culling: hidden sketches are ticked like off channel ones */
+    private volatile boolean culling = true;
+    private volatile int occludedSketches = 0, offCanvasSketches = 0;
+    private volatile long culledFrames = 0;
+    private final Rectangle cullArea = new Rectangle();
 
     public Sketches() {
     }
@@ -59,13 +122,31 @@ public class Sketches {
     }
     
     /**
-     * Resize all sketches and their paint buffers.
+     * Resize all sketches and their paint buffers. Sketches are only 
+     * reinitialized, if the size has changed.
      * @param w
      * @param h 
      */
     public final void updateSize(int w, int h)
     {
+        if(w == lastW && h == lastH) {
+            return;
+        }
         lastW = w; lastH = h;
+        resizeSketches();
+    }
+    
+    /**
+     * Reinitializes all sketches with the last size.
+     */
+    public final void updateSize()
+    {
+        resizeSketches();
+    }
+    
+    private void resizeSketches()
+    {
+        final int w = lastW, h = lastH;
         for(int i = 0; i < sketches.size(); i++)
         {
             Sketch s = sketches.get(i);
@@ -85,57 +166,107 @@ public class Sketches {
         }
     }
     
-    public final void updateSize()
-    {
-        this.updateSize(lastW, lastH);
-    }
-    
-    public final void mouseMoved(int x, int y, boolean dragged)
+    /**
+     * Passes a mouse movement to the sketches, whose output channel contains
+     * the pointer. While a button is pressed, the sketches that received the
+     * press also receive the dragging outside of their channel.
+     * Sketches draw in canvas coordinates (clipped by their channel), so the
+     * coordinates are passed unchanged.
+     * @param x
+     * @param y
+     * @param dragged
+     * @param channels 
+     */
+    public final void mouseMoved(int x, int y, boolean dragged, ChannelManagement channels)
     {
-        for (Sketch s : sketches) {
-            PApplet applet = s.getInstance();
-            if(applet != null && s.isReceivingMouseEvents())
-            {
-                applet.mouseX = x;
-                applet.mouseY = y;
-                applet.pmouseX = lastMouseX;
-                applet.pmouseY = lastMouseY;
-                if(dragged) {
-                    applet.mouseDragged();
-                }
-                else {
-                    applet.mouseMoved();
+        synchronized(mouseTargets) {
+            final ArrayList<Sketch> targets = mouseTargets;
+            targets.clear();
+            channels.findSketchesAt(x, y, targets);
+            if(dragged) {
+                addMissing(targets, pressedSketches);
+            }
+            for(int i = 0; i < targets.size(); i++) {
+                final Sketch s = targets.get(i);
+                PApplet applet = s.getInstance();
+                if(applet != null && s.isReceivingMouseEvents())
+                {
+                    applet.pmouseX = applet.mouseX;
+                    applet.pmouseY = applet.mouseY;
+                    applet.mouseX = (int) (x * s.getRenderScale());
+                    applet.mouseY = (int) (y * s.getRenderScale());
+                    if(dragged) {
+                        applet.mouseDragged();
+                    }
+                    else {
+                        applet.mouseMoved();
+                    }
                 }
             }
+            targets.clear();
+            lastMouseX = x;
+            lastMouseY = y;
         }
-        lastMouseX = x;
-        lastMouseY = y;
     }
     
-    public final void mouseEvent(boolean pressed, boolean released, boolean clicked)
+    /**
+     * Passes a mouse button event to the sketches, whose output channel 
+     * contains the last pointer position. Releases are also passed to the
+     * sketches, that received the press.
+     * @param pressed
+     * @param released
+     * @param clicked
+     * @param channels 
+     */
+    public final void mouseEvent(boolean pressed, boolean released, boolean clicked,
+            ChannelManagement channels)
     {
-        for (Sketch s : sketches) {
-            PApplet applet = s.getInstance();
-            if(applet != null)
-            {
-                if(s.isReceivingMouseEvents()) {
-                    if(clicked) {
-                        applet.mouseClicked();
-                    }
-                    else if(pressed)
-                    {
-                        applet.mousePressed = true;
-                        applet.mousePressed();
+        synchronized(mouseTargets) {
+            final ArrayList<Sketch> targets = mouseTargets;
+            targets.clear();
+            channels.findSketchesAt(lastMouseX, lastMouseY, targets);
+            if(released) {
+                addMissing(targets, pressedSketches);
+                pressedSketches.clear();
+            }
+            else if(pressed) {
+                addMissing(pressedSketches, targets);
+            }
+            for(int i = 0; i < targets.size(); i++) {
+                final Sketch s = targets.get(i);
+                PApplet applet = s.getInstance();
+                if(applet != null)
+                {
+                    if(s.isReceivingMouseEvents()) {
+                        if(clicked) {
+                            applet.mouseClicked();
+                        }
+                        else if(pressed)
+                        {
+                            applet.mousePressed = true;
+                            applet.mousePressed();
+                        }
+                        else if(released)
+                        {
+                            applet.mousePressed = false;
+                            applet.mouseReleased();
+                        }
                     }
-                    else if(released)
-                    {
+                    else {
                         applet.mousePressed = false;
-                        applet.mouseReleased();
                     }
                 }
-                else {
-                    applet.mousePressed = false;
-                }
+            }
+            targets.clear();
+        }
+    }
+    
+    private static void addMissing(ArrayList<Sketch> target, ArrayList<Sketch> source)
+    {
+        for(int i = 0; i < source.size(); i++) {
+            final Sketch s = source.get(i);
+            if(!target.contains(s)) {
+                target.add(s);
             }
         }
     }
@@ -187,59 +318,910 @@ public class Sketches {
      */
     public final void paintAll(BufferedImage bi, Graphics2D g, ChannelManagement channels)
     {
-        /* Save internal graphic settings */
-        final AffineTransform old_at = g.getTransform();
-        final Paint old_paint = g.getPaint();
-        final Shape old_clip = g.getClip();
-        final Stroke old_stroke = g.getStroke();
-        final Composite old_composite = g.getComposite();
-        final Font old_font = g.getFont();
-        final RenderingHints old_rHints = g.getRenderingHints();
+        paintAll(bi, g, channels, System.nanoTime());
+    }
+    
+    /**
+     * Renders all sketches at the given frame time. The frame time decides,
+     * which sketches are due (frame rate of each sketch).
+     * The transform of g is captured with the first frame of the graphics
+     * object and restored after every frame, so it has to stay the same.
+     * @param bi Double Buffer Image
+     * @param g Graphics Object from double buffer
+     * @param channels
+     * @param frameNanos current System.nanoTime() value, or a simulated
+     * time (offline rendering)
+     * @see mixprocessing.OfflineRenderer
+     */
+    public final void paintAll(BufferedImage bi, Graphics2D g, ChannelManagement channels,
+            long frameNanos)
+    {
+        final long startTime = System.nanoTime();
+        final boolean trackAllocation = allocationTracking;
+        final long startBytes = trackAllocation ? AllocationCounter.getThreadBytes() : 0;
+        renderThread = Thread.currentThread();
+        sketchBytes = 0;
+        workerBytes = 0;
+        /* Save internal graphic settings (without copies per frame) */
+        if(g != baseGraphics) {
+            baseGraphics = g;
+            baseTransform.setTransform(g.getTransform());
+        }
+        final Shape old_clip = g.getClip(); // null without copy, if not set
+        baseState.capture(g, GraphicsState.SIMPLE);
+        
+        if(parallelActive != parallelRendering || 
+                retainedActive != retainedLayers) {
+            parallelActive = parallelRendering;
+            retainedActive = retainedLayers;
+            disposeLayers();
+            compositionDirty = true;
+        }
+        for(int i = 0; i < sketches.size(); i++) {
+            final Sketch sketch = sketches.get(i);
+            if(sketch.applyReload()) {
+                compositionDirty = true;
+            }
+        }
+        instanceCache.update(sketches, lastW, lastH, frameNanos);
+        updateVisibility(channels, bi.getWidth(), bi.getHeight(), frameNanos);
+        for(int i = 0; i < sketches.size(); i++) {
+            final Sketch sketch = sketches.get(i);
+            sketch.offChannelSkipped = !isRoutedOrDue(sketch, channels, frameNanos);
+        }
+        governor.beginFrame(sketches, frameNanos, retainedActive, 
+                parallelActive ? getRenderPool().getParallelism() : 1);
+        if(retainedActive) {
+            paintRetained(bi, g, channels, frameNanos);
+        }
+        else if(parallelActive) {
+            paintParallel(bi, channels, frameNanos);
+        }
+        else {
+            paintSequential(bi, g, channels, frameNanos);
+        }
+        
+        /* Restore internal graphic settings */
+        g.setTransform(baseTransform);
+        g.setClip(old_clip);
+        baseState.apply(g, GraphicsState.SIMPLE);
             
+        channels.paintBlackedChannels(g);
+        if(trackAllocation) {
+            final long bytes = AllocationCounter.getThreadBytes() - startBytes
+                    - AllocationCounter.getOverhead() - sketchBytes;
+            allocations.record(Math.max(0, bytes) + workerBytes);
+        }
+        compositeTimes.record(System.nanoTime() - startTime);
+    }
+    
+    /**
+     * Draws all sketches one after another into the double buffer.
+     */
+    private void paintSequential(BufferedImage bi, Graphics2D g, ChannelManagement channels,
+            long frameNanos)
+    {
+        layerJobs.clear();
+        usedJobs = 0;
         for(int i = 0; i < sketches.size(); i++)
         {
             Sketch sketch = sketches.get(i);
             PApplet applet = sketch.getInstance();
             
-            if(applet != null && sketch.needsRedraw())
+            if(applet != null && !sketch.isBudgetSkipped() && 
+                    !sketch.isOffChannelSkipped() &&
+                    watchdog.isRunnable(sketch, frameNanos) &&
+                    sketch.needsRedraw(frameNanos))
             {
-                
-                
-                final SingleChannel channel = channels.getChannelForSketch(sketch);
-                final Shape clip;
-                if(channel != null && channel.isEnabled() && 
-                        channel.getShape() != null) {
-                    clip = channel.getShape();
+                final LayerJob job = obtainJob();
+                job.setDirect(sketch, bi, g, getSketchClip(sketch, channels, false), 
+                        frameNanos);
+                layerJobs.add(job);
+            }
+        }
+        if(!runSequence(layerJobs)) {
+            baseState.apply(g, GraphicsState.SIMPLE);
+        }
+        layerJobs.clear();
+    }
+    
+    /**
+     * Draws the sketches on worker threads, each into its own layer.
+     * Sketches are grouped to waves: A sketch joins the first wave after all
+     * previous sketches, whose output areas overlap with its own one. Sketches
+     * within a wave cover disjoint areas and are drawn at the same time.
+     * Every layer starts with the current content of its area and is copied 
+     * back after the wave, so the result equals the sequential drawing.
+     */
+    private void paintParallel(BufferedImage bi, ChannelManagement channels, long frameNanos)
+    {
+        canvasBounds.setBounds(0, 0, bi.getWidth(), bi.getHeight());
+        final boolean maskBlending = SketchLayer.isMaskSupported(bi);
+        int waveCount = 0;
+        layerJobs.clear();
+        usedJobs = 0;
+        for(int i = 0; i < sketches.size(); i++)
+        {
+            Sketch sketch = sketches.get(i);
+            PApplet applet = sketch.getInstance();
+            
+            if(applet != null && !sketch.isBudgetSkipped() && 
+                    !sketch.isOffChannelSkipped() &&
+                    watchdog.isRunnable(sketch, frameNanos) &&
+                    sketch.needsRedraw(frameNanos))
+            {
+                final ChannelMask mask = getSketchMask(sketch, channels);
+                final LayerJob job = obtainJob();
+                if(mask != null) {
+                    Rectangle.intersect(mask.getBounds(), canvasBounds, job.area);
                 }
                 else {
-                    clip = channels.getNullChannelShape();
+                    job.area.setBounds(0, 0, 0, 0);
+                }
+                int wave = 0;
+                for(int j = 0; j < layerJobs.size(); j++) {
+                    final LayerJob previous = layerJobs.get(j);
+                    if(previous.area.intersects(job.area)) {
+                        wave = Math.max(wave, previous.wave + 1);
+                    }
                 }
-                g.setTransform(oneMatrix); // reset transformation
-                g.setClip(clip);
-                
-                sketch.doSetup(bi, g); 
-                applet.draw();
-                sketch.storeInternalSettings();
-                sketch.updateLastRedrawTime();
+                job.set(sketch, bi, getSketchClip(sketch, channels, maskBlending), 
+                        wave, false, frameNanos, maskBlending ? mask : null);
+                layerJobs.add(job);
+                waveCount = Math.max(waveCount, wave + 1);
             }
         }
         
-        /* Restore internal graphic settings */
-        g.setTransform(old_at);
-        g.setPaint(old_paint);
-        g.setClip(old_clip);
-        g.setStroke(old_stroke);
-        g.setComposite(old_composite);
-        g.setFont(old_font);
-        Iterator<?> keys = old_rHints.keySet().iterator();
-        while(keys.hasNext())
+        for(int wave = 0; wave < waveCount; wave++)
         {
-            Object key = keys.next();
-            Object value = old_rHints.get( key );
-            g.setRenderingHint((RenderingHints.Key) key, value);
+            waveJobs.clear();
+            for(int j = 0; j < layerJobs.size(); j++) {
+                if(layerJobs.get(j).wave == wave) {
+                    waveJobs.add(layerJobs.get(j));
+                }
+            }
+            runJobs(waveJobs);
+            for(int j = 0; j < waveJobs.size(); j++) {
+                final LayerJob job = waveJobs.get(j);
+                if(!job.isFinished()) { // cancelled or quarantined
+                    continue;
+                }
+                if(job.mask != null && !job.mask.isRectangular()) {
+                    job.sketch.getLayer().blendTo(bi, job.area, job.mask);
+                }
+                else {
+                    job.sketch.getLayer().copyTo(bi, job.area);
+                }
+            }
+        }
+        layerJobs.clear();
+        waveJobs.clear();
+    }
+    
+    /**
+     * Retained layers: Every sketch draws into its own transparent layer, 
+     * which keeps the last frame. Only due sketches are drawn, all layers
+     * are composited in order afterwards. The composition is skipped, if no
+     * layer and no sketch-channel setting has changed.
+     */
+    private void paintRetained(BufferedImage bi, Graphics2D g, ChannelManagement channels,
+            long frameNanos)
+    {
+        final int w = bi.getWidth(), h = bi.getHeight();
+        final boolean maskBlending = SketchLayer.isMaskSupported(bi);
+        layerJobs.clear();
+        usedJobs = 0;
+        for(int i = 0; i < sketches.size(); i++)
+        {
+            Sketch sketch = sketches.get(i);
+            PApplet applet = sketch.getInstance();
+            if(applet == null) {
+                continue;
+            }
+            final SketchLayer layer;
+            final boolean created;
+            if(sketch.isScaled()) {
+                layer = sketch.getScaledLayer();
+                created = layer.ensureTransparent(sketch.getScaledSize(w), 
+                        sketch.getScaledSize(h));
+            }
+            else {
+                layer = sketch.getLayer();
+                created = layer.ensureTransparent(w, h);
+            }
+            if(sketch.isOffChannelSkipped() || !watchdog.isRunnable(sketch, frameNanos)) {
+                continue;
+            }
+            if(created || !layer.isPainted() || (!sketch.isBudgetSkipped() && 
+                    sketch.needsRetainedRedraw(frameNanos)))
+            {
+                final LayerJob job = obtainJob();
+                job.set(sketch, bi, getSketchClip(sketch, channels, maskBlending),
+                        0, true, frameNanos, null);
+                layerJobs.add(job);
+            }
+        }
+        
+        if(parallelActive && layerJobs.size() > 1) {
+            runJobs(layerJobs);
+        }
+        else {
+            runSequence(layerJobs);
+        }
+        
+        final long signature = getLayoutSignature(w, h);
+        if(!layerJobs.isEmpty() || compositionDirty || 
+                signature != lastLayoutSignature)
+        {
+            compositionDirty = false;
+            lastLayoutSignature = signature;
+            g.setTransform(oneMatrix);
+            g.setClip(null);
+            g.setComposite(AlphaComposite.SrcOver);
+            g.setColor(Color.BLACK);
+            g.fillRect(0, 0, w, h);
+            canvasBounds.setBounds(0, 0, w, h);
+            for(int i = 0; i < sketches.size(); i++)
+            {
+                Sketch sketch = sketches.get(i);
+                final boolean scaled = sketch.isScaled();
+                SketchLayer layer = scaled ? sketch.getScaledLayer() : sketch.getLayer();
+                ChannelMask mask = getSketchMask(sketch, channels);
+                if(sketch.getInstance() == null || !layer.isPainted() || mask == null) {
+                    continue;
+                }
+                if(scaled) {
+                    drawScaledUp(sketch, g, w, h, 
+                            mask.isRectangular() ? mask.getBounds() : mask.getShape(), true);
+                }
+                else if(maskBlending && !mask.isRectangular()) {
+                    Rectangle.intersect(mask.getBounds(), canvasBounds, compositeArea);
+                    layer.compositeTo(bi, compositeArea, mask, sketch.getAlpha());
+                }
+                else {
+                    g.setClip(mask.isRectangular() ? mask.getBounds() : mask.getShape());
+                    g.setComposite(sketch.getAlphaComposite());
+                    g.drawImage(layer.getImage(), 0, 0, null);
+                }
+            }
+        }
+        layerJobs.clear();
+    }
+    
+    /**
+     * Sums up all settings, which change the composition of retained layers.
+     */
+    private long getLayoutSignature(int w, int h)
+    {
+        long signature = 31L * w + h;
+        for(int i = 0; i < sketches.size(); i++)
+        {
+            Sketch sketch = sketches.get(i);
+            SingleChannel channel = sketch.getOutputChannel();
+            signature = 31L * signature + Float.floatToIntBits(sketch.getAlpha());
+            signature = 31L * signature + System.identityHashCode(channel);
+            signature = 31L * signature + (sketch.culled ? 1 : 2);
+            if(channel != null) {
+                signature = 31L * signature + (channel.isEnabled() ? 1 : 2);
+                signature = 31L * signature + System.identityHashCode(channel.getMask());
+            }
+        }
+        return signature;
+    }
+    
+    /**
+     * Runs the given jobs on the worker threads and waits for them.
+     */
+    private void invokeJobs(ForkJoinPool pool, ArrayList<LayerJob> jobs)
+    {
+        jobsAction.prepare();
+        jobsAction.jobs = jobs;
+        pool.invoke(jobsAction);
+        jobsAction.jobs = null;
+        addWorkerBytes(jobs);
+    }
+    
+    /**
+     * Adds the allocations of the finished jobs, which ran on worker threads,
+     * to the measurement of the frame.
+     */
+    private void addWorkerBytes(ArrayList<LayerJob> jobs)
+    {
+        for(int i = 0; i < jobs.size(); i++) {
+            final LayerJob job = jobs.get(i);
+            if(job.isFinished()) {
+                workerBytes += job.pipelineBytes;
+            }
+        }
+    }
+    
+    /**
+     * Runs the given jobs on the worker threads and waits for them, at most
+     * the time limit of the watchdog.
+     */
+    private void runJobs(ArrayList<LayerJob> jobs)
+    {
+        final ForkJoinPool pool = getRenderPool();
+        if(!watchdog.isTimeLimited()) {
+            invokeJobs(pool, jobs);
+            return;
+        }
+        jobsAction.prepare();
+        jobsAction.jobs = jobs;
+        pool.execute(jobsAction);
+        if(watchdog.await(jobsAction)) {
+            jobsAction.jobs = null;
+            addWorkerBytes(jobs);
+        }
+        else {
+            for(int i = 0; i < jobs.size(); i++) {
+                abandonJob(jobs.get(i));
+            }
+            abandonPool();
+        }
+    }
+    
+    /**
+     * Runs the jobs one after another. With a time limit, the whole sequence 
+     * is handed to one worker thread, this thread waits at most the time 
+     * limit for every single job. Without a time limit, the jobs run on 
+     * this thread.
+     * @return false, if a job has been abandoned (the remaining jobs of the
+     * sequence are skipped in this frame)
+     */
+    private boolean runSequence(ArrayList<LayerJob> jobs)
+    {
+        if(jobs.isEmpty()) {
+            return true;
+        }
+        if(!watchdog.isTimeLimited()) {
+            for(int i = 0; i < jobs.size(); i++) {
+                jobs.get(i).invoke();
+            }
+            return true;
+        }
+        final SequenceAction action = sequenceAction;
+        action.prepare();
+        action.jobs = jobs;
+        action.jobStartNanos = System.nanoTime();
+        getRenderPool().execute(action);
+        while(true) {
+            final long start = action.jobStartNanos;
+            final long remaining = start + watchdog.getTimeLimitNanos() - System.nanoTime();
+            if(remaining > 0) {
+                if(watchdog.await(action, remaining)) {
+                    action.jobs = null;
+                    addWorkerBytes(jobs);
+                    return true;
+                }
+            }
+            else if(start == action.jobStartNanos) { // the current job hangs
+                for(int i = 0; i < jobs.size(); i++) {
+                    abandonJob(jobs.get(i));
+                }
+                abandonPool();
+                return false;
+            }
+        }
+    }
+    
+    /**
+     * Cancels a job, that has not been started yet, or quarantines its 
+     * sketch, if it is still running.
+     */
+    private void abandonJob(LayerJob job)
+    {
+        if(!job.cancelIfPending() && !job.isFinished()) {
+            watchdog.quarantine(job.sketch);
         }
-            
-        channels.paintBlackedChannels(g);
+    }
+    
+    /**
+     * Replaces the worker threads and the jobs after a timeout: A hung 
+     * worker keeps its thread and its job forever.
+     */
+    private void abandonPool()
+    {
+        if(renderPool != null) {
+            renderPool.shutdown();
+            renderPool = null;
+        }
+        jobPool.clear();
+        usedJobs = 0;
+        jobsAction = new JobsAction();
+        sequenceAction = new SequenceAction();
+    }
+    
+    /**
+     * Returns an unused job of the pool, the jobs are reused every frame.
+     */
+    private LayerJob obtainJob()
+    {
+        final LayerJob job;
+        if(usedJobs < jobPool.size()) {
+            job = jobPool.get(usedJobs);
+            job.reinitialize();
+        }
+        else {
+            job = new LayerJob();
+            jobPool.add(job);
+        }
+        usedJobs++;
+        return job;
+    }
+    
+    /**
+     * Marks the sketches, which cannot be seen in this frame: Sketches whose
+     * channel lies outside of the canvas, and sketches whose channel is
+     * covered by the channel of an opaque sketch drawn later (alpha 1, 
+     * not scaled, last frame called background()).
+     * @param width canvas width
+     * @param height canvas height
+     */
+    private void updateVisibility(ChannelManagement channels, int width, int height,
+            long frameNanos)
+    {
+        int occluded = 0, offCanvas = 0;
+        final boolean enabled = culling;
+        canvasBounds.setBounds(0, 0, width, height);
+        for(int i = 0; i < sketches.size(); i++) {
+            final Sketch sketch = sketches.get(i);
+            sketch.culled = false;
+            final ChannelMask mask = getChannelMask(sketch, channels);
+            if(!enabled || sketch.getInstance() == null || mask == null) {
+                continue;
+            }
+            Rectangle.intersect(mask.getBounds(), canvasBounds, cullArea);
+            if(cullArea.isEmpty()) {
+                sketch.culled = true;
+                offCanvas++;
+                continue;
+            }
+            for(int j = i + 1; j < sketches.size(); j++) {
+                final Sketch above = sketches.get(j);
+                if(isOccluder(above, frameNanos) && 
+                        covers(getChannelMask(above, channels), cullArea)) {
+                    sketch.culled = true;
+                    occluded++;
+                    break;
+                }
+            }
+        }
+        occludedSketches = occluded;
+        offCanvasSketches = offCanvas;
+        culledFrames += occluded + offCanvas;
+    }
+    
+    /**
+     * Returns if the sketch's output hides everything drawn before within 
+     * its channel.
+     */
+    private boolean isOccluder(Sketch sketch, long frameNanos)
+    {
+        return sketch.getInstance() != null && sketch.isOpaque() && 
+                sketch.getAlpha() >= 1.0f && !sketch.isScaled() &&
+                watchdog.isRunnable(sketch, frameNanos);
+    }
+    
+    /**
+     * Returns if the mask is fully opaque within the area. Antialiased
+     * edges of shaped channels do not cover.
+     */
+    private static boolean covers(ChannelMask mask, Rectangle area)
+    {
+        if(mask == null || !mask.getBounds().contains(area)) {
+            return false;
+        }
+        return mask.isRectangular() || 
+                mask.getShape().contains(area.x, area.y, area.width, area.height);
+    }
+    
+    /**
+     * Applies the off channel policy. Culled sketches are handled like off
+     * channel sketches, but drawn with the tick rate at most.
+     * @return false, if the sketch has no enabled, visible output channel 
+     * and must not be drawn in this frame
+     */
+    private boolean isRoutedOrDue(Sketch sketch, ChannelManagement channels, long frameNanos)
+    {
+        if(sketch.getInstance() == null || getSketchMask(sketch, channels) != null) {
+            return true;
+        }
+        Sketch.OffChannelPolicy policy = (sketch.getOffChannelPolicy() != null) ?
+                sketch.getOffChannelPolicy() : offChannelPolicy;
+        if(sketch.culled && policy == Sketch.OffChannelPolicy.RUN) {
+            policy = Sketch.OffChannelPolicy.TICK;
+        }
+        switch(policy) {
+            case PAUSE:
+                return false;
+            case TICK:
+                return sketch.isIdleFor(frameNanos, offChannelTickNanos);
+            default:
+                return true;
+        }
+    }
+    
+    /**
+     * Returns the cached mask of the sketch's visible output channel.
+     * @return mask or null (no channel, channel disabled or sketch culled)
+     */
+    private static ChannelMask getSketchMask(Sketch sketch, ChannelManagement channels)
+    {
+        return sketch.culled ? null : getChannelMask(sketch, channels);
+    }
+    
+    /**
+     * Returns the cached mask of the sketch's output channel.
+     * @return mask or null (no channel or channel disabled)
+     */
+    private static ChannelMask getChannelMask(Sketch sketch, ChannelManagement channels)
+    {
+        final SingleChannel channel = channels.getChannelForSketch(sketch);
+        if(channel != null && channel.isEnabled() && 
+                channel.getShape() != null) {
+            return channel.getMask();
+        }
+        else {
+            return null;
+        }
+    }
+    
+    /**
+     * Returns the clipping shape of the sketch's output channel. Rectangular
+     * channels are clipped by their integer bounds (fast path).
+     * @param maskBlending true: the output is blended with the channel mask
+     * later, so only the bounds are clipped
+     */
+    private static Shape getSketchClip(Sketch sketch, ChannelManagement channels,
+            boolean maskBlending)
+    {
+        final ChannelMask mask = getSketchMask(sketch, channels);
+        if(mask == null) {
+            return channels.getNullChannelShape();
+        }
+        else if(maskBlending || mask.isRectangular()) {
+            return mask.getBounds();
+        }
+        else {
+            return mask.getShape();
+        }
+    }
+    
+    /**
+     * Draws one frame of the sketch. Transformation and clip of g have to be
+     * set before. Exceptions of the sketch are passed to the watchdog.
+     * @param base attributes g is reset to after drawing (shared double 
+     * buffer), null: g belongs to the sketch's layer
+     */
+    private void drawSketch(Sketch sketch, BufferedImage bi, Graphics2D g, 
+            boolean applyAlpha, long frameNanos, GraphicsState base)
+    {
+        /* A reload may replace the instance of a hung, quarantined call */
+        final PApplet applet = sketch.getInstance();
+        sketch.drawing = true;
+        try {
+            drawSketchFrame(sketch, bi, g, applyAlpha, frameNanos, base);
+            if(sketch.getInstance() == applet) {
+                watchdog.succeeded(sketch);
+            }
+        } catch (Throwable t) { // whatever the sketch throws, the output goes on
+            if(sketch.getInstance() == applet) {
+                if(base != null && !sketch.quarantined) { // quarantined: g is in use again
+                    base.apply(g, GraphicsState.SIMPLE);
+                }
+                sketch.updateLastRedrawTime(frameNanos);
+                watchdog.failed(sketch, t, frameNanos);
+            }
+        } finally {
+            if(sketch.getInstance() == applet) {
+                sketch.drawing = false;
+            }
+        }
+    }
+    
+    private void drawSketchFrame(Sketch sketch, BufferedImage bi, Graphics2D g, 
+            boolean applyAlpha, long frameNanos, GraphicsState base)
+    {
+        final long t0 = System.nanoTime();
+        sketch.applySize(bi.getWidth(), bi.getHeight());
+        sketch.applySimulatedMillis();
+        sketch.doSetup(bi, g, applyAlpha); 
+        final long t1 = System.nanoTime();
+        sketch.applySimulatedMillis();
+        /* Allocations of the sketch itself are not counted */
+        final boolean trackAllocation = allocationTracking;
+        final long startBytes = trackAllocation ? AllocationCounter.getThreadBytes() : 0;
+        final PApplet applet = sketch.getInstance();
+        applet.draw();
+        if(sketch.getInstance() != applet) {
+            return; // abandoned and replaced by a reload
+        }
+        if(trackAllocation) {
+            final long bytes = AllocationCounter.getThreadBytes() - startBytes
+                    + AllocationCounter.getOverhead();
+            if(Thread.currentThread() == renderThread) {
+                sketchBytes += bytes;
+            }
+            else {
+                sketch.workerDrawBytes += bytes;
+            }
+        }
+        final long t2 = System.nanoTime();
+        sketch.storeInternalSettings(base);
+        final long t3 = System.nanoTime();
+        sketch.updateLastRedrawTime(frameNanos);
+        sketch.getTimings().record(t1 - t0, t2 - t1, t3 - t2);
+        governor.recordCost(sketch, t3 - t0);
+    }
+    
+    /**
+     * Draws a frame of a scaled sketch into its low resolution layer.
+     * @param width output width
+     * @param height output height
+     * @param clip clip in output coordinates
+     * @param scaledClip used to store the clip in layer coordinates
+     */
+    private void drawScaledLayer(Sketch sketch, int width, int height, Shape clip,
+            Rectangle scaledClip, long frameNanos)
+    {
+        final SketchLayer scaled = sketch.getScaledLayer();
+        scaled.ensureTransparent(sketch.getScaledSize(width), sketch.getScaledSize(height));
+        final Rectangle bounds = (clip instanceof Rectangle) ? (Rectangle) clip : clip.getBounds();
+        final float scale = sketch.getRenderScale();
+        final int x0 = (int) Math.floor(bounds.x * scale);
+        final int y0 = (int) Math.floor(bounds.y * scale);
+        scaledClip.setBounds(x0, y0, 
+                (int) Math.ceil((bounds.x + bounds.width) * scale) - x0,
+                (int) Math.ceil((bounds.y + bounds.height) * scale) - y0);
+        final Graphics2D lg = scaled.getGraphics();
+        lg.setTransform(oneMatrix);
+        lg.setClip(scaledClip);
+        drawSketch(sketch, scaled.getImage(), lg, false, frameNanos, null);
+        scaled.setPainted();
+    }
+    
+    /**
+     * Scales the low resolution layer of a sketch up into g. Composite and
+     * interpolation of g are restored afterwards.
+     * @param width output width
+     * @param height output height
+     * @param clip clip in output coordinates
+     * @param applyAlpha true: draws with the sketch's opacity
+     */
+    private static void drawScaledUp(Sketch sketch, Graphics2D g, int width, int height,
+            Shape clip, boolean applyAlpha)
+    {
+        final Composite oldComposite = g.getComposite();
+        final Object oldInterpolation = g.getRenderingHint(RenderingHints.KEY_INTERPOLATION);
+        g.setTransform(oneMatrix);
+        g.setClip(clip);
+        g.setComposite(applyAlpha ? sketch.getAlphaComposite() : AlphaComposite.SrcOver);
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, sketch.getInterpolation());
+        g.drawImage(sketch.getScaledLayer().getImage(), 0, 0, width, height, null);
+        g.setComposite(oldComposite);
+        if(oldInterpolation != null) {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, oldInterpolation);
+        }
+    }
+    
+    private ForkJoinPool getRenderPool()
+    {
+        if(renderPool == null) {
+            renderPool = new ForkJoinPool(
+                    Runtime.getRuntime().availableProcessors(),
+                    new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+                        @Override
+                        public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+                            ForkJoinWorkerThread t = ForkJoinPool.
+                                    defaultForkJoinWorkerThreadFactory.newThread(pool);
+                            t.setName("MP Sketch Worker " + t.getPoolIndex());
+                            return t;
+                        }
+                    }, null, false);
+        }
+        return renderPool;
+    }
+    
+    private void disposeLayers()
+    {
+        for (Sketch sketch : sketches) {
+            sketch.getLayer().dispose();
+            sketch.getScaledLayer().dispose();
+        }
+    }
+    
+    /**
+     * Enables the parallel rendering mode: Sketches with non-overlapping
+     * output channels are drawn at the same time on worker threads, each
+     * into its own layer. Takes effect with the next frame.
+     * @param enabled 
+     */
+    public final void setParallelRendering(boolean enabled) {
+        this.parallelRendering = enabled;
+    }
+    
+    /**
+     * Returns if the parallel rendering mode is enabled.
+     * @return 
+     * @see Sketches#setParallelRendering(boolean) 
+     */
+    public final boolean isParallelRendering() {
+        return parallelRendering;
+    }
+    
+    /**
+     * Enables retained layers: Each sketch keeps its last frame in its own
+     * layer and is only drawn again when it is due (frame rate, redraw() 
+     * after noLoop()). The opacity is applied when compositing the layers.
+     * Takes effect with the next frame.
+     * @param enabled 
+     */
+    public final void setRetainedLayers(boolean enabled) {
+        this.retainedLayers = enabled;
+    }
+    
+    /**
+     * Returns if retained layers are enabled.
+     * @return 
+     * @see Sketches#setRetainedLayers(boolean) 
+     */
+    public final boolean isRetainedLayers() {
+        return retainedLayers;
+    }
+    
+    /**
+     * Returns the statistics of the total render time of all sketches
+     * per frame (including composition).
+     * @return 
+     */
+    public final LatencyHistogram getCompositeTimes() {
+        return compositeTimes;
+    }
+    
+    /**
+     * Clears the timing statistics of all sketches and the composition.
+     */
+    public final void resetTimings() {
+        compositeTimes.reset();
+        allocations.reset();
+        governor.reset();
+        culledFrames = 0;
+        for (Sketch sketch : getAllSketches()) {
+            sketch.getTimings().reset();
+        }
+    }
+    
+    /**
+     * Sets, how sketches without enabled output channel are drawn (if not
+     * set per sketch). The policy applies, as soon as a channel is disabled
+     * or removed or a sketch is unlinked.
+     * @param policy 
+     * @see Sketch#setOffChannelPolicy(mixprocessing.sketches.Sketch.OffChannelPolicy) 
+     */
+    public final void setOffChannelPolicy(Sketch.OffChannelPolicy policy) {
+        if(policy != null) {
+            offChannelPolicy = policy;
+        }
+    }
+    
+    public final Sketch.OffChannelPolicy getOffChannelPolicy() {
+        return offChannelPolicy;
+    }
+    
+    /**
+     * Sets the rate of the TICK policy.
+     * @param frameRate frames per second, has to be greater than 0
+     */
+    public final void setOffChannelTickRate(float frameRate) {
+        if(frameRate > 0f) {
+            offChannelTickNanos = Math.round(1000000000d / frameRate);
+        }
+    }
+    
+    public final float getOffChannelTickRate() {
+        return (float) (1000000000d / offChannelTickNanos);
+    }
+    
+    /**
+     * Enables the visibility culling: Sketches hidden by opaque sketches
+     * drawn later or outside of the canvas are drawn like off channel 
+     * sketches (with the tick rate at most, without output).
+     * @param enabled 
+     */
+    public final void setCulling(boolean enabled) {
+        this.culling = enabled;
+    }
+    
+    public final boolean isCulling() {
+        return culling;
+    }
+    
+    /**
+     * Returns the number of sketches hidden by opaque sketches in the last
+     * frame.
+     * @return 
+     */
+    public final int getOccludedSketches() {
+        return occludedSketches;
+    }
+    
+    /**
+     * Returns the number of sketches outside of the canvas in the last 
+     * frame.
+     * @return 
+     */
+    public final int getOffCanvasSketches() {
+        return offCanvasSketches;
+    }
+    
+    /**
+     * Returns the total number of culled sketch frames.
+     * @return 
+     */
+    public final long getCulledFrames() {
+        return culledFrames;
+    }
+    
+    /**
+     * Returns the watchdog, which isolates hung or throwing sketches.
+     * @return 
+     */
+    public final SketchWatchdog getWatchdog() {
+        return watchdog;
+    }
+    
+    /**
+     * Returns the lazy instantiation of the sketches.
+     * @return 
+     */
+    public final InstanceCache getInstanceCache() {
+        return instanceCache;
+    }
+    
+    /**
+     * Returns the frame budget governor, which throttles low priority
+     * sketches under overload.
+     * @return 
+     */
+    public final FrameBudgetGovernor getGovernor() {
+        return governor;
+    }
+    
+    /**
+     * Enables the measurement of the bytes allocated by the render pipeline
+     * per frame on the render thread and by the sketch jobs on the worker
+     * threads (allocations within the sketches' draw() methods are not 
+     * counted).
+     * @param enabled 
+     */
+    public final void setAllocationTracking(boolean enabled) {
+        this.allocationTracking = enabled && AllocationCounter.isSupported();
+    }
+    
+    /**
+     * Returns if the allocation measurement is enabled.
+     * @return 
+     */
+    public final boolean isAllocationTracking() {
+        return allocationTracking;
+    }
+    
+    /**
+     * Returns the allocation statistics of the render pipeline.
+     * @return 
+     * @see Sketches#setAllocationTracking(boolean) 
+     */
+    public final AllocationCounter getAllocations() {
+        return allocations;
+    }
+    
+    /**
+     * Forces a full composition of the retained layers within the next frame,
+     * e.g. after the double buffer has been cleared.
+     */
+    public final void setCompositionDirty() {
+        this.compositionDirty = true;
     }
     
     /**
@@ -266,4 +1248,164 @@ public class Sketches {
         return sketches.toArray(new Sketch[0]);
     }
     
+    /**
+     * Draws one sketch into its layer. Used by the parallel rendering mode 
+     * and the retained layers. Sequential rendering uses direct jobs, which
+     * draw into the double buffer. Jobs are pooled and reused.
+     */
+    private final class LayerJob extends RecursiveAction {
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+        private Graphics2D direct;
+        private Sketch sketch;
+        private BufferedImage target;
+        private Shape clip;
+        private final Rectangle area = new Rectangle();
+        /* Clip of a scaled sketch in its layer */
+        private final Rectangle scaledClip = new Rectangle();
+        private int wave;
+        private boolean retained;
+        private long frameNanos;
+        private ChannelMask mask;
+        /* Allocations of the pipeline on a worker thread (without draw()) */
+        private long pipelineBytes;
+
+        /**
+         * @param target output image
+         * @param retained true: draw into the retained layer; false: copy 
+         * area from the target first (parallel rendering)
+         * @param mask parallel rendering: blends the layer back with this 
+         * mask, null: copies the area
+         */
+        void set(Sketch sketch, BufferedImage target, Shape clip, int wave, 
+                boolean retained, long frameNanos, ChannelMask mask) {
+            this.sketch = sketch;
+            this.target = target;
+            this.clip = clip;
+            this.wave = wave;
+            this.retained = retained;
+            this.frameNanos = frameNanos;
+            this.mask = mask;
+            this.direct = null;
+            this.pipelineBytes = 0;
+            state.set(PENDING);
+        }
+        
+        /**
+         * Sequential rendering: draws into the given (shared) graphics.
+         */
+        void setDirect(Sketch sketch, BufferedImage target, Graphics2D g, Shape clip,
+                long frameNanos) {
+            set(sketch, target, clip, 0, false, frameNanos, null);
+            this.direct = g;
+        }
+        
+        /**
+         * Prevents a job from being started.
+         * @return false, if the job has already been started
+         */
+        boolean cancelIfPending() {
+            return state.compareAndSet(PENDING, CANCELLED);
+        }
+        
+        boolean isFinished() {
+            return state.get() == FINISHED;
+        }
+
+        @Override
+        protected void compute() {
+            if(!state.compareAndSet(PENDING, RUNNING)) {
+                return;
+            }
+            final boolean trackAllocation = allocationTracking && 
+                    Thread.currentThread() != renderThread;
+            final long startBytes = trackAllocation ? AllocationCounter.getThreadBytes() : 0;
+            sketch.workerDrawBytes = 0;
+            try {
+                computeLayer();
+            } finally {
+                if(trackAllocation) {
+                    pipelineBytes = Math.max(0, AllocationCounter.getThreadBytes() 
+                            - startBytes - AllocationCounter.getOverhead() 
+                            - sketch.workerDrawBytes);
+                }
+                state.set(FINISHED);
+            }
+        }
+        
+        private void computeLayer() {
+            final int width = target.getWidth(), height = target.getHeight();
+            if(direct != null) {
+                if(sketch.isScaled()) {
+                    drawScaledLayer(sketch, width, height, clip, scaledClip, frameNanos);
+                    if(!sketch.quarantined) { // abandoned: direct is in use again
+                        drawScaledUp(sketch, direct, width, height, clip, true);
+                    }
+                    return;
+                }
+                direct.setTransform(oneMatrix); // reset transformation
+                direct.setClip(clip);
+                drawSketch(sketch, target, direct, true, frameNanos, baseState);
+                return;
+            }
+            if(retained && sketch.isScaled()) {
+                drawScaledLayer(sketch, width, height, clip, scaledClip, frameNanos);
+                return;
+            }
+            final SketchLayer layer = sketch.getLayer();
+            if(!retained) {
+                layer.ensureCompatible(target);
+                layer.copyFrom(target, area);
+            }
+            final Graphics2D lg = layer.getGraphics();
+            if(!retained && sketch.isScaled()) {
+                drawScaledLayer(sketch, width, height, clip, scaledClip, frameNanos);
+                drawScaledUp(sketch, lg, width, height, clip, true);
+            }
+            else {
+                lg.setTransform(oneMatrix);
+                lg.setClip(clip);
+                drawSketch(sketch, layer.getImage(), lg, !retained, frameNanos, null);
+            }
+            layer.setPainted();
+        }
+        
+        private static final long serialVersionUID = 1L;
+    }
+    
+    private static final int PENDING = 0, RUNNING = 1, FINISHED = 2, CANCELLED = 3;
+    
+    /**
+     * Runs a list of layer jobs one after another on a worker thread. The 
+     * start of the current job is published for the deadline of the waiting
+     * render thread.
+     */
+    private static final class SequenceAction extends SketchWatchdog.WatchedAction {
+        private ArrayList<LayerJob> jobs;
+        private volatile long jobStartNanos;
+
+        @Override
+        void run() {
+            final ArrayList<LayerJob> list = jobs;
+            for(int i = 0; i < list.size(); i++) {
+                jobStartNanos = System.nanoTime();
+                list.get(i).invoke();
+            }
+        }
+        
+        private static final long serialVersionUID = 1L;
+    }
+    
+    /**
+     * Runs a list of layer jobs on the worker threads.
+     */
+    private static final class JobsAction extends SketchWatchdog.WatchedAction {
+        private ArrayList<LayerJob> jobs;
+
+        @Override
+        void run() {
+            ForkJoinTask.invokeAll(jobs);
+        }
+        
+        private static final long serialVersionUID = 1L;
+    }
 }
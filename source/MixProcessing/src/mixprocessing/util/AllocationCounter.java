@@ -0,0 +1,157 @@
+/*
+ MixProcessing - Live Mixing of Processing Sketches 
+ https://github.com/itschleemilch/MixProcessing
+
+ Copyright (c) 2014 Sebastian Schleemilch
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package mixprocessing.util;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Counts the bytes allocated by the render pipeline per frame (render 
+ * thread and sketch jobs), based on com.sun.management.ThreadMXBean. The constant overhead
+ * of the measurement itself is calibrated and subtracted.
+ *
+ * @author Sebastian Schleemilch
+ */
+public class AllocationCounter {
+    private static final com.sun.management.ThreadMXBean THREADS;
+    private static final long MEASUREMENT_OVERHEAD;
+
+    private volatile long frames = 0;
+    private volatile long totalBytes = 0;
+    private volatile long maxBytes = 0;
+    private volatile long lastBytes = 0;
+
+    public AllocationCounter() {
+    }
+
+    /**
+     * Returns if the JVM supports the measurement.
+     * @return
+     */
+    public static boolean isSupported() {
+        return THREADS != null;
+    }
+
+    /**
+     * Returns the number of bytes allocated by the current thread so far
+     * (including the overhead of one call of this method).
+     * @return 0, if not supported
+     */
+    public static long getThreadBytes() {
+        if(THREADS == null) {
+            return 0;
+        }
+        return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Returns the bytes, that one getThreadBytes() call allocates itself
+     * (calibrated at startup).
+     * @return
+     */
+    public static long getOverhead() {
+        return MEASUREMENT_OVERHEAD;
+    }
+
+    /**
+     * Adds the allocation of one frame.
+     * @param bytes
+     */
+    public final void record(long bytes) {
+        lastBytes = bytes;
+        totalBytes += bytes;
+        if(bytes > maxBytes) {
+            maxBytes = bytes;
+        }
+        frames++;
+    }
+
+    /**
+     * Clears the statistics.
+     */
+    public final void reset() {
+        frames = 0;
+        totalBytes = 0;
+        maxBytes = 0;
+        lastBytes = 0;
+    }
+
+    /**
+     * Returns the number of recorded frames.
+     * @return
+     */
+    public final long getFrames() {
+        return frames;
+    }
+
+    /**
+     * Returns the average allocation per frame in bytes.
+     * @return
+     */
+    public final double getAverageBytes() {
+        final long n = frames;
+        return n == 0 ? 0d : totalBytes / (double) n;
+    }
+
+    /**
+     * Returns the largest allocation of a frame in bytes.
+     * @return
+     */
+    public final long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Returns the allocation of the last frame in bytes.
+     * @return
+     */
+    public final long getLastBytes() {
+        return lastBytes;
+    }
+
+    static
+    {
+        com.sun.management.ThreadMXBean threads = null;
+        try {
+            java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            if(bean instanceof com.sun.management.ThreadMXBean) {
+                threads = (com.sun.management.ThreadMXBean) bean;
+                if(threads.isThreadAllocatedMemorySupported()) {
+                    threads.setThreadAllocatedMemoryEnabled(true);
+                }
+                else {
+                    threads = null;
+                }
+            }
+        } catch (UnsupportedOperationException | SecurityException | LinkageError e) {
+            threads = null;
+        }
+        THREADS = threads;
+        /* Calibration: two successive calls, smallest difference */
+        long overhead = Long.MAX_VALUE;
+        if(threads != null) {
+            for(int i = 0; i < 1000; i++) {
+                long a = getThreadBytes();
+                long b = getThreadBytes();
+                overhead = Math.min(overhead, b - a);
+            }
+        }
+        MEASUREMENT_OVERHEAD = (overhead == Long.MAX_VALUE) ? 0 : overhead;
+    }
+}
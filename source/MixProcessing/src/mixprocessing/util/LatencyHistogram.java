@@ -0,0 +1,172 @@
+/*
+ MixProcessing - Live Mixing of Processing Sketches 
+ https://github.com/itschleemilch/MixProcessing
+
+ Copyright (c) 2014 Sebastian Schleemilch
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package mixprocessing.util;
+
+/**
+ * Histogram of durations with logarithmic buckets (HDR style): every power
+ * of two is divided into 16 linear sub buckets, so each value is stored with
+ * a relative error below 1/16. Recording is allocation free and takes
+ * constant time.
+ *
+ * Values are recorded by one thread at a time (the render thread or the
+ * worker drawing the sketch). Other threads may read the statistics at any
+ * time, the results are then approximations.
+ *
+ * @author Sebastian Schleemilch
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private final long[] counts = new long[64 * SUB_BUCKETS];
+    private volatile long count = 0;
+    private volatile long total = 0;
+    private volatile long max = 0;
+    /* Reset is performed by the recording thread */
+    private volatile boolean resetRequested = false;
+
+    public LatencyHistogram() {
+    }
+
+    /**
+     * Adds a duration to the histogram.
+     * @param nanos duration in nanoseconds
+     */
+    public final void record(long nanos) {
+        if(resetRequested) {
+            resetRequested = false;
+            clear();
+        }
+        if(nanos < 0) {
+            nanos = 0;
+        }
+        counts[getIndex(nanos)]++;
+        total += nanos;
+        if(nanos > max) {
+            max = nanos;
+        }
+        count++;
+    }
+
+    /**
+     * Clears the histogram before the next value is recorded.
+     */
+    public final void reset() {
+        resetRequested = true;
+    }
+
+    private void clear() {
+        for(int i = 0; i < counts.length; i++) {
+            counts[i] = 0;
+        }
+        count = 0;
+        total = 0;
+        max = 0;
+    }
+
+    /**
+     * Returns the number of recorded values.
+     * @return
+     */
+    public final long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the value at the given percentile in nanoseconds.
+     * @param percentile 0..100
+     * @return 0, if empty
+     */
+    public final long getPercentile(double percentile) {
+        final long n = count;
+        if(n == 0) {
+            return 0;
+        }
+        long target = (long) Math.ceil(percentile / 100d * n);
+        if(target < 1) {
+            target = 1;
+        }
+        long sum = 0;
+        for(int i = 0; i < counts.length; i++) {
+            sum += counts[i];
+            if(sum >= target) {
+                return Math.min(getUpperBound(i), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Returns the value at the given percentile in milliseconds.
+     * @param percentile 0..100
+     * @return
+     */
+    public final double getPercentileMillis(double percentile) {
+        return getPercentile(percentile) / 1000000d;
+    }
+
+    /**
+     * Returns the largest recorded value in milliseconds.
+     * @return
+     */
+    public final double getMaxMillis() {
+        return max / 1000000d;
+    }
+
+    /**
+     * Returns the average of all recorded values in milliseconds.
+     * @return
+     */
+    public final double getMeanMillis() {
+        final long n = count;
+        return n == 0 ? 0d : total / (double) n / 1000000d;
+    }
+
+    /**
+     * Returns p50, p95, p99 and the maximum in milliseconds.
+     * @return
+     */
+    public final double[] getSummaryMillis() {
+        return new double[] {
+            getPercentileMillis(50), getPercentileMillis(95),
+            getPercentileMillis(99), getMaxMillis()
+        };
+    }
+
+    private static int getIndex(long value) {
+        if(value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        final int shift = exponent - SUB_BUCKET_BITS;
+        final int sub = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return (shift + 1) * SUB_BUCKETS + sub;
+    }
+
+    private static long getUpperBound(int index) {
+        final int bucket = index >>> SUB_BUCKET_BITS;
+        final int sub = index & (SUB_BUCKETS - 1);
+        if(bucket == 0) {
+            return sub;
+        }
+        final int shift = bucket - 1;
+        return ((long) (SUB_BUCKETS + sub + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,286 @@
+/*
+ MixProcessing - Live Mixing of Processing Sketches 
+ https://github.com/itschleemilch/MixProcessing
+
+ Copyright (c) 2014 Sebastian Schleemilch
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package mixprocessing.webserver;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import mixprocessing.output.FrameConsumer;
+import mixprocessing.output.FrameRecorder;
+
+/**
+ * Live preview of the output for web clients: The render thread copies a
+ * frame into the capture buffer, a dedicated encoder thread downscales and
+ * JPEG encodes it. Every frame is encoded at most once, all clients share
+ * the latest JPEG. Slow clients skip frames, they always get the newest one.
+ * Frames are only captured while clients are waiting, limited by the 
+ * maximum frame rate and width.
+ *
+ * @author Sebastian Schleemilch
+ * @see Webserver
+ */
+public class PreviewEncoder implements FrameConsumer, Runnable {
+    private static final float JPEG_QUALITY = 0.75f;
+
+    private final String name;
+    private volatile int maxWidth;
+    private volatile long periodNanos;
+    
+    /* Number of clients waiting for frames */
+    private int clients = 0;
+    /* Captured frame, handed over under the lock */
+    private final Object lock = new Object();
+    private BufferedImage capture = null;
+    private Graphics2D captureG = null;
+    private boolean captured = false;
+    private long lastCaptureNanos = 0;
+    private Thread encoder = null;
+    /* Latest JPEG and its number */
+    private byte[] jpeg = null;
+    private long sequence = 0;
+    private volatile long encodedFrames = 0;
+    
+    /* Encoder thread */
+    private BufferedImage scaled = null;
+    private final ByteArrayOutputStream jpegData = new ByteArrayOutputStream(1 << 16);
+    private ImageWriter writer = null;
+    private ImageWriteParam param = null;
+
+    /**
+     * Creates an encoder.
+     * @param name endpoint, used for the thread name
+     * @param maxWidth maximum width of the JPEG images
+     * @param maxFrameRate maximum frames per second
+     */
+    public PreviewEncoder(String name, int maxWidth, float maxFrameRate) {
+        this.name = name;
+        setLimits(maxWidth, maxFrameRate);
+    }
+    
+    /**
+     * Sets the maximum resolution and frame rate.
+     * @param maxWidth pixels, at least 16
+     * @param maxFrameRate frames per second, greater than 0
+     */
+    public final void setLimits(int maxWidth, float maxFrameRate) {
+        this.maxWidth = Math.max(16, maxWidth);
+        this.periodNanos = Math.round(1000000000d / Math.max(0.1f, maxFrameRate));
+    }
+    
+    /**
+     * Returns the number of encoded frames.
+     * @return 
+     */
+    public final long getEncodedFrames() {
+        return encodedFrames;
+    }
+    
+    /**
+     * Returns the number of waiting clients.
+     * @return 
+     */
+    public final int getClients() {
+        synchronized(lock) {
+            return clients;
+        }
+    }
+
+    @Override
+    public void frameRendered(BufferedImage frame, long frameNanos)
+    {
+        synchronized(lock) {
+            if(clients == 0 || captured || frameNanos - lastCaptureNanos < periodNanos) {
+                return; // no demand, encoder busy or rate limit
+            }
+            if(capture == null || capture.getWidth() != frame.getWidth() || 
+                    capture.getHeight() != frame.getHeight()) {
+                if(captureG != null) {
+                    captureG.dispose();
+                }
+                capture = new BufferedImage(frame.getWidth(), frame.getHeight(), 
+                        BufferedImage.TYPE_INT_RGB);
+                captureG = capture.createGraphics();
+            }
+            FrameRecorder.copyFrame(frame, capture, captureG);
+            captured = true;
+            lastCaptureNanos = frameNanos;
+            lock.notifyAll();
+        }
+    }
+    
+    /**
+     * Registers a waiting client. Has to be followed by release().
+     */
+    public final void acquire()
+    {
+        synchronized(lock) {
+            clients++;
+            if(encoder == null) {
+                encoder = new Thread(this, "MP Preview Encoder " + name);
+                encoder.setDaemon(true);
+                encoder.start();
+            }
+        }
+    }
+    
+    /**
+     * Registers a waiting client, if less than the given number of clients
+     * are waiting. Has to be followed by release(), if successful.
+     * @param maxClients
+     * @return false, if the limit is reached
+     */
+    public final boolean tryAcquire(int maxClients)
+    {
+        synchronized(lock) {
+            if(clients >= maxClients) {
+                return false;
+            }
+            acquire();
+            return true;
+        }
+    }
+    
+    /**
+     * Unregisters a waiting client.
+     */
+    public final void release()
+    {
+        synchronized(lock) {
+            clients--;
+        }
+    }
+    
+    /**
+     * Waits for a JPEG newer than the given one.
+     * @param lastSequence number of the last received frame, 0: none
+     * @param timeoutMillis
+     * @return the number of the frame (see getJpeg()) or lastSequence on 
+     * timeout
+     * @throws InterruptedException 
+     */
+    public final long awaitFrame(long lastSequence, long timeoutMillis) 
+            throws InterruptedException
+    {
+        final long end = System.currentTimeMillis() + timeoutMillis;
+        synchronized(lock) {
+            long remaining = timeoutMillis;
+            while(sequence <= lastSequence && remaining > 0) {
+                lock.wait(remaining);
+                remaining = end - System.currentTimeMillis();
+            }
+            return sequence;
+        }
+    }
+    
+    /**
+     * Returns the latest JPEG image. Must not be modified.
+     * @return data or null
+     */
+    public final byte[] getJpeg()
+    {
+        synchronized(lock) {
+            return jpeg;
+        }
+    }
+
+    /**
+     * Encoder loop: downscales and encodes the captured frames.
+     */
+    @Override
+    public void run()
+    {
+        while(true) {
+            synchronized(lock) {
+                try {
+                    while(!captured) {
+                        lock.wait();
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            byte[] data = null;
+            try {
+                data = encode(); // capture is not changed until captured is reset
+            } catch (IOException | RuntimeException e) {
+                e.printStackTrace(System.err);
+            }
+            synchronized(lock) {
+                captured = false;
+                if(data != null) {
+                    jpeg = data;
+                    sequence++;
+                    encodedFrames++;
+                }
+                lock.notifyAll();
+            }
+        }
+    }
+    
+    private byte[] encode() throws IOException
+    {
+        final int width = Math.min(maxWidth, capture.getWidth());
+        final int height = Math.max(1, 
+                (int) ((long) capture.getHeight() * width / capture.getWidth()));
+        BufferedImage source = capture;
+        if(width != capture.getWidth()) {
+            if(scaled == null || scaled.getWidth() != width || scaled.getHeight() != height) {
+                scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            }
+            Graphics2D g = scaled.createGraphics();
+            try {
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, 
+                        RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g.drawImage(capture, 0, 0, width, height, null);
+            } finally {
+                g.dispose();
+            }
+            source = scaled;
+        }
+        if(writer == null) {
+            Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpeg");
+            if(!writers.hasNext()) {
+                throw new IOException("No JPEG encoder available");
+            }
+            writer = writers.next();
+            param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(JPEG_QUALITY);
+        }
+        jpegData.reset();
+        ImageOutputStream ios = new MemoryCacheImageOutputStream(jpegData);
+        try {
+            writer.setOutput(ios);
+            writer.write(null, new IIOImage(source, null, null), param);
+        } finally {
+            ios.close();
+        }
+        return jpegData.toByteArray();
+    }
+}
@@ -19,7 +19,19 @@
  */
 package mixprocessing.webserver;
 
+import mixprocessing.FramePacer;
+import mixprocessing.MixRenderer;
+import mixprocessing.output.OutputManagement;
 import mixprocessing.script.ScriptRunner;
+import mixprocessing.script.ScriptingApi;
+import mixprocessing.sketches.FrameBudgetGovernor;
+import mixprocessing.sketches.InstanceCache;
+import mixprocessing.sketches.Sketch;
+import mixprocessing.sketches.SketchTimings;
+import mixprocessing.sketches.Sketches;
+import mixprocessing.sketches.SketchWatchdog;
+import mixprocessing.util.AllocationCounter;
+import mixprocessing.util.LatencyHistogram;
 import mixprocessing.util.BasePath;
 import mixprocessing.util.SinglePreference;
 import java.io.BufferedReader;
@@ -46,6 +58,13 @@ import processing.data.JSONObject;
  * Remote API call: /api/api1?[script command]
  * Example: http://localhost:8080/api/api1?mp.sketchOutput(%27P_2_1_2_04%27,%27channel0%27);
  * 
+ * Render statistics (JSON): /api/stats
+ * 
+ * Live preview: /stream.mjpg (MJPEG), /snapshot.jpg. The maximum width and
+ * frame rate of both endpoints are set via the KEY_STREAM_... and
+ * KEY_SNAPSHOT_... settings, the number of stream clients is limited by
+ * KEY_STREAM_CLIENTS.
+ * 
  * Storage webserver home files: see preference in file KEY_STORAGE. 
  * Port ist set via KEY_PORT setting within preference-folder.
  *
@@ -56,6 +75,9 @@ public class Webserver extends Thread {
     private final ScriptRunner scriptRunner;
     private final IpFilter ipfilter;
     private File fileStorage = null;
+    /* Live preview, shared by all clients of an endpoint */
+    private final PreviewEncoder streamEncoder, snapshotEncoder;
+    private final int maxStreamClients;
     
     /**
      * Creates a new Webserver object. Must be started!
@@ -66,6 +88,29 @@ public class Webserver extends Thread {
         this.scriptRunner = scriptRunner;
         this.ipfilter = new IpFilter();
         initServerStorage();
+        streamEncoder = new PreviewEncoder("stream", 
+                getIntPreference(KEY_STREAM_WIDTH, 640), getIntPreference(KEY_STREAM_FPS, 10));
+        snapshotEncoder = new PreviewEncoder("snapshot", 
+                getIntPreference(KEY_SNAPSHOT_WIDTH, 1280), getIntPreference(KEY_SNAPSHOT_FPS, 2));
+        maxStreamClients = Math.max(1, getIntPreference(KEY_STREAM_CLIENTS, 4));
+        OutputManagement outputs = scriptRunner.getApi().getRenderer().getOutputs();
+        outputs.addConsumer(streamEncoder);
+        outputs.addConsumer(snapshotEncoder);
+    }
+    
+    /**
+     * Reads an integer setting, the default value is stored if not set.
+     */
+    private static int getIntPreference(String key, int defaultValue) {
+        int value = defaultValue;
+        try {
+            value = Integer.parseInt(SinglePreference.getPreference(key, 
+                    Integer.toString(defaultValue)));
+        } catch (NumberFormatException e) {
+            value = defaultValue;
+        }
+        SinglePreference.setPreference(key, Integer.toString(value));
+        return value;
     }
     
     /**
@@ -286,6 +331,61 @@ public class Webserver extends Thread {
                 }
             }
         }
+        /* Render Statistics */
+        else if(resource.startsWith("/api/stats")) {
+            OutputStream output = null;
+            try {
+                output = client.getOutputStream();
+                sendJson(output, createStats().format(-1));
+            } catch (IOException e) {
+                e.printStackTrace(System.err);
+            } finally {
+                if(output != null) {
+                    try{
+                        output.close();
+                    }
+                    catch(IOException e) {
+                        e.printStackTrace(System.err);
+                    }
+                }
+                try{
+                    client.close();
+                } 
+                catch(IOException ee) {
+                    ee.printStackTrace(System.err);
+                }
+            }
+        }
+        /* Live preview */
+        else if(resource.equals("/stream.mjpg") || resource.equals("/snapshot.jpg")) {
+            OutputStream output = null;
+            try {
+                output = client.getOutputStream();
+                if(resource.equals("/stream.mjpg")) {
+                    sendStream(output);
+                }
+                else {
+                    sendSnapshot(output);
+                }
+            } catch (IOException e) {
+                // client disconnected
+            } finally {
+                if(output != null) {
+                    try{
+                        output.close();
+                    }
+                    catch(IOException e) {
+                        e.printStackTrace(System.err);
+                    }
+                }
+                try{
+                    client.close();
+                } 
+                catch(IOException ee) {
+                    ee.printStackTrace(System.err);
+                }
+            }
+        }
         /* File Output */
         else {
             /* Send requested file */
@@ -354,6 +454,89 @@ public class Webserver extends Thread {
         out.flush();
     }
     
+    /**
+     * Sends the live preview as MJPEG stream (multipart/x-mixed-replace)
+     * until the client disconnects. A slow client gets the newest frame and
+     * skips the others. Without new frames, the last one is sent again
+     * every STREAM_KEEPALIVE_MILLIS, so a disconnected client is detected.
+     * @param out
+     * @throws IOException 
+     */
+    private void sendStream(OutputStream out) throws IOException {
+        if(!streamEncoder.tryAcquire(maxStreamClients)) {
+            sendString(out, "503 Service Unavailable", "Too many stream clients.");
+            return;
+        }
+        try {
+            sendStreamParts(out);
+        } finally {
+            streamEncoder.release();
+        }
+    }
+    
+    private void sendStreamParts(OutputStream out) throws IOException {
+        final StringBuilder header = new StringBuilder();
+        header.append("HTTP/1.1 200 OK\r\n");
+        header.append("Server: ").append(SERVER_NAME).append("\r\n");
+        header.append("Connection: close\r\n");
+        header.append("Content-Type: multipart/x-mixed-replace; boundary=")
+                .append(STREAM_BOUNDARY).append("\r\n");
+        header.append("Cache-Control: private, max-age=0, no-cache\r\n");
+        header.append("\r\n");
+        out.write(header.toString().getBytes("UTF-8"));
+        out.flush();
+        try {
+            long sequence = 0;
+            while(true) {
+                final long next = streamEncoder.awaitFrame(sequence, STREAM_KEEPALIVE_MILLIS);
+                final byte[] jpeg = streamEncoder.getJpeg();
+                if(jpeg == null) {
+                    out.write(CRLF); // keep-alive before the first frame
+                    out.flush();
+                    continue;
+                }
+                sequence = next; // unchanged: output stalled, last frame again
+                final String partHeader = "--" + STREAM_BOUNDARY + "\r\n"
+                        + "Content-Type: image/jpeg\r\n"
+                        + "Content-Length: " + jpeg.length + "\r\n\r\n";
+                out.write(partHeader.getBytes("UTF-8"));
+                out.write(jpeg);
+                out.write(CRLF);
+                out.flush();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * Sends a new JPEG image of the output.
+     * @param out
+     * @throws IOException 
+     */
+    private void sendSnapshot(OutputStream out) throws IOException {
+        byte[] jpeg = null;
+        snapshotEncoder.acquire();
+        try {
+            final long sequence = snapshotEncoder.awaitFrame(0, 0);
+            snapshotEncoder.awaitFrame(sequence, 3000);
+            jpeg = snapshotEncoder.getJpeg();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            snapshotEncoder.release();
+        }
+        if(jpeg == null) {
+            sendString(out, "503 Service Unavailable", "No frame rendered.");
+            return;
+        }
+        final StringBuilder header = new StringBuilder();
+        generateHeader(header, jpeg.length, "image/jpeg");
+        out.write(header.toString().getBytes("UTF-8"));
+        out.write(jpeg);
+        out.flush();
+    }
+    
     /**
      * Sends String UTF-8 encoded with status 200 OK.
      * @param out
@@ -372,10 +555,33 @@ public class Webserver extends Thread {
      * @throws IOException 
      */
     private void sendString(OutputStream out, String http_status, String data) throws IOException {
+        sendString(out, http_status, data, "text/plain; charset=UTF-8");
+    }
+    
+    /**
+     * Sends a JSON document UTF-8 encoded with status 200 OK.
+     * @param out
+     * @param json
+     * @throws IOException 
+     */
+    private void sendJson(OutputStream out, String json) throws IOException {
+        sendString(out, "200 OK", json, "application/json; charset=UTF-8");
+    }
+    
+    /**
+     * Sends String UTF-8 encoded with free definable status and content type.
+     * @param out
+     * @param http_status e.g. "200 OK"
+     * @param data
+     * @param contentType
+     * @throws IOException 
+     */
+    private void sendString(OutputStream out, String http_status, String data, 
+            String contentType) throws IOException {
         final StringBuilder header = new StringBuilder();
         byte[] outputData = data.getBytes("UTF-8");
         /* Output HTTP Header  */
-        generateHeader(header, http_status, outputData.length, "text/plain; charset=UTF-8");
+        generateHeader(header, http_status, outputData.length, contentType);
         out.write(header.toString().getBytes("UTF-8"));
         /* Redirect data to client */
         out.write(outputData);
@@ -422,10 +628,7 @@ public class Webserver extends Thread {
                 fillJsonArray(array, subdata); // add all elements
             }
         }
-        
-        else if(data instanceof Object) {
-            array.append(data.toString());
-        } 
+
         else if(data instanceof double[]) { 
             double[] subarray = (double[]) data;
             for(double subdata : subarray) {
@@ -456,6 +659,104 @@ public class Webserver extends Thread {
                 fillJsonArray(array, subdata); // add all elements
             }
         }
+        else {
+            array.append(data.toString());
+        } 
+    }
+    
+    /**
+     * Collects the render statistics: frame pacing, composite time and the
+     * timings of each sketch (p50, p95, p99, max in ms).
+     * @return 
+     */
+    private JSONObject createStats() {
+        final ScriptingApi api = scriptRunner.getApi();
+        final MixRenderer renderer = api.getRenderer();
+        final FramePacer pacer = renderer.getFramePacer();
+        
+        JSONObject frames = new JSONObject();
+        frames.setFloat("target", pacer.getFrameRate());
+        frames.setFloat("actual", pacer.getActualFrameRate());
+        frames.setFloat("jitter", pacer.getJitterMillis());
+        frames.setFloat("jitterMax", pacer.getMaxJitterMillis());
+        frames.setLong("count", pacer.getFrameCount());
+        frames.setLong("missed", pacer.getMissedDeadlines());
+        
+        JSONObject sketchStats = new JSONObject();
+        for(Sketch sketch : api.getSketches().getAllSketches()) {
+            SketchTimings timings = sketch.getTimings();
+            JSONObject phases = new JSONObject();
+            phases.setJSONObject("setup", createStats(timings.getSetup()));
+            phases.setJSONObject("draw", createStats(timings.getDraw()));
+            phases.setJSONObject("store", createStats(timings.getStore()));
+            phases.setInt("priority", sketch.getPriority());
+            phases.setDouble("cost", sketch.getDrawCostMillis());
+            phases.setLong("skipped", sketch.getBudgetSkippedFrames());
+            phases.setString("state", api.getSketches().getWatchdog().getState(sketch));
+            phases.setBoolean("culled", sketch.isCulled());
+            sketchStats.setJSONObject(sketch.getName(), phases);
+        }
+        
+        AllocationCounter allocations = api.getSketches().getAllocations();
+        JSONObject allocation = new JSONObject();
+        allocation.setBoolean("tracking", api.getSketches().isAllocationTracking());
+        allocation.setDouble("average", allocations.getAverageBytes());
+        allocation.setLong("max", allocations.getMaxBytes());
+        allocation.setLong("frames", allocations.getFrames());
+        
+        FrameBudgetGovernor governor = api.getSketches().getGovernor();
+        JSONObject budget = new JSONObject();
+        budget.setBoolean("enabled", governor.isEnabled());
+        budget.setDouble("budget", governor.getBudgetMillis());
+        budget.setDouble("predicted", governor.getPredictedMillis());
+        budget.setLong("overloaded", governor.getOverloadedFrames());
+        budget.setLong("skipped", governor.getSkippedFrames());
+        
+        SketchWatchdog watchdog = api.getSketches().getWatchdog();
+        JSONObject watchdogStats = new JSONObject();
+        watchdogStats.setLong("limit", watchdog.getTimeLimit());
+        watchdogStats.setLong("failures", watchdog.getFailures());
+        watchdogStats.setLong("quarantines", watchdog.getQuarantines());
+        
+        Sketches sketches = api.getSketches();
+        JSONObject culling = new JSONObject();
+        culling.setBoolean("enabled", sketches.isCulling());
+        culling.setInt("occluded", sketches.getOccludedSketches());
+        culling.setInt("offcanvas", sketches.getOffCanvasSketches());
+        culling.setLong("culled", sketches.getCulledFrames());        
+        JSONObject stats = new JSONObject();
+        stats.setJSONObject("frames", frames);
+        stats.setJSONObject("watchdog", watchdogStats);
+        stats.setJSONObject("budget", budget);
+        stats.setJSONObject("culling", culling);
+        JSONObject instances = new JSONObject();
+        InstanceCache cache = sketches.getInstanceCache();
+        instances.setInt("instances", cache.getInstanceCount());
+        instances.setLong("created", cache.getCreatedCount());
+        instances.setLong("evicted", cache.getEvictedCount());
+        instances.setLong("heap", InstanceCache.getUsedHeap());
+        stats.setJSONObject("instances", instances);
+        JSONObject preview = new JSONObject();
+        preview.setInt("clients", streamEncoder.getClients());
+        preview.setLong("streamed", streamEncoder.getEncodedFrames());
+        preview.setLong("snapshots", snapshotEncoder.getEncodedFrames());
+        stats.setJSONObject("preview", preview);
+        stats.setJSONObject("allocation", allocation);
+        stats.setJSONObject("composite", 
+                createStats(api.getSketches().getCompositeTimes()));
+        stats.setJSONObject("sketches", sketchStats);
+        return stats;
+    }
+    
+    private JSONObject createStats(LatencyHistogram histogram) {
+        JSONObject data = new JSONObject();
+        data.setLong("count", histogram.getCount());
+        data.setDouble("p50", histogram.getPercentileMillis(50));
+        data.setDouble("p95", histogram.getPercentileMillis(95));
+        data.setDouble("p99", histogram.getPercentileMillis(99));
+        data.setDouble("max", histogram.getMaxMillis());
+        data.setDouble("mean", histogram.getMeanMillis());
+        return data;
     }
     
     /**
@@ -469,6 +770,14 @@ public class Webserver extends Thread {
     
     public final static String KEY_STORAGE = "webserver.storage";  
     public final static String KEY_PORT = "webserver.port";   
+    public final static String KEY_STREAM_WIDTH = "webserver.stream.width";
+    public final static String KEY_STREAM_FPS = "webserver.stream.fps";
+    public final static String KEY_SNAPSHOT_WIDTH = "webserver.snapshot.width";
+    public final static String KEY_SNAPSHOT_FPS = "webserver.snapshot.fps";
+    public final static String KEY_STREAM_CLIENTS = "webserver.stream.clients";
+    private final static long STREAM_KEEPALIVE_MILLIS = 5000;
+    private final static String STREAM_BOUNDARY = "mpframe";
+    private final static byte[] CRLF = {'\r', '\n'};
     
     private final static String SERVER_NAME = "MixProcessing Control Server";
 }
@@ -34,9 +34,9 @@ public class WelcomeChannels {
     
     public static final void addWelcomeChannels(ChannelManagement cman, MixRenderer renderer) {
         int dia = ( 10 * Math.min(
-                renderer.getWidth(), renderer.getHeight()) ) / 13;
-        int x = (renderer.getWidth()-dia)/2;
-        int y = (renderer.getHeight()-dia)/2;
+                renderer.getCanvasWidth(), renderer.getCanvasHeight()) ) / 13;
+        int x = (renderer.getCanvasWidth()-dia)/2;
+        int y = (renderer.getCanvasHeight()-dia)/2;
         Ellipse2D.Float ellipse = new Ellipse2D.Float(x, y, dia, dia);
         cman.addChannel(ellipse).setChannelName(CHANNEL_NAMES[0]);
     }
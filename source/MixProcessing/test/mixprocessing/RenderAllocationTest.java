@@ -0,0 +1,157 @@
+/*
+MixProcessing - Live Mixing of Processing Sketches 
+https://github.com/itschleemilch/MixProcessing
+
+Copyright (c) 2014 Sebastian Schleemilch
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package mixprocessing;
+
+import java.awt.Graphics2D;
+import java.awt.GraphicsEnvironment;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import mixprocessing.channels.ChannelManagement;
+import mixprocessing.sketches.Sketch;
+import mixprocessing.sketches.Sketches;
+import mixprocessing.util.AllocationCounter;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import processing.core.PApplet;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Regression test of the allocations of the render pipeline: Draws two
+ * sketches for WARMUP_FRAMES frames, then checks the bytes allocated by
+ * the pipeline in each of the following FRAMES frames (render thread and
+ * sketch jobs, without the sketches' own draw() calls, see 
+ * AllocationCounter).
+ *
+ * The pipeline itself allocates nothing per frame. The channels are 
+ * rectangles, so the only allocations left are Java2D's: setClip() copies
+ * the shape and creates a Region (72 bytes), drawImage() copies bounds.
+ * The limits per drawn sketch cover these, any object created per frame
+ * or per sketch by the pipeline exceeds them. A few frames may exceed the
+ * limit while the JIT recompiles (MAX_OUTLIERS).
+ *
+ * PApplet is a java.applet.Applet and needs a display, the test is 
+ * skipped on headless machines (use xvfb-run).
+ *
+ * @author Sebastian Schleemilch
+ */
+public class RenderAllocationTest {
+    private static final int WARMUP_FRAMES = 1000, FRAMES = 1000;
+    private static final int MAX_OUTLIERS = FRAMES / 100;
+    /* One clip change per sketch */
+    private static final long SEQUENTIAL_BYTES_PER_SKETCH = 80;
+    /* Clip changes of the layer and the composition, bounds of drawImage() */
+    private static final long RETAINED_BYTES_PER_SKETCH = 256;
+    private static final int SKETCHES = 2;
+    private static final int WIDTH = 320, HEIGHT = 240;
+
+    @Before
+    public void checkEnvironment() {
+        Assume.assumeFalse("needs a display", GraphicsEnvironment.isHeadless());
+        Assume.assumeTrue("needs ThreadMXBean allocation counters", 
+                AllocationCounter.isSupported());
+    }
+
+    @Test
+    public void sequentialRendering() {
+        assertAllocation(false, 0, SEQUENTIAL_BYTES_PER_SKETCH);
+    }
+
+    @Test
+    public void sequentialRenderingWithTimeLimit() {
+        assertAllocation(false, 1000, SEQUENTIAL_BYTES_PER_SKETCH);
+    }
+
+    @Test
+    public void retainedLayers() {
+        assertAllocation(true, 0, RETAINED_BYTES_PER_SKETCH);
+    }
+
+    /**
+     * @param timeLimit of the watchdog in ms, 0: sketches are drawn on the
+     * render thread, otherwise on worker threads
+     */
+    private static void assertAllocation(boolean retained, long timeLimit, 
+            long bytesPerSketch)
+    {
+        Sketches sketches = new Sketches();
+        sketches.setRetainedLayers(retained);
+        sketches.getWatchdog().setTimeLimit(timeLimit);
+        ChannelManagement channels = new ChannelManagement(sketches);
+        addSketch(sketches, channels, new Sketch(BoxSketch.class), 
+                new Rectangle(0, 0, WIDTH / 2, HEIGHT));
+        addSketch(sketches, channels, new Sketch(LineSketch.class), 
+                new Rectangle(WIDTH / 2, 0, WIDTH / 2, HEIGHT));
+        
+        final BufferedImage canvas = new BufferedImage(WIDTH, HEIGHT, 
+                BufferedImage.TYPE_INT_RGB);
+        final Graphics2D g = canvas.createGraphics();
+        final long periodNanos = 1000000000L / 30;
+        final long start = System.nanoTime();
+        final long limit = bytesPerSketch * SKETCHES;
+        sketches.setAllocationTracking(true);
+        long outliers = 0;
+        for(int frame = 0; frame < WARMUP_FRAMES + FRAMES; frame++) {
+            sketches.paintAll(canvas, g, channels, start + frame * periodNanos);
+            if(frame == WARMUP_FRAMES - 1) {
+                sketches.getAllocations().reset();
+            }
+            else if(frame >= WARMUP_FRAMES && 
+                    sketches.getAllocations().getLastBytes() > limit) {
+                outliers++;
+            }
+        }
+        g.dispose();
+        
+        assertTrue(String.format("Render pipeline allocates more than %d bytes in "
+                + "%d of %d frames (average %.0f, max %d, retained %b, time limit %d)", 
+                limit, outliers, FRAMES, sketches.getAllocations().getAverageBytes(), 
+                sketches.getAllocations().getMaxBytes(), retained, timeLimit),
+                outliers <= MAX_OUTLIERS);
+    }
+
+    private static void addSketch(Sketches sketches, ChannelManagement channels,
+            Sketch sketch, Rectangle area)
+    {
+        sketches.addSketch(sketch);
+        sketch.createInstance(WIDTH, HEIGHT, System.getProperty("java.io.tmpdir"));
+        channels.setSketchChannel(sketch, channels.addChannel(area));
+    }
+
+    public static class BoxSketch extends PApplet {
+        @Override
+        public void draw() {
+            background(0);
+            fill(255, 0, 0);
+            rect(frameCount % 100, 20, 40, 40);
+        }
+    }
+
+    public static class LineSketch extends PApplet {
+        @Override
+        public void draw() {
+            background(255);
+            stroke(0);
+            line(WIDTH / 2, 0, WIDTH / 2 + frameCount % 100, HEIGHT);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+MixProcessing - Live Mixing of Processing Sketches 
+https://github.com/itschleemilch/MixProcessing
+
+Copyright (c) 2014 Sebastian Schleemilch
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package mixprocessing.channels;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import mixprocessing.sketches.SketchLayer;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Pixel parity of the parallel and the sequential rendering: A layer
+ * blended back with the channel's mask has to equal drawing the same
+ * content with the channel shape as clip.
+ *
+ * @author Sebastian Schleemilch
+ */
+public class ChannelMaskTest {
+    private static final int WIDTH = 200, HEIGHT = 150;
+
+    @Test
+    public void ellipse() {
+        assertParity(new Ellipse2D.Double(20.3, 10.7, 150.2, 110.9));
+    }
+
+    @Test
+    public void rotatedRectangle() {
+        assertParity(AffineTransform.getRotateInstance(0.3, 100, 75)
+                .createTransformedShape(new Rectangle2D.Double(40.5, 30.25, 120, 80)));
+    }
+
+    @Test
+    public void fractionalRectangle() {
+        assertParity(new Rectangle2D.Double(10.5, 20.5, 100.25, 60.75));
+    }
+
+    @Test
+    public void polygonPartlyOutside() {
+        Path2D.Double path = new Path2D.Double();
+        path.moveTo(-30.5, 10);
+        path.lineTo(180.3, -20);
+        path.lineTo(230, 160.6);
+        path.lineTo(60.2, 120.1);
+        path.closePath();
+        assertParity(path);
+    }
+
+    private static void assertParity(Shape shape)
+    {
+        final BufferedImage content = createPattern(Color.RED, Color.YELLOW);
+        
+        /* Sequential: clipped drawing into the double buffer */
+        final BufferedImage sequential = createPattern(Color.BLUE, Color.GREEN);
+        Graphics2D g = sequential.createGraphics();
+        g.setClip(shape);
+        g.drawImage(content, 0, 0, null);
+        g.dispose();
+        
+        /* Parallel: layer blended back with the mask */
+        final BufferedImage parallel = createPattern(Color.BLUE, Color.GREEN);
+        final ChannelMask mask = new ChannelMask(shape);
+        final SketchLayer layer = new SketchLayer();
+        layer.ensureCompatible(parallel);
+        layer.getGraphics().drawImage(content, 0, 0, null);
+        final Rectangle area = mask.getBounds().intersection(
+                new Rectangle(0, 0, WIDTH, HEIGHT));
+        if(mask.isRectangular()) {
+            layer.copyTo(parallel, area);
+        }
+        else {
+            layer.blendTo(parallel, area, mask);
+        }
+        layer.dispose();
+        
+        for(int y = 0; y < HEIGHT; y++) {
+            for(int x = 0; x < WIDTH; x++) {
+                assertEquals("pixel " + x + "," + y, 
+                        sequential.getRGB(x, y), parallel.getRGB(x, y));
+            }
+        }
+    }
+
+    private static BufferedImage createPattern(Color a, Color b)
+    {
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        for(int y = 0; y < HEIGHT; y++) {
+            for(int x = 0; x < WIDTH; x++) {
+                image.setRGB(x, y, ((x / 8 + y / 8) % 2 == 0 ? a : b).getRGB());
+            }
+        }
+        return image;
+    }
+}
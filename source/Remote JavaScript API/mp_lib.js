@@ -180,6 +180,364 @@ Api.channelRename = function (oldName, newName, callbackFunction) {
 	this.apiCall(request, callbackFunction);
 };
 
+/**
+ * Method: outputViewportClose
+ * Short Description: Output ~ Close Viewport Window
+ *
+ * @param name type=String
+ * @return boolean
+*/
+Api.outputViewportClose = function (name, callbackFunction) {
+	"use strict";
+	var request = "Api.outputViewportClose('" + name + "');";
+	this.apiCall(request, callbackFunction);
+};
+
+/**
+ * Method: outputBlend
+ * Short Description: Output ~ Edge Blending
+ *
+ * @param name type=String
+ * @param left type=int
+ * @param right type=int
+ * @param top type=int
+ * @param bottom type=int
+ * @return boolean
+*/
+Api.outputBlend = function (name, left, right, top, bottom, callbackFunction) {
+	"use strict";
+	var request = "Api.outputBlend('" + name + "', " + left + ", " + right + ", " + top + ", " + bottom + ");";
+	this.apiCall(request, callbackFunction);
+};
+
+/**
+ * Method: outputBlendCurve
+ * Short Description: Output ~ Edge Blending Curve
+ *
+ * @param name type=String
+ * @param gamma type=double
+ * @param curve type=double
+ * @return boolean
+*/
+Api.outputBlendCurve = function (name, gamma, curve, callbackFunction) {
+	"use strict";
+	var request = "Api.outputBlendCurve('" + name + "', " + gamma + ", " + curve + ");";
+	this.apiCall(request, callbackFunction);
+};
+
+/**
+ * Method: outputBlendGet
+ * Short Description: Output ~ Edge Blending?
+ *
+ * @param name type=String
+ * @return [D
+*/
+Api.outputBlendGet = function (name, callbackFunction) {
+	"use strict";
+	var request = "Api.outputBlendGet('" + name + "');";
+	this.apiCall(request, callbackFunction);
+};
+
+/**
+ * Method: outputRecord
+ * Short Description: Output ~ Record
+ *
+ * @param path type=String
+ * @param format type=String
+ * @param frameRate type=double
+ * @return boolean
+*/
+Api.outputRecord = function (path, format, frameRate, callbackFunction) {
+	"use strict";
+	var request = "Api.outputRecord('" + path + "', '" + format + "', " + frameRate + ");";
+	this.apiCall(request, callbackFunction);
+};
+
+/**
+ * Method: outputRecordGet
+ * Short Description: Output ~ Recording?
+ *
+ * @return [J
+*/
+Api.outputRecordGet = function (callbackFunction) {
+	"use strict";
+	var request = "Api.outputRecordGet();";
+	this.apiCall(request, callbackFunction);
+};
+
+/**
+ * Method: outputViewportRemove
+ * Short Description: Output ~ Remove Viewport
+ *
+ * @param name type=String
+ * @return boolean
+*/
+Api.outputViewportRemove = function (name, callbackFunction) {
+	"use strict";
+	var request = "Api.outputViewportRemove('" + name + "');";
+	this.apiCall(request, callbackFunction);
+};
+
+/**
+ * Method: outputScreensGet
+ * Short Description: Output ~ Screens?
+ *
+ * @return int
+*/
+Api.outputScreensGet = function (callbackFunction) {
+	"use strict";
+	var request = "Api.outputScreensGet();";
+	this.apiCall(request, callbackFunction);
+};
+
+/**
+ * Method: outputRecordStop
+ * Short Description: Output ~ Stop Recording
+ *
+ * @return boolean
+*/
+Api.outputRecordStop = function (callbackFunction) {
+	"use strict";
+	var request = "Api.outputRecordStop();";
+	this.apiCall(request, callbackFunction);
+};
+
+/**
+ * Method: outputViewport
+ * Short Description: Output ~ Viewport
+ *
+ * @param name type=String
+ * @param x type=int
+ * @param y type=int
+ * @param width type=int
+ * @param height type=int
+ * @return boolean
+*/
+Api.outputViewport = function (name, x, y, width, height, callbackFunction) {
+	"use strict";
+	var request = "Api.outputViewport('" + name + "', " + x + ", " + y + ", " + width + ", " + height + ");";
+	this.apiCall(request, callbackFunction);
+};
+
+/**
+ * Method: outputViewportWindow
+ * Short Description: Output ~ Viewport Window
+ *
+ * @param name type=String
+ * @param screen type=int
+ * @return boolean
+*/
+Api.outputViewportWindow = function (name, screen, callbackFunction) {
+	"use strict";
+	var request = "Api.outputViewportWindow('" + name + "', " + screen + ");";
+	this.apiCall(request, callbackFunction);
+};
+
+/**
+ * Method: outputViewportGet
+ * Short Description: Output ~ Viewport?
+ *
+ * @param name type=String
+ * @return [I
+*/
+Api.outputViewportGet = function (name, callbackFunction) {
+	"use strict";
+	var request = "Api.outputViewportGet('" + name + "');";
+	this.apiCall(request, callbackFunction);
+};
+
+/**
+ * Method: outputViewportsGet
+ * Short Description: Output ~ Viewports?
+ *
+ * @return String;
+*/
+Api.outputViewportsGet = function (callbackFunction) {
+	"use strict";
+	var request = "Api.outputViewportsGet();";
+	this.apiCall(request, callbackFunction);
+};
+
+/**
+ * Method: outputWarpCorners
+ * Short Description: Output ~ Warp Corners
+ *
+ * @param name type=String
+ * @param x0 type=double
+ * @param y0 type=double
+ * @param x1 type=double
+ * @param y1 type=double
+ * @param x2 type=double
+ * @param y2 type=double
+ * @param x3 type=double
+ * @param y3 type=double
+ * @return boolean
+*/
+Api.outputWarpCorners = function (name, x0, y0, x1, y1, x2, y2, x3, y3, callbackFunction) {
+	"use strict";
+	var request = "Api.outputWarpCorners('" + name + "', " + x0 + ", " + y0 + ", " + x1 + ", " + y1 + ", " + x2 + ", " + y2 + ", " + x3 + ", " + y3 + ");";
+	this.apiCall(request, callbackFunction);
+};
+
+/**
+ * Method: outputWarpEdit
+ * Short Description: Output ~ Warp Editing
+ *
+ * @param name type=String
+ * @param enabled type=boolean
+ * @return boolean
+*/
+Api.outputWarpEdit = function (name, enabled, callbackFunction) {
+	"use strict";
+	var request = "Api.outputWarpEdit('" + name + "', " + enabled + ");";
+	this.apiCall(request, callbackFunction);
+};
+
+/**
+ * Method: outputWarpMesh
+ * Short Description: Output ~ Warp Mesh
+ *
+ * @param name type=String
+ * @param columns type=int
+ * @param rows type=int
+ * @return boolean
+*/
+Api.outputWarpMesh = function (name, columns, rows, callbackFunction) {
+	"use strict";
+	var request = "Api.outputWarpMesh('" + name + "', " + columns + ", " + rows + ");";
+	this.apiCall(request, callbackFunction);
+};
+
+/**
+ * Method: outputWarpPoint
+ * Short Description: Output ~ Warp Point
+ *
+ * @param name type=String
+ * @param column type=int
+ * @param row type=int
+ * @param x type=double
+ * @param y type=double
+ * @return boolean
+*/
+Api.outputWarpPoint = function (name, column, row, x, y, callbackFunction) {
+	"use strict";
+	var request = "Api.outputWarpPoint('" + name + "', " + column + ", " + row + ", " + x + ", " + y + ");";
+	this.apiCall(request, callbackFunction);
+};
+
+/**
+ * Method: outputWarpPointGet
+ * Short Description: Output ~ Warp Point?
+ *
+ * @param name type=String
+ * @param column type=int
+ * @param row type=int
+ * @return [F
+*/
+Api.outputWarpPointGet = function (name, column, row, callbackFunction) {
+	"use strict";
+	var request = "Api.outputWarpPointGet('" + name + "', " + column + ", " + row + ");";
+	this.apiCall(request, callbackFunction);
+};
+
+/**
+ * Method: rendererActive
+ * Short Description: Renderer ~ Active Rendering
+ *
+ * @param enabled type=boolean
+ * @return boolean
+*/
+Api.rendererActive = function (enabled, callbackFunction) {
+	"use strict";
+	var request = "Api.rendererActive(" + enabled + ");";
+	this.apiCall(request, callbackFunction);
+};
+
+/**
+ * Method: rendererActiveGet
+ * Short Description: Renderer ~ Active Rendering?
+ *
+ * @return boolean
+*/
+Api.rendererActiveGet = function (callbackFunction) {
+	"use strict";
+	var request = "Api.rendererActiveGet();";
+	this.apiCall(request, callbackFunction);
+};
+
+/**
+ * Method: rendererAllocatedBytesGet
+ * Short Description: Renderer ~ Allocated Bytes?
+ *
+ * @return [D
+*/
+Api.rendererAllocatedBytesGet = function (callbackFunction) {
+	"use strict";
+	var request = "Api.rendererAllocatedBytesGet();";
+	this.apiCall(request, callbackFunction);
+};
+
+/**
+ * Method: rendererAllocationTracking
+ * Short Description: Renderer ~ Allocation Tracking
+ *
+ * @param enabled type=boolean
+ * @return boolean
+*/
+Api.rendererAllocationTracking = function (enabled, callbackFunction) {
+	"use strict";
+	var request = "Api.rendererAllocationTracking(" + enabled + ");";
+	this.apiCall(request, callbackFunction);
+};
+
+/**
+ * Method: rendererFramesCoalescedGet
+ * Short Description: Renderer ~ Coalesced Frames?
+ *
+ * @return long
+*/
+Api.rendererFramesCoalescedGet = function (callbackFunction) {
+	"use strict";
+	var request = "Api.rendererFramesCoalescedGet();";
+	this.apiCall(request, callbackFunction);
+};
+
+/**
+ * Method: rendererCompositeTimeGet
+ * Short Description: Renderer ~ Composite Time?
+ *
+ * @return [D
+*/
+Api.rendererCompositeTimeGet = function (callbackFunction) {
+	"use strict";
+	var request = "Api.rendererCompositeTimeGet();";
+	this.apiCall(request, callbackFunction);
+};
+
+/**
+ * Method: rendererCullGet
+ * Short Description: Renderer ~ Culled Sketches?
+ *
+ * @return [J
+*/
+Api.rendererCullGet = function (callbackFunction) {
+	"use strict";
+	var request = "Api.rendererCullGet();";
+	this.apiCall(request, callbackFunction);
+};
+
+/**
+ * Method: rendererFramesDroppedGet
+ * Short Description: Renderer ~ Dropped Frames?
+ *
+ * @return long
+*/
+Api.rendererFramesDroppedGet = function (callbackFunction) {
+	"use strict";
+	var request = "Api.rendererFramesDroppedGet();";
+	this.apiCall(request, callbackFunction);
+};
+
 /**
  * Method: rendererRefresh
  * Short Description: Renderer ~ Force Refresh
@@ -192,6 +550,43 @@ Api.rendererRefresh = function (callbackFunction) {
 	this.apiCall(request, callbackFunction);
 };
 
+/**
+ * Method: rendererBudgetGovernor
+ * Short Description: Renderer ~ Frame Budget Governor
+ *
+ * @param enabled type=boolean
+ * @return boolean
+*/
+Api.rendererBudgetGovernor = function (enabled, callbackFunction) {
+	"use strict";
+	var request = "Api.rendererBudgetGovernor(" + enabled + ");";
+	this.apiCall(request, callbackFunction);
+};
+
+/**
+ * Method: rendererBudgetGovernorGet
+ * Short Description: Renderer ~ Frame Budget Governor?
+ *
+ * @return boolean
+*/
+Api.rendererBudgetGovernorGet = function (callbackFunction) {
+	"use strict";
+	var request = "Api.rendererBudgetGovernorGet();";
+	this.apiCall(request, callbackFunction);
+};
+
+/**
+ * Method: rendererBudgetGet
+ * Short Description: Renderer ~ Frame Budget?
+ *
+ * @return [D
+*/
+Api.rendererBudgetGet = function (callbackFunction) {
+	"use strict";
+	var request = "Api.rendererBudgetGet();";
+	this.apiCall(request, callbackFunction);
+};
+
 /**
  * Method: rendererFrameRate
  * Short Description: Renderer ~ Frame Rate
@@ -205,6 +600,18 @@ Api.rendererFrameRate = function (frameRate, callbackFunction) {
 	this.apiCall(request, callbackFunction);
 };
 
+/**
+ * Method: rendererFrameRateActualGet
+ * Short Description: Renderer ~ Frame Rate (measured)?
+ *
+ * @return float
+*/
+Api.rendererFrameRateActualGet = function (callbackFunction) {
+	"use strict";
+	var request = "Api.rendererFrameRateActualGet();";
+	this.apiCall(request, callbackFunction);
+};
+
 /**
  * Method: rendererFrameRateGet
  * Short Description: Renderer ~ Frame Rate?
@@ -217,6 +624,256 @@ Api.rendererFrameRateGet = function (callbackFunction) {
 	this.apiCall(request, callbackFunction);
 };
 
+/**
+ * Method: rendererJitterMaxGet
+ * Short Description: Renderer ~ Jitter (max)?
+ *
+ * @return float
+*/
+Api.rendererJitterMaxGet = function (callbackFunction) {
+	"use strict";
+	var request = "Api.rendererJitterMaxGet();";
+	this.apiCall(request, callbackFunction);
+};
+
+/**
+ * Method: rendererJitterGet
+ * Short Description: Renderer ~ Jitter?
+ *
+ * @return float
+*/
+Api.rendererJitterGet = function (callbackFunction) {
+	"use strict";
+	var request = "Api.rendererJitterGet();";
+	this.apiCall(request, callbackFunction);
+};
+
+/**
+ * Method: rendererMissedFramesGet
+ * Short Description: Renderer ~ Missed Frames?
+ *
+ * @return long
+*/
+Api.rendererMissedFramesGet = function (callbackFunction) {
+	"use strict";
+	var request = "Api.rendererMissedFramesGet();";
+	this.apiCall(request, callbackFunction);
+};
+
+/**
+ * Method: rendererOffChannel
+ * Short Description: Renderer ~ Off Channel Policy
+ *
+ * @param policy type=String
+ * @return boolean
+*/
+Api.rendererOffChannel = function (policy, callbackFunction) {
+	"use strict";
+	var request = "Api.rendererOffChannel('" + policy + "');";
+	this.apiCall(request, callbackFunction);
+};
+
+/**
+ * Method: rendererOffChannelGet
+ * Short Description: Renderer ~ Off Channel Policy?
+ *
+ * @return String
+*/
+Api.rendererOffChannelGet = function (callbackFunction) {
+	"use strict";
+	var request = "Api.rendererOffChannelGet();";
+	this.apiCall(request, callbackFunction);
+};
+
+/**
+ * Method: rendererOffChannelTickRate
+ * Short Description: Renderer ~ Off Channel Tick Rate
+ *
+ * @param frameRate type=float
+ * @return boolean
+*/
+Api.rendererOffChannelTickRate = function (frameRate, callbackFunction) {
+	"use strict";
+	var request = "Api.rendererOffChannelTickRate(" + frameRate + ");";
+	this.apiCall(request, callbackFunction);
+};
+
+/**
+ * Method: rendererParallel
+ * Short Description: Renderer ~ Parallel Rendering
+ *
+ * @param enabled type=boolean
+ * @return boolean
+*/
+Api.rendererParallel = function (enabled, callbackFunction) {
+	"use strict";
+	var request = "Api.rendererParallel(" + enabled + ");";
+	this.apiCall(request, callbackFunction);
+};
+
+/**
+ * Method: rendererParallelGet
+ * Short Description: Renderer ~ Parallel Rendering?
+ *
+ * @return boolean
+*/
+Api.rendererParallelGet = function (callbackFunction) {
+	"use strict";
+	var request = "Api.rendererParallelGet();";
+	this.apiCall(request, callbackFunction);
+};
+
+/**
+ * Method: rendererTimingReset
+ * Short Description: Renderer ~ Reset Timing Statistics
+ *
+ * @return boolean
+*/
+Api.rendererTimingReset = function (callbackFunction) {
+	"use strict";
+	var request = "Api.rendererTimingReset();";
+	this.apiCall(request, callbackFunction);
+};
+
+/**
+ * Method: rendererResolution
+ * Short Description: Renderer ~ Resolution
+ *
+ * @param width type=int
+ * @param height type=int
+ * @return boolean
+*/
+Api.rendererResolution = function (width, height, callbackFunction) {
+	"use strict";
+	var request = "Api.rendererResolution(" + width + ", " + height + ");";
+	this.apiCall(request, callbackFunction);
+};
+
+/**
+ * Method: rendererResolutionGet
+ * Short Description: Renderer ~ Resolution?
+ *
+ * @return [I
+*/
+Api.rendererResolutionGet = function (callbackFunction) {
+	"use strict";
+	var request = "Api.rendererResolutionGet();";
+	this.apiCall(request, callbackFunction);
+};
+
+/**
+ * Method: rendererRetained
+ * Short Description: Renderer ~ Retained Layers
+ *
+ * @param enabled type=boolean
+ * @return boolean
+*/
+Api.rendererRetained = function (enabled, callbackFunction) {
+	"use strict";
+	var request = "Api.rendererRetained(" + enabled + ");";
+	this.apiCall(request, callbackFunction);
+};
+
+/**
+ * Method: rendererRetainedGet
+ * Short Description: Renderer ~ Retained Layers?
+ *
+ * @return boolean
+*/
+Api.rendererRetainedGet = function (callbackFunction) {
+	"use strict";
+	var request = "Api.rendererRetainedGet();";
+	this.apiCall(request, callbackFunction);
+};
+
+/**
+ * Method: rendererEviction
+ * Short Description: Renderer ~ Sketch Eviction
+ *
+ * @param idleSeconds type=double
+ * @param heapBudgetMB type=long
+ * @return boolean
+*/
+Api.rendererEviction = function (idleSeconds, heapBudgetMB, callbackFunction) {
+	"use strict";
+	var request = "Api.rendererEviction(" + idleSeconds + ", " + heapBudgetMB + ");";
+	this.apiCall(request, callbackFunction);
+};
+
+/**
+ * Method: rendererEvictionGet
+ * Short Description: Renderer ~ Sketch Eviction?
+ *
+ * @return [D
+*/
+Api.rendererEvictionGet = function (callbackFunction) {
+	"use strict";
+	var request = "Api.rendererEvictionGet();";
+	this.apiCall(request, callbackFunction);
+};
+
+/**
+ * Method: rendererInstancesGet
+ * Short Description: Renderer ~ Sketch Instances?
+ *
+ * @return [J
+*/
+Api.rendererInstancesGet = function (callbackFunction) {
+	"use strict";
+	var request = "Api.rendererInstancesGet();";
+	this.apiCall(request, callbackFunction);
+};
+
+/**
+ * Method: rendererCulling
+ * Short Description: Renderer ~ Visibility Culling
+ *
+ * @param enabled type=boolean
+ * @return boolean
+*/
+Api.rendererCulling = function (enabled, callbackFunction) {
+	"use strict";
+	var request = "Api.rendererCulling(" + enabled + ");";
+	this.apiCall(request, callbackFunction);
+};
+
+/**
+ * Method: rendererCullingGet
+ * Short Description: Renderer ~ Visibility Culling?
+ *
+ * @return boolean
+*/
+Api.rendererCullingGet = function (callbackFunction) {
+	"use strict";
+	var request = "Api.rendererCullingGet();";
+	this.apiCall(request, callbackFunction);
+};
+
+/**
+ * Method: rendererWatchdog
+ * Short Description: Renderer ~ Watchdog Time Limit
+ *
+ * @param millis type=long
+ * @return boolean
+*/
+Api.rendererWatchdog = function (millis, callbackFunction) {
+	"use strict";
+	var request = "Api.rendererWatchdog(" + millis + ");";
+	this.apiCall(request, callbackFunction);
+};
+
+/**
+ * Method: rendererWatchdogGet
+ * Short Description: Renderer ~ Watchdog Time Limit?
+ *
+ * @return long
+*/
+Api.rendererWatchdogGet = function (callbackFunction) {
+	"use strict";
+	var request = "Api.rendererWatchdogGet();";
+	this.apiCall(request, callbackFunction);
+};
+
 /**
  * Method: sketchKeyEventsOn
  * Short Description: Sketch Events ~ Key Events: En-/Disable
@@ -299,6 +956,19 @@ Api.sketchChannelSet = function (sketchName, channelName, callbackFunction) {
 	this.apiCall(request, callbackFunction);
 };
 
+/**
+ * Method: sketchBudgetGet
+ * Short Description: Sketches ~ Frame Budget?
+ *
+ * @param sketchName type=String
+ * @return [D
+*/
+Api.sketchBudgetGet = function (sketchName, callbackFunction) {
+	"use strict";
+	var request = "Api.sketchBudgetGet('" + sketchName + "');";
+	this.apiCall(request, callbackFunction);
+};
+
 /**
  * Method: sketchFrameCountGet
  * Short Description: Sketches ~ Frame Count?
@@ -339,6 +1009,33 @@ Api.sketchFrameRate = function (sketchName, fps, callbackFunction) {
 	this.apiCall(request, callbackFunction);
 };
 
+/**
+ * Method: sketchOffChannel
+ * Short Description: Sketches ~ Off Channel Policy
+ *
+ * @param sketchName type=String
+ * @param policy type=String
+ * @return boolean
+*/
+Api.sketchOffChannel = function (sketchName, policy, callbackFunction) {
+	"use strict";
+	var request = "Api.sketchOffChannel('" + sketchName + "', '" + policy + "');";
+	this.apiCall(request, callbackFunction);
+};
+
+/**
+ * Method: sketchOffChannelGet
+ * Short Description: Sketches ~ Off Channel Policy?
+ *
+ * @param sketchName type=String
+ * @return String
+*/
+Api.sketchOffChannelGet = function (sketchName, callbackFunction) {
+	"use strict";
+	var request = "Api.sketchOffChannelGet('" + sketchName + "');";
+	this.apiCall(request, callbackFunction);
+};
+
 /**
  * Method: sketchAlpha
  * Short Description: Sketches ~ Opacity
@@ -366,6 +1063,33 @@ Api.sketchAlphaGet = function (sketchName, callbackFunction) {
 	this.apiCall(request, callbackFunction);
 };
 
+/**
+ * Method: sketchPriority
+ * Short Description: Sketches ~ Priority
+ *
+ * @param sketchName type=String
+ * @param priority type=int
+ * @return boolean
+*/
+Api.sketchPriority = function (sketchName, priority, callbackFunction) {
+	"use strict";
+	var request = "Api.sketchPriority('" + sketchName + "', " + priority + ");";
+	this.apiCall(request, callbackFunction);
+};
+
+/**
+ * Method: sketchPriorityGet
+ * Short Description: Sketches ~ Priority?
+ *
+ * @param sketchName type=String
+ * @return int
+*/
+Api.sketchPriorityGet = function (sketchName, callbackFunction) {
+	"use strict";
+	var request = "Api.sketchPriorityGet('" + sketchName + "');";
+	this.apiCall(request, callbackFunction);
+};
+
 /**
  * Method: sketchRemove
  * Short Description: Sketches ~ Remove
@@ -379,6 +1103,47 @@ Api.sketchRemove = function (sketchName, callbackFunction) {
 	this.apiCall(request, callbackFunction);
 };
 
+/**
+ * Method: sketchScale
+ * Short Description: Sketches ~ Render Scale
+ *
+ * @param sketchName type=String
+ * @param scale type=float
+ * @return boolean
+*/
+Api.sketchScale = function (sketchName, scale, callbackFunction) {
+	"use strict";
+	var request = "Api.sketchScale('" + sketchName + "', " + scale + ");";
+	this.apiCall(request, callbackFunction);
+};
+
+/**
+ * Method: sketchScaleInterpolation
+ * Short Description: Sketches ~ Render Scale Interpolation
+ *
+ * @param sketchName type=String
+ * @param mode type=String
+ * @return boolean
+*/
+Api.sketchScaleInterpolation = function (sketchName, mode, callbackFunction) {
+	"use strict";
+	var request = "Api.sketchScaleInterpolation('" + sketchName + "', '" + mode + "');";
+	this.apiCall(request, callbackFunction);
+};
+
+/**
+ * Method: sketchScaleGet
+ * Short Description: Sketches ~ Render Scale?
+ *
+ * @param sketchName type=String
+ * @return float
+*/
+Api.sketchScaleGet = function (sketchName, callbackFunction) {
+	"use strict";
+	var request = "Api.sketchScaleGet('" + sketchName + "');";
+	this.apiCall(request, callbackFunction);
+};
+
 /**
  * Method: sketchRestart
  * Short Description: Sketches ~ Restart
@@ -392,6 +1157,20 @@ Api.sketchRestart = function (sketchName, callbackFunction) {
 	this.apiCall(request, callbackFunction);
 };
 
+/**
+ * Method: sketchTimingGet
+ * Short Description: Sketches ~ Timing?
+ *
+ * @param sketchName type=String
+ * @param phase type=String
+ * @return [D
+*/
+Api.sketchTimingGet = function (sketchName, phase, callbackFunction) {
+	"use strict";
+	var request = "Api.sketchTimingGet('" + sketchName + "', '" + phase + "');";
+	this.apiCall(request, callbackFunction);
+};
+
 /**
  * Method: sketchVar
  * Short Description: Sketches ~ Variable
@@ -453,6 +1232,56 @@ Api.sketchVarsGet = function (sketchName, callbackFunction) {
 	this.apiCall(request, callbackFunction);
 };
 
+/**
+ * Method: sketchStateGet
+ * Short Description: Sketches ~ Watchdog State?
+ *
+ * @param sketchName type=String
+ * @return String
+*/
+Api.sketchStateGet = function (sketchName, callbackFunction) {
+	"use strict";
+	var request = "Api.sketchStateGet('" + sketchName + "');";
+	this.apiCall(request, callbackFunction);
+};
+
+/**
+ * Method: systemHotReload
+ * Short Description: System ~ Hot Reload
+ *
+ * @param enabled type=boolean
+ * @return boolean
+*/
+Api.systemHotReload = function (enabled, callbackFunction) {
+	"use strict";
+	var request = "Api.systemHotReload(" + enabled + ");";
+	this.apiCall(request, callbackFunction);
+};
+
+/**
+ * Method: systemHotReloadGet
+ * Short Description: System ~ Hot Reload?
+ *
+ * @return boolean
+*/
+Api.systemHotReloadGet = function (callbackFunction) {
+	"use strict";
+	var request = "Api.systemHotReloadGet();";
+	this.apiCall(request, callbackFunction);
+};
+
+/**
+ * Method: systemReloadsGet
+ * Short Description: System ~ Hot Reloads?
+ *
+ * @return [J
+*/
+Api.systemReloadsGet = function (callbackFunction) {
+	"use strict";
+	var request = "Api.systemReloadsGet();";
+	this.apiCall(request, callbackFunction);
+};
+
 /**
  * Method: systemKeyPress
  * Short Description: System ~ Key: Press
@@ -582,4 +1411,4 @@ Api.systemSleep = function (ms, callbackFunction) {
 };
 
 /* END OF MIXPROCESSING JAVASCRIPT LIBRARY */
-/* DATE OF GENERATION:2014-08-25, 16:40 */
\ No newline at end of file
+/* DATE OF GENERATION:2026-10-17, 04:10 */